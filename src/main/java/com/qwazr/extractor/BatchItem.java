@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Map;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * One file of a batch extraction
+ */
+@JsonInclude(Include.NON_EMPTY)
+@JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE)
+public class BatchItem {
+
+    /**
+     * The path of the file to extract
+     */
+    final public String path;
+
+    /**
+     * The parameters specific to this file, they override the parameters of the batch
+     */
+    final public Map<String, String> parameters;
+
+    @JsonCreator
+    public BatchItem(final @JsonProperty("path") String path,
+                     final @JsonProperty("parameters") Map<String, String> parameters) {
+        this.path = path;
+        this.parameters = parameters;
+    }
+
+    public BatchItem(final String path) {
+        this(path, null);
+    }
+
+    MultivaluedMap<String, String> mergeParameters(final MultivaluedMap<String, String> batchParameters) {
+        return mergeParameters(batchParameters, parameters);
+    }
+
+    static MultivaluedMap<String, String> mergeParameters(final MultivaluedMap<String, String> parameters,
+                                                          final Map<String, String> overrides) {
+        if (overrides == null || overrides.isEmpty())
+            return parameters;
+        final MultivaluedMap<String, String> merged =
+                parameters == null ? new MultivaluedHashMap<>() : new MultivaluedHashMap<>(parameters);
+        overrides.forEach(merged::putSingle);
+        return merged;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The outcome of the extraction of one file of a batch.
+ * Either the result or the error is set.
+ */
+@JsonInclude(Include.NON_NULL)
+@JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE)
+public class BatchResult {
+
+    final public String path;
+
+    final public ParserResult result;
+
+    /**
+     * The HTTP status code which would have been returned for this file alone
+     */
+    final public Integer status;
+
+    final public String error;
+
+    @JsonCreator
+    BatchResult(final @JsonProperty("path") String path,
+                final @JsonProperty("result") ParserResult result,
+                final @JsonProperty("status") Integer status,
+                final @JsonProperty("error") String error) {
+        this.path = path;
+        this.result = result;
+        this.status = status;
+        this.error = error;
+    }
+
+    BatchResult(final String path, final ParserResult result) {
+        this(path, result, null, null);
+    }
+
+    BatchResult(final String path, final int status, final String error) {
+        this(path, null, status, error);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+
+/**
+ * Tells the client if the extraction result comes from the cache.
+ */
+@Provider
+public class CacheHeaderFilter implements ContainerResponseFilter {
+
+    /**
+     * HIT-MEMORY, HIT-DISK or MISS. The header is absent if the cache is disabled.
+     */
+    public final static String HEADER_NAME = "X-Extractor-Cache";
+
+    @Override
+    public void filter(final ContainerRequestContext requestContext,
+                       final ContainerResponseContext responseContext) {
+        final Object entity = responseContext.getEntity();
+        if (!(entity instanceof ParserResult))
+            return;
+        final String cacheStatus = ((ParserResult) entity).cacheStatus;
+        if (cacheStatus != null)
+            responseContext.getHeaders().putSingle(HEADER_NAME, cacheStatus);
+    }
+}
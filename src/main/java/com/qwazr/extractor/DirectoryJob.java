@@ -0,0 +1,296 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.qwazr.utils.LoggerUtils;
+import com.qwazr.utils.ObjectMappers;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Extracts every file of a directory tree and writes the results to a NDJSON file.
+ * The walker thread feeds a bounded queue, the memory used does not depend on the size of the tree.
+ */
+final class DirectoryJob {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(DirectoryJob.class);
+
+    /**
+     * Number of files found by the walker and waiting for an extraction slot
+     */
+    final static int QUEUE_CAPACITY = 1024;
+
+    private final static long POLL_MS = 100;
+
+    final String id;
+
+    final Path root;
+
+    final Path output;
+
+    private final PathMatcher[] includes;
+
+    private final PathMatcher[] excludes;
+
+    private final BlockingQueue<Path> queue;
+
+    private final LongAdder found;
+
+    private final LongAdder extracted;
+
+    private final LongAdder failed;
+
+    private final LongAdder ignored;
+
+    private final LongAdder walkErrors;
+
+    private final long startTime;
+
+    private volatile long endTime;
+
+    private volatile boolean walkFinished;
+
+    private volatile boolean cancelled;
+
+    private volatile DirectoryJobStatus.State state;
+
+    private volatile String error;
+
+    /**
+     * @throws IllegalArgumentException if a pattern is not a valid glob
+     */
+    DirectoryJob(final String id,
+                 final Path root,
+                 final Path output,
+                 final List<String> include,
+                 final List<String> exclude) {
+        this.id = id;
+        this.root = root;
+        this.output = output;
+        this.includes = toMatchers(include);
+        this.excludes = toMatchers(exclude);
+        queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        found = new LongAdder();
+        extracted = new LongAdder();
+        failed = new LongAdder();
+        ignored = new LongAdder();
+        walkErrors = new LongAdder();
+        startTime = System.currentTimeMillis();
+        state = DirectoryJobStatus.State.RUNNING;
+    }
+
+    private static PathMatcher[] toMatchers(final List<String> globs) {
+        if (globs == null || globs.isEmpty())
+            return null;
+        final PathMatcher[] matchers = new PathMatcher[globs.size()];
+        int i = 0;
+        for (final String glob : globs)
+            matchers[i++] = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        return matchers;
+    }
+
+    private static boolean matchesAny(final PathMatcher[] matchers, final Path relativePath) {
+        for (final PathMatcher matcher : matchers)
+            if (matcher.matches(relativePath))
+                return true;
+        return false;
+    }
+
+    private boolean isSelected(final Path relativePath) {
+        if (includes != null && !matchesAny(includes, relativePath))
+            return false;
+        return excludes == null || !matchesAny(excludes, relativePath);
+    }
+
+    /**
+     * Start the walker and the extraction.
+     *
+     * @param jobExecutor   runs the walker and the loop collecting the results
+     * @param batchExecutor runs the extractions
+     * @param parallelism   the maximum number of concurrent extractions
+     * @param isSupported   tells if a parser is registered for the file
+     * @param extractor     extracts one file
+     */
+    void start(final Executor jobExecutor,
+               final Executor batchExecutor,
+               final int parallelism,
+               final Predicate<Path> isSupported,
+               final Function<Path, BatchResult> extractor) {
+        jobExecutor.execute(() -> walk(isSupported));
+        jobExecutor.execute(() -> extract(batchExecutor, parallelism, extractor));
+    }
+
+    private void walk(final Predicate<Path> isSupported) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                    if (cancelled)
+                        return FileVisitResult.TERMINATE;
+                    if (excludes != null && !dir.equals(root) && matchesAny(excludes, root.relativize(dir)))
+                        return FileVisitResult.SKIP_SUBTREE;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                    if (!attrs.isRegularFile() || file.equals(output) || !isSelected(root.relativize(file)))
+                        return FileVisitResult.CONTINUE;
+                    if (!isSupported.test(file)) {
+                        ignored.increment();
+                        return FileVisitResult.CONTINUE;
+                    }
+                    found.increment();
+                    return enqueue(file) ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                    walkErrors.increment();
+                    LOGGER.log(Level.FINE, exc, () -> "Cannot read " + file);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            error = "The walk failed: " + e.getMessage();
+            LOGGER.log(Level.WARNING, e, () -> "The walk failed: " + root);
+        } finally {
+            walkFinished = true;
+        }
+    }
+
+    /**
+     * Wait for a free slot in the queue.
+     *
+     * @return false if the job has been stopped
+     */
+    private boolean enqueue(final Path file) {
+        try {
+            while (!queue.offer(file, POLL_MS, TimeUnit.MILLISECONDS))
+                if (cancelled || state != DirectoryJobStatus.State.RUNNING)
+                    return false;
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void extract(final Executor batchExecutor,
+                         final int parallelism,
+                         final Function<Path, BatchResult> extractor) {
+        DirectoryJobStatus.State endState;
+        try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+            ParallelExtraction.run(batchExecutor, parallelism, new QueueIterator(), extractor, result -> {
+                if (result.error == null)
+                    extracted.increment();
+                else
+                    failed.increment();
+                out.write(ObjectMappers.JSON.writeValueAsBytes(result));
+                out.write('\n');
+            });
+            endState = cancelled ?
+                    DirectoryJobStatus.State.CANCELLED :
+                    error == null ? DirectoryJobStatus.State.DONE : DirectoryJobStatus.State.FAILED;
+        } catch (IOException | RuntimeException e) {
+            error = "The extraction failed: " + e.getMessage();
+            LOGGER.log(Level.WARNING, e, () -> "The extraction failed: " + output);
+            endState = DirectoryJobStatus.State.FAILED;
+        }
+        endTime = System.currentTimeMillis();
+        // Also stops the walker if it is still running
+        state = endState;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    boolean isRunning() {
+        return state == DirectoryJobStatus.State.RUNNING;
+    }
+
+    /**
+     * @return the time the job ended, only meaningful once the job is not running
+     */
+    long getEndTime() {
+        return endTime;
+    }
+
+    DirectoryJobStatus getStatus() {
+        final DirectoryJobStatus.State currentState = state;
+        return new DirectoryJobStatus(id, root.toString(), output.toString(), currentState, found.sum(),
+                extracted.sum(), failed.sum(), ignored.sum(), walkErrors.sum(), startTime,
+                currentState == DirectoryJobStatus.State.RUNNING ? null : endTime, error);
+    }
+
+    /**
+     * Blocks until the walker provides the next file, or until the walk is over.
+     */
+    private final class QueueIterator implements Iterator<Path> {
+
+        private Path next;
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null) {
+                    if (cancelled)
+                        return false;
+                    // Read before polling: once the walk is over, an empty queue means the end
+                    final boolean lastPoll = walkFinished;
+                    next = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                    if (next == null && lastPoll)
+                        return false;
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        @Override
+        public Path next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            final Path path = next;
+            next = null;
+            return path;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The extraction of every file of a directory tree
+ */
+@JsonInclude(Include.NON_EMPTY)
+@JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE)
+public class DirectoryJobDefinition {
+
+    /**
+     * The directory to walk
+     */
+    final public String root;
+
+    /**
+     * The NDJSON file receiving one line per extracted file
+     */
+    final public String output;
+
+    /**
+     * The glob patterns of the files to extract, relative to the root. By default every file is extracted.
+     */
+    final public List<String> include;
+
+    /**
+     * The glob patterns of the files to ignore, relative to the root
+     */
+    final public List<String> exclude;
+
+    /**
+     * The extraction parameters applied to every file
+     */
+    final public Map<String, String> parameters;
+
+    @JsonCreator
+    public DirectoryJobDefinition(final @JsonProperty("root") String root,
+                                  final @JsonProperty("output") String output,
+                                  final @JsonProperty("include") List<String> include,
+                                  final @JsonProperty("exclude") List<String> exclude,
+                                  final @JsonProperty("parameters") Map<String, String> parameters) {
+        this.root = root;
+        this.output = output;
+        this.include = include;
+        this.exclude = exclude;
+        this.parameters = parameters;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonInclude(Include.NON_NULL)
+@JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE)
+public class DirectoryJobStatus {
+
+    public enum State {
+        RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    final public String id;
+
+    final public String root;
+
+    final public String output;
+
+    final public State state;
+
+    /**
+     * Number of files matching the patterns and supported by a parser
+     */
+    final public long found;
+
+    /**
+     * Number of files successfully extracted
+     */
+    final public long extracted;
+
+    /**
+     * Number of files which could not be extracted
+     */
+    final public long failed;
+
+    /**
+     * Number of files matching the patterns but not supported by any parser
+     */
+    final public long ignored;
+
+    /**
+     * Number of files or directories which could not be read while walking the tree
+     */
+    @JsonProperty("walk_errors")
+    final public long walkErrors;
+
+    @JsonProperty("start_time")
+    final public Long startTime;
+
+    @JsonProperty("end_time")
+    final public Long endTime;
+
+    /**
+     * The reason of the failure of the job
+     */
+    final public String error;
+
+    @JsonCreator
+    DirectoryJobStatus(final @JsonProperty("id") String id,
+                       final @JsonProperty("root") String root,
+                       final @JsonProperty("output") String output,
+                       final @JsonProperty("state") State state,
+                       final @JsonProperty("found") long found,
+                       final @JsonProperty("extracted") long extracted,
+                       final @JsonProperty("failed") long failed,
+                       final @JsonProperty("ignored") long ignored,
+                       final @JsonProperty("walk_errors") long walkErrors,
+                       final @JsonProperty("start_time") Long startTime,
+                       final @JsonProperty("end_time") Long endTime,
+                       final @JsonProperty("error") String error) {
+        this.id = id;
+        this.root = root;
+        this.output = output;
+        this.state = state;
+        this.found = found;
+        this.extracted = extracted;
+        this.failed = failed;
+        this.ignored = ignored;
+        this.walkErrors = walkErrors;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.error = error;
+    }
+}
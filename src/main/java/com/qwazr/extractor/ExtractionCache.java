@@ -0,0 +1,384 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.qwazr.utils.LoggerUtils;
+import com.qwazr.utils.ObjectMappers;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * The extraction results, by content digest, dispatch key and parameters.
+ * The results are serialized in JSON. The memory tier keeps the most recently used results,
+ * the disk tier (optional) keeps the results evicted from the memory and survives a restart.
+ */
+final class ExtractionCache {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(ExtractionCache.class);
+
+    final static String DIGEST_ALGORITHM = "SHA-256";
+
+    final static long DEFAULT_MEMORY_MAX_BYTES = 64L * 1024 * 1024;
+
+    final static long DEFAULT_DISK_MAX_BYTES = 1024L * 1024 * 1024;
+
+    private final static String FILE_SUFFIX = ".json";
+
+    private final static String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+
+    private final long memoryMaxBytes;
+
+    private final long diskMaxBytes;
+
+    /**
+     * The serialized results, the least recently used first
+     */
+    private final LinkedHashMap<String, byte[]> memory;
+
+    private long memoryBytes;
+
+    /**
+     * The size of the files, the least recently used first
+     */
+    private final LinkedHashMap<String, Long> disk;
+
+    private long diskBytes;
+
+    private final LongAdder memoryHits;
+
+    private final LongAdder diskHits;
+
+    private final LongAdder misses;
+
+    /**
+     * @param directory      the directory of the disk tier, or null for a memory only cache
+     * @param memoryMaxBytes the maximum size of the memory tier
+     * @param diskMaxBytes   the maximum size of the disk tier
+     * @throws IOException if the directory can't be read
+     */
+    ExtractionCache(final Path directory, final long memoryMaxBytes, final long diskMaxBytes) throws IOException {
+        this.directory = directory;
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.diskMaxBytes = diskMaxBytes;
+        memory = new LinkedHashMap<>(16, 0.75f, true);
+        disk = new LinkedHashMap<>(16, 0.75f, true);
+        memoryHits = new LongAdder();
+        diskHits = new LongAdder();
+        misses = new LongAdder();
+        if (directory != null)
+            loadDirectory();
+    }
+
+    /**
+     * Index the files of a previous run, the oldest first.
+     * The temporary files left by an interrupted write are deleted.
+     */
+    private void loadDirectory() throws IOException {
+        Files.createDirectories(directory);
+        final List<Path> files;
+        try (final Stream<Path> stream = Files.list(directory)) {
+            files = stream.sorted(Comparator.comparingLong(ExtractionCache::getLastModified))
+                    .collect(Collectors.toList());
+        }
+        final List<String> evicted;
+        synchronized (disk) {
+            for (final Path file : files) {
+                final String fileName = file.getFileName().toString();
+                if (fileName.endsWith(TEMP_SUFFIX)) {
+                    Files.deleteIfExists(file);
+                    continue;
+                }
+                if (!fileName.endsWith(FILE_SUFFIX))
+                    continue;
+                final long size = Files.size(file);
+                disk.put(fileName.substring(0, fileName.length() - FILE_SUFFIX.length()), size);
+                diskBytes += size;
+            }
+            evicted = evictDisk();
+        }
+        evicted.forEach(this::deleteFile);
+    }
+
+    private static long getLastModified(final Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Compute the digest of a file
+     */
+    static byte[] digest(final Path filePath) throws IOException {
+        final MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[65536];
+        try (final InputStream input = Files.newInputStream(filePath)) {
+            int read;
+            while ((read = input.read(buffer)) != -1)
+                digest.update(buffer, 0, read);
+        }
+        return digest.digest();
+    }
+
+    /**
+     * The parameters are sorted by name, the ignored parameters don't change the extracted content.
+     *
+     * @param contentDigest the digest of the content
+     * @param dispatchKey   the media type or the extension used to select the parsers
+     * @param parameters    the extraction parameters
+     * @param ignored       the name of the parameters which are not part of the key
+     * @return the key of the cache entry
+     */
+    static String key(final byte[] contentDigest,
+                      final String dispatchKey,
+                      final MultivaluedMap<String, String> parameters,
+                      final Set<String> ignored) {
+        final MessageDigest digest = newDigest();
+        digest.update(contentDigest);
+        digest.update((byte) 0);
+        digest.update(dispatchKey.getBytes(StandardCharsets.UTF_8));
+        if (parameters != null) {
+            for (final Map.Entry<String, List<String>> entry : new TreeMap<>(parameters).entrySet()) {
+                if (ignored.contains(entry.getKey()) || entry.getValue() == null)
+                    continue;
+                digest.update((byte) 0);
+                digest.update(entry.getKey().getBytes(StandardCharsets.UTF_8));
+                for (final String value : entry.getValue()) {
+                    digest.update((byte) '=');
+                    if (value != null)
+                        digest.update(value.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (final byte b : digest.digest())
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+
+    private Path getFile(final String key) {
+        return directory.resolve(key + FILE_SUFFIX);
+    }
+
+    /**
+     * @param key the key of the entry
+     * @return the cached result, or null
+     */
+    ParserResult get(final String key) {
+        byte[] bytes;
+        synchronized (memory) {
+            bytes = memory.get(key);
+        }
+        if (bytes != null) {
+            final ParserResult result = toResult(key, bytes, ParserResult.CACHE_HIT_MEMORY);
+            if (result != null) {
+                memoryHits.increment();
+                return result;
+            }
+            bytes = null;
+        }
+        if (directory != null) {
+            final boolean onDisk;
+            synchronized (disk) {
+                onDisk = disk.get(key) != null;
+            }
+            if (onDisk) {
+                try {
+                    bytes = Files.readAllBytes(getFile(key));
+                } catch (NoSuchFileException e) {
+                    // Evicted in the meantime
+                    synchronized (disk) {
+                        removeDiskEntry(key);
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, e, () -> "Cannot read the cache entry " + key);
+                    removeDisk(key);
+                }
+            }
+            if (bytes != null) {
+                final ParserResult result = toResult(key, bytes, ParserResult.CACHE_HIT_DISK);
+                if (result != null) {
+                    diskHits.increment();
+                    putMemory(key, bytes);
+                    return result;
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * A corrupted entry is removed from both tiers, the content is then extracted again.
+     *
+     * @return the result, or null if the entry can't be read
+     */
+    private ParserResult toResult(final String key, final byte[] bytes, final String cacheStatus) {
+        try {
+            return new ParserResult(ObjectMappers.JSON.readValue(bytes, ParserResult.class), cacheStatus);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Corrupted cache entry " + key);
+            synchronized (memory) {
+                final byte[] previous = memory.remove(key);
+                if (previous != null)
+                    memoryBytes -= previous.length;
+            }
+            if (directory != null)
+                removeDisk(key);
+            return null;
+        }
+    }
+
+    /**
+     * Store a new result in both tiers. A failure is logged, the result is just not cached.
+     */
+    void put(final String key, final ParserResult result) {
+        try {
+            final byte[] bytes = ObjectMappers.JSON.writeValueAsBytes(result);
+            putMemory(key, bytes);
+            if (directory != null)
+                putDisk(key, bytes);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Cannot store the cache entry " + key);
+        }
+    }
+
+    private void putMemory(final String key, final byte[] bytes) {
+        if (bytes.length > memoryMaxBytes)
+            return;
+        synchronized (memory) {
+            final byte[] previous = memory.put(key, bytes);
+            if (previous != null)
+                memoryBytes -= previous.length;
+            memoryBytes += bytes.length;
+            final Iterator<byte[]> iterator = memory.values().iterator();
+            while (memoryBytes > memoryMaxBytes && iterator.hasNext()) {
+                memoryBytes -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+    }
+
+    private void putDisk(final String key, final byte[] bytes) throws IOException {
+        if (bytes.length > diskMaxBytes)
+            return;
+        // Written aside then moved, a reader never sees a partial file.
+        // The file operations are done outside of the lock, a slow disk does not block the lookups.
+        final Path tempFile = Files.createTempFile(directory, key, TEMP_SUFFIX);
+        final List<String> evicted;
+        try {
+            Files.write(tempFile, bytes);
+            Files.move(tempFile, getFile(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (disk) {
+                final Long previous = disk.put(key, (long) bytes.length);
+                if (previous != null)
+                    diskBytes -= previous;
+                diskBytes += bytes.length;
+                evicted = evictDisk();
+            }
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        evicted.forEach(this::deleteFile);
+    }
+
+    /**
+     * @return the keys of the evicted entries, their files have to be deleted
+     */
+    private List<String> evictDisk() {
+        List<String> evicted = null;
+        final Iterator<Map.Entry<String, Long>> iterator = disk.entrySet().iterator();
+        while (diskBytes > diskMaxBytes && iterator.hasNext()) {
+            final Map.Entry<String, Long> entry = iterator.next();
+            diskBytes -= entry.getValue();
+            iterator.remove();
+            if (evicted == null)
+                evicted = new ArrayList<>();
+            evicted.add(entry.getKey());
+        }
+        return evicted == null ? List.of() : evicted;
+    }
+
+    private void removeDisk(final String key) {
+        synchronized (disk) {
+            removeDiskEntry(key);
+        }
+        deleteFile(key);
+    }
+
+    private void removeDiskEntry(final String key) {
+        final Long size = disk.remove(key);
+        if (size != null)
+            diskBytes -= size;
+    }
+
+    private void deleteFile(final String key) {
+        try {
+            Files.deleteIfExists(getFile(key));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Cannot delete the cache entry " + key);
+        }
+    }
+
+    ExtractorStatus.Cache getStatus() {
+        final int memoryEntries;
+        final long currentMemoryBytes;
+        synchronized (memory) {
+            memoryEntries = memory.size();
+            currentMemoryBytes = memoryBytes;
+        }
+        final int diskEntries;
+        final long currentDiskBytes;
+        synchronized (disk) {
+            diskEntries = disk.size();
+            currentDiskBytes = diskBytes;
+        }
+        return new ExtractorStatus.Cache(memoryHits.sum(), diskHits.sum(), misses.sum(), memoryEntries,
+                currentMemoryBytes, diskEntries, currentDiskBytes);
+    }
+}
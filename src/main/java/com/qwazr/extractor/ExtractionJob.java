@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+/**
+ * An extraction running in the background
+ */
+final class ExtractionJob {
+
+    final String id;
+
+    private final long submitTime;
+
+    private final CountDownLatch completion;
+
+    private volatile long startTime;
+
+    private volatile long endTime;
+
+    private volatile ExtractionJobStatus.State state;
+
+    private volatile ParserResult result;
+
+    private volatile long resultBytes;
+
+    private volatile int errorStatus;
+
+    private volatile String error;
+
+    private Thread worker;
+
+    ExtractionJob(final String id) {
+        this.id = id;
+        this.submitTime = System.currentTimeMillis();
+        this.completion = new CountDownLatch(1);
+        this.state = ExtractionJobStatus.State.QUEUED;
+    }
+
+    /**
+     * @return false if the job has been cancelled before its start
+     */
+    synchronized boolean start() {
+        if (state != ExtractionJobStatus.State.QUEUED)
+            return false;
+        worker = Thread.currentThread();
+        startTime = System.currentTimeMillis();
+        state = ExtractionJobStatus.State.RUNNING;
+        return true;
+    }
+
+    /**
+     * @param result      the result of the extraction
+     * @param resultBytes the estimated size of the result
+     */
+    synchronized void success(final ParserResult result, final long resultBytes) {
+        if (state != ExtractionJobStatus.State.RUNNING)
+            return;
+        this.result = result;
+        this.resultBytes = resultBytes;
+        finish(ExtractionJobStatus.State.DONE);
+    }
+
+    synchronized void failure(final int status, final String message) {
+        if (state != ExtractionJobStatus.State.RUNNING)
+            return;
+        this.errorStatus = status;
+        this.error = message;
+        finish(ExtractionJobStatus.State.FAILED);
+    }
+
+    /**
+     * A running job is interrupted
+     */
+    synchronized void cancel() {
+        if (isDone())
+            return;
+        if (worker != null)
+            worker.interrupt();
+        finish(ExtractionJobStatus.State.CANCELLED);
+    }
+
+    private void finish(final ExtractionJobStatus.State endState) {
+        worker = null;
+        endTime = System.currentTimeMillis();
+        state = endState;
+        completion.countDown();
+    }
+
+    boolean isDone() {
+        return completion.getCount() == 0;
+    }
+
+    long getEndTime() {
+        return endTime;
+    }
+
+    /**
+     * @return the estimated size of the result, 0 if the job has no result
+     */
+    long getResultBytes() {
+        return resultBytes;
+    }
+
+    /**
+     * Wait for the end of the job.
+     *
+     * @param waitMillis the maximum time to wait
+     * @return true if the job is done
+     */
+    boolean await(final long waitMillis) {
+        if (waitMillis <= 0)
+            return isDone();
+        try {
+            return completion.await(waitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return isDone();
+        }
+    }
+
+    /**
+     * @return the result of the extraction
+     * @throws WebApplicationException if the job is not done, or if the extraction failed
+     */
+    ParserResult getResult() {
+        switch (state) {
+            case DONE:
+                return result;
+            case FAILED:
+                throw new WebApplicationException(error, errorStatus);
+            case CANCELLED:
+                throw new ClientErrorException("The job has been cancelled: " + id, Response.Status.GONE);
+            default:
+                throw new ClientErrorException("The job is not completed yet: " + id, Response.Status.CONFLICT);
+        }
+    }
+
+    ExtractionJobStatus getStatus() {
+        final ExtractionJobStatus.State currentState = state;
+        final boolean started = currentState != ExtractionJobStatus.State.QUEUED && startTime != 0;
+        final boolean done = currentState != ExtractionJobStatus.State.QUEUED &&
+                currentState != ExtractionJobStatus.State.RUNNING;
+        return new ExtractionJobStatus(id, currentState, submitTime, started ? startTime : null,
+                done ? endTime : null,
+                currentState == ExtractionJobStatus.State.FAILED ? errorStatus : null,
+                currentState == ExtractionJobStatus.State.FAILED ? error : null);
+    }
+}
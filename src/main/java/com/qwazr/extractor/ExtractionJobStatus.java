@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonInclude(Include.NON_NULL)
+@JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE)
+public class ExtractionJobStatus {
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED
+    }
+
+    final public String id;
+
+    final public State state;
+
+    @JsonProperty("submit_time")
+    final public Long submitTime;
+
+    @JsonProperty("start_time")
+    final public Long startTime;
+
+    @JsonProperty("end_time")
+    final public Long endTime;
+
+    /**
+     * The HTTP status code of the failure
+     */
+    final public Integer status;
+
+    final public String error;
+
+    @JsonCreator
+    ExtractionJobStatus(final @JsonProperty("id") String id,
+                        final @JsonProperty("state") State state,
+                        final @JsonProperty("submit_time") Long submitTime,
+                        final @JsonProperty("start_time") Long startTime,
+                        final @JsonProperty("end_time") Long endTime,
+                        final @JsonProperty("status") Integer status,
+                        final @JsonProperty("error") String error) {
+        this.id = id;
+        this.state = state;
+        this.submitTime = submitTime;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.status = status;
+        this.error = error;
+    }
+}
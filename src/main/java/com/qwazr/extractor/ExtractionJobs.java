@@ -0,0 +1,262 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.qwazr.utils.IOUtils;
+import com.qwazr.utils.LoggerUtils;
+import com.qwazr.utils.ObjectMappers;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.ws.rs.ServiceUnavailableException;
+import org.apache.commons.io.output.CountingOutputStream;
+
+/**
+ * The extractions running in the background.
+ * The number of pending jobs is bounded, and the completed jobs are kept
+ * until their time to live expires, until too many jobs are completed,
+ * or until their results take too much memory (estimated by the size of their JSON).
+ */
+final class ExtractionJobs implements AutoCloseable {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(ExtractionJobs.class);
+
+    final static int DEFAULT_QUEUE_SIZE = 256;
+
+    final static long DEFAULT_RESULT_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    final static int DEFAULT_MAX_RESULTS = 1000;
+
+    final static long DEFAULT_MAX_RESULT_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * The delay suggested to the client when the queue is full
+     */
+    private final static long RETRY_AFTER_SECONDS = 5;
+
+    private final ThreadPoolExecutor executor;
+
+    private final Map<String, ExtractionJob> jobs;
+
+    /**
+     * The completed jobs, the oldest first
+     */
+    private final Deque<ExtractionJob> completed;
+
+    /**
+     * The size of the results of the completed jobs, guarded by {@link #completed}
+     */
+    private long completedBytes;
+
+    /**
+     * Number of queued or running jobs
+     */
+    private final AtomicInteger pending;
+
+    private volatile int queueSize;
+
+    private volatile long resultTtl;
+
+    private volatile int maxResults;
+
+    private volatile long maxResultBytes;
+
+    ExtractionJobs(final int concurrency, final ThreadFactory threadFactory) {
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        jobs = new ConcurrentHashMap<>();
+        completed = new ArrayDeque<>();
+        pending = new AtomicInteger();
+        queueSize = DEFAULT_QUEUE_SIZE;
+        resultTtl = DEFAULT_RESULT_TTL_MS;
+        maxResults = DEFAULT_MAX_RESULTS;
+        maxResultBytes = DEFAULT_MAX_RESULT_BYTES;
+    }
+
+    void setConcurrency(final int concurrency) {
+        synchronized (executor) {
+            // The core size can't exceed the maximum size
+            if (concurrency > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(concurrency);
+                executor.setCorePoolSize(concurrency);
+            } else {
+                executor.setCorePoolSize(concurrency);
+                executor.setMaximumPoolSize(concurrency);
+            }
+        }
+    }
+
+    void setQueueSize(final int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    void setResultTtl(final long resultTtlMillis) {
+        this.resultTtl = resultTtlMillis;
+    }
+
+    void setMaxResults(final int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    void setMaxResultBytes(final long maxResultBytes) {
+        this.maxResultBytes = maxResultBytes;
+    }
+
+    /**
+     * Reserve a slot for a new job. It should be followed by {@link #submit} or {@link #release()}.
+     *
+     * @throws ServiceUnavailableException if too many jobs are pending
+     */
+    void acquire() {
+        if (pending.incrementAndGet() > executor.getMaximumPoolSize() + queueSize) {
+            pending.decrementAndGet();
+            throw new ServiceUnavailableException("Too many extraction jobs in progress", RETRY_AFTER_SECONDS);
+        }
+    }
+
+    void release() {
+        pending.decrementAndGet();
+    }
+
+    /**
+     * Queue a job. The slot must have been reserved by {@link #acquire()}.
+     *
+     * @param extraction  the extraction
+     * @param errorStatus gives the HTTP status code of an extraction failure
+     * @param resource    closed when the job ends, may be null
+     * @return the new job
+     */
+    ExtractionJob submit(final Callable<ParserResult> extraction,
+                         final ToIntFunction<Exception> errorStatus,
+                         final AutoCloseable resource) {
+        final ExtractionJob job = new ExtractionJob(UUID.randomUUID().toString());
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, extraction, errorStatus, resource));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            release();
+            IOUtils.closeQuietly(resource);
+            throw new ServiceUnavailableException("The extraction jobs are stopped", RETRY_AFTER_SECONDS);
+        }
+        return job;
+    }
+
+    private void run(final ExtractionJob job,
+                     final Callable<ParserResult> extraction,
+                     final ToIntFunction<Exception> errorStatus,
+                     final AutoCloseable resource) {
+        if (!job.start()) {
+            // Cancelled while queued
+            release();
+            IOUtils.closeQuietly(resource);
+            return;
+        }
+        ParserResult result = null;
+        Exception failure = null;
+        try {
+            result = extraction.call();
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            // The slot is free before the client is notified
+            release();
+            IOUtils.closeQuietly(resource);
+        }
+        if (failure == null)
+            job.success(result, sizeOf(result));
+        else
+            job.failure(errorStatus.applyAsInt(failure), failure.getMessage());
+        // Clear the interruption of a cancelled job before returning the thread to the pool
+        Thread.interrupted();
+        completed(job);
+    }
+
+    /**
+     * @return the size of the JSON of the result, which is written without being kept
+     */
+    private static long sizeOf(final ParserResult result) {
+        final CountingOutputStream output = new CountingOutputStream(OutputStream.nullOutputStream());
+        try {
+            ObjectMappers.JSON.writeValue(output, result);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Unable to estimate the size of a job result");
+        }
+        return output.getByteCount();
+    }
+
+    private void completed(final ExtractionJob job) {
+        synchronized (completed) {
+            completed.addLast(job);
+            completedBytes += job.getResultBytes();
+        }
+        purge();
+    }
+
+    /**
+     * Forget the results which expired, and the oldest results if there are too many or if they are too large.
+     * A result larger than the limit is not kept.
+     */
+    private void purge() {
+        final long expiration = System.currentTimeMillis() - resultTtl;
+        synchronized (completed) {
+            ExtractionJob oldest;
+            while ((oldest = completed.peekFirst()) != null && (completed.size() > maxResults ||
+                    completedBytes > maxResultBytes || oldest.getEndTime() < expiration)) {
+                completed.removeFirst();
+                completedBytes -= oldest.getResultBytes();
+                jobs.remove(oldest.id, oldest);
+            }
+        }
+    }
+
+    ExtractionJob get(final String id) {
+        purge();
+        return jobs.get(id);
+    }
+
+    /**
+     * Cancel the job if it is pending, and forget it.
+     */
+    ExtractionJob remove(final String id) {
+        final ExtractionJob job = jobs.remove(id);
+        if (job != null)
+            job.cancel();
+        return job;
+    }
+
+    @Override
+    public void close() {
+        jobs.values().forEach(ExtractionJob::cancel);
+        // The queued jobs only release their resources
+        executor.shutdownNow().forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.core.MultivaluedMap;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * The limits of an extraction given by the request parameters.
+ * The built-in parsers stop reading as soon as a limit is reached,
+ * the {@link ExtractorManager} applies the limits to the results of the other parsers.
+ * A result which has been cut has the {@link ParserInterface#TRUNCATED} meta.
+ */
+public final class ExtractionLimits {
+
+    public final static ParserField MAX_CONTENT_LENGTH = ParserField.newInteger("max_content_length",
+            "The maximum number of characters of the content of each document");
+
+    public final static ParserField MAX_DOCUMENTS =
+            ParserField.newInteger("max_documents", "The maximum number of documents returned");
+
+    public final static ParserField MAX_BYTES =
+            ParserField.newInteger("max_bytes", "The maximum number of bytes read from the file");
+
+    private final static ExtractionLimits NONE =
+            new ExtractionLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    public final int maxContentLength;
+
+    public final int maxDocuments;
+
+    public final long maxBytes;
+
+    private ExtractionLimits(final int maxContentLength, final int maxDocuments, final long maxBytes) {
+        this.maxContentLength = maxContentLength;
+        this.maxDocuments = maxDocuments;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param parameters the parameters of the request
+     * @return the limits, without any limit if no parameter is given
+     * @throws BadRequestException if a parameter is not a positive number
+     */
+    public static ExtractionLimits of(final MultivaluedMap<String, String> parameters) {
+        final long maxContentLength = getLimit(parameters, MAX_CONTENT_LENGTH, Integer.MAX_VALUE);
+        final long maxDocuments = getLimit(parameters, MAX_DOCUMENTS, Integer.MAX_VALUE);
+        final long maxBytes = getLimit(parameters, MAX_BYTES, Long.MAX_VALUE);
+        if (maxContentLength == Integer.MAX_VALUE && maxDocuments == Integer.MAX_VALUE && maxBytes == Long.MAX_VALUE)
+            return NONE;
+        return new ExtractionLimits((int) maxContentLength, (int) maxDocuments, maxBytes);
+    }
+
+    private static long getLimit(final MultivaluedMap<String, String> parameters,
+                                 final ParserField field,
+                                 final long maxValue) {
+        final String param = ParserUtils.getParameterValue(parameters, field, 0);
+        if (param == null)
+            return maxValue;
+        final long limit;
+        try {
+            limit = Long.parseLong(param.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("The " + field.name + " parameter is not a valid number: " + param);
+        }
+        if (limit < 0)
+            throw new BadRequestException("The " + field.name + " parameter should be positive: " + param);
+        return Math.min(limit, maxValue);
+    }
+
+    /**
+     * @param inputStream the stream to read
+     * @return a stream which ends after {@link #maxBytes} bytes
+     */
+    public LimitedInputStream limit(final InputStream inputStream) {
+        return new LimitedInputStream(inputStream, maxBytes);
+    }
+
+    /**
+     * Read the content, without reading more characters than needed.
+     * One more character than the limit is returned when the content is longer,
+     * see {@link #isContentTruncated(String)}.
+     *
+     * @param reader the content to read
+     * @return the content, with at most {@link #maxContentLength} + 1 characters
+     * @throws IOException if the content can't be read
+     */
+    public String readContent(final Reader reader) throws IOException {
+        if (maxContentLength == Integer.MAX_VALUE)
+            return IOUtils.toString(reader);
+        final char[] buffer = new char[Math.min(maxContentLength + 1, IOUtils.DEFAULT_BUFFER_SIZE)];
+        final StringBuilder sb = new StringBuilder(buffer.length);
+        int read;
+        while (sb.length() <= maxContentLength &&
+                (read = reader.read(buffer, 0, Math.min(buffer.length, maxContentLength + 1 - sb.length()))) != -1)
+            sb.append(buffer, 0, read);
+        return sb.toString();
+    }
+
+    public boolean isContentTruncated(final String content) {
+        return content != null && content.length() > maxContentLength;
+    }
+
+    /**
+     * @param content the content of a document
+     * @return the first {@link #maxContentLength} characters, a surrogate pair is never split
+     */
+    public String truncateContent(final String content) {
+        return isContentTruncated(content) ? truncate(content, maxContentLength) : content;
+    }
+
+    private static String truncate(final String text, final int maxLength) {
+        int length = maxLength;
+        if (length > 0 && Character.isHighSurrogate(text.charAt(length - 1)))
+            length--;
+        return text.substring(0, length);
+    }
+
+    /**
+     * @return the same document if the content is short enough, or a copy with a truncated content
+     */
+    Map<String, Object> limitContent(final Map<String, Object> document) {
+        if (maxContentLength == Integer.MAX_VALUE || document == null)
+            return document;
+        final Object content = document.get(ParserInterface.CONTENT.name);
+        final Object limitedContent;
+        if (content instanceof String)
+            limitedContent = truncateContent((String) content);
+        else if (content instanceof Collection)
+            limitedContent = limitContent((Collection<?>) content);
+        else
+            return document;
+        if (limitedContent == content)
+            return document;
+        final Map<String, Object> limitedDocument = new LinkedHashMap<>(document);
+        limitedDocument.put(ParserInterface.CONTENT.name, limitedContent);
+        return limitedDocument;
+    }
+
+    /**
+     * The limit applies to the sum of the values
+     */
+    private Object limitContent(final Collection<?> values) {
+        int remaining = maxContentLength;
+        for (final Object value : values)
+            if (value != null)
+                remaining -= value.toString().length();
+        if (remaining >= 0)
+            return values;
+        remaining = maxContentLength;
+        final List<Object> limitedValues = new ArrayList<>(values.size());
+        for (final Object value : values) {
+            if (remaining <= 0)
+                break;
+            if (value == null)
+                continue;
+            final String text = value.toString();
+            if (text.length() <= remaining) {
+                limitedValues.add(value);
+                remaining -= text.length();
+            } else {
+                limitedValues.add(truncate(text, remaining));
+                remaining = 0;
+            }
+        }
+        return limitedValues;
+    }
+
+    /**
+     * Ends after a maximum number of bytes, and tells if there was more to read.
+     */
+    public final static class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private boolean truncated;
+
+        private LimitedInputStream(final InputStream inputStream, final long maxBytes) {
+            super(inputStream);
+            this.remaining = maxBytes;
+        }
+
+        /**
+         * Check if the wrapped stream has one more byte
+         */
+        private int endOfStream() throws IOException {
+            if (!truncated && super.read() != -1)
+                truncated = true;
+            return -1;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0)
+                return endOfStream();
+            final int b = super.read();
+            if (b != -1)
+                remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (length == 0)
+                return 0;
+            if (remaining <= 0)
+                return endOfStream();
+            final int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0)
+                remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * @return true if the end of the limited stream has been reached before the end of the wrapped stream
+         */
+        public boolean isTruncated() {
+            return truncated;
+        }
+    }
+}
@@ -14,67 +14,543 @@
  */
 package com.qwazr.extractor;
 
+import com.qwazr.extractor.parser.TextParser;
+import com.qwazr.extractor.util.ImagePHash;
 import com.qwazr.server.ServerException;
 import com.qwazr.utils.IOUtils;
 import com.qwazr.utils.LoggerUtils;
+import com.qwazr.utils.concurrent.ConsumerEx;
 import com.qwazr.utils.concurrent.FunctionEx;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.NotAcceptableException;
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.TeeInputStream;
 
 public class ExtractorManager implements ParserInterface, AutoCloseable {
 
     private final static Logger LOGGER = LoggerUtils.getLogger(ExtractorManager.class);
 
+    /**
+     * Default maximum extraction time
+     */
+    public final static long DEFAULT_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * The longest wait for the end of an extraction job
+     */
+    public final static long MAX_JOB_WAIT_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /**
+     * How long a finished directory job is kept by default
+     */
+    public final static long DEFAULT_DIRECTORY_JOB_TTL_MS = TimeUnit.HOURS.toMillis(24);
+
+    /**
+     * The default maximum number of finished directory jobs kept
+     */
+    public final static int DEFAULT_MAX_DIRECTORY_JOBS = 100;
+
+    public final static ParserField TIMEOUT =
+            ParserField.newInteger("timeout", "The maximum extraction time in milliseconds");
+
+    public final static ParserField PARALLELISM =
+            ParserField.newInteger("parallelism", "The maximum number of files of a batch extracted concurrently");
+
+    public final static ParserField DETECT_LANGUAGES = ParserField.newBoolean("detect_languages",
+            "Detect the language of each document from its content, when the parser did not");
+
+    public final static ParserField LANG_DETECTION_TIME = ParserField.newInteger("lang_detection_time",
+            "The time spent detecting the language of the documents, in milliseconds");
+
+    public final static ParserField PHASH_INDEX =
+            ParserField.newBoolean("phash_index", "Add the perceptual hashes of the images to the index");
+
+    public final static ParserField PHASH_KEY = ParserField.newString("phash_key",
+            "The key of the image in the perceptual hash index, by default the path of the file");
+
+    /**
+     * The default maximum distance of a perceptual hash search
+     */
+    public final static int DEFAULT_PHASH_DISTANCE = 8;
+
+    /**
+     * The default maximum number of images returned by a perceptual hash search
+     */
+    public final static int DEFAULT_PHASH_LIMIT = 100;
+
+    /**
+     * The parameters which don't change the extracted content
+     */
+    private final static Set<String> CACHE_IGNORED_PARAMETERS =
+            Set.of(TIMEOUT.name, PARALLELISM.name, PHASH_INDEX.name, PHASH_KEY.name);
+
     private final ExtractorServiceInterface service;
 
     private final List<ParserLoader> parserLoaders;
 
-    private final Map<MediaType, List<Parser>> mimeTypesMap;
+    private volatile ParserRegistry<Parser> registry;
+
+    private volatile int spillMemoryThreshold;
 
-    private final Map<String, List<Parser>> extensionsMap;
+    private volatile int parserPoolSize;
 
-    private final SortedMap<String, ParserFactory> parserFactories;
+    private volatile int defaultConcurrency;
+
+    private final Map<String, Integer> parserConcurrencies;
+
+    private volatile long defaultTimeout;
+
+    private final ThreadPoolExecutor batchExecutor;
+
+    private final ExecutorService jobExecutor;
+
+    private final Map<String, DirectoryJob> directoryJobs;
+
+    private volatile long directoryJobTtl;
+
+    private volatile int maxDirectoryJobs;
+
+    private final ExtractionJobs extractionJobs;
+
+    private volatile ExtractionCache cache;
+
+    private final LanguageDetectionStage languageDetection;
+
+    private volatile NearDuplicateIndex phashIndex;
 
     public ExtractorManager() {
         parserLoaders = Collections.synchronizedList(new ArrayList<>());
-        mimeTypesMap = new ConcurrentHashMap<>();
-        extensionsMap = new ConcurrentHashMap<>();
-        parserFactories = Collections.synchronizedSortedMap(new TreeMap<>());
+        registry = ParserRegistry.empty(Parser[]::new);
+        spillMemoryThreshold = SpillBuffer.DEFAULT_MEMORY_THRESHOLD;
+        parserPoolSize = Runtime.getRuntime().availableProcessors();
+        defaultConcurrency = Runtime.getRuntime().availableProcessors();
+        parserConcurrencies = new ConcurrentHashMap<>();
+        defaultTimeout = DEFAULT_TIMEOUT_MS;
+        final int batchConcurrency = Runtime.getRuntime().availableProcessors();
+        batchExecutor = new ThreadPoolExecutor(batchConcurrency, batchConcurrency, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(), daemonThreadFactory("extractor-batch-"));
+        batchExecutor.allowCoreThreadTimeOut(true);
+        jobExecutor = Executors.newCachedThreadPool(daemonThreadFactory("extractor-job-"));
+        directoryJobs = new ConcurrentHashMap<>();
+        directoryJobTtl = DEFAULT_DIRECTORY_JOB_TTL_MS;
+        maxDirectoryJobs = DEFAULT_MAX_DIRECTORY_JOBS;
+        extractionJobs = new ExtractionJobs(Runtime.getRuntime().availableProcessors(),
+                daemonThreadFactory("extractor-async-"));
+        languageDetection = new LanguageDetectionStage(Runtime.getRuntime().availableProcessors());
         service = new ExtractorServiceImpl(this);
     }
 
+    private static ThreadFactory daemonThreadFactory(final String namePrefix) {
+        final AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
     public ExtractorServiceInterface getService() {
         return service;
     }
 
     public Set<String> getParserNames() {
-        return parserFactories.keySet();
+        return registry.getParsers().keySet();
+    }
+
+    public ExtractorStatus getStatus() {
+        final long now = System.currentTimeMillis();
+        final SortedMap<String, ParserStatus> parserStatus = new TreeMap<>();
+        final SortedMap<String, List<ExtractorStatus.Rank>> dispatchStatus = new TreeMap<>();
+        registry.getParsers().forEach((name, parser) -> {
+            parserStatus.put(name, parser.getStatus());
+            parser.rankings.forEach((key, ranking) -> dispatchStatus
+                    .computeIfAbsent(key, k -> new ArrayList<>())
+                    .add(ranking.getStatus(name, now)));
+        });
+        dispatchStatus.values().forEach(ranks -> ranks.sort(
+                Comparator.comparing((ExtractorStatus.Rank rank) -> rank.circuitOpen)
+                        .thenComparing(rank -> -rank.score)));
+        final ExtractionCache currentCache = cache;
+        final NearDuplicateIndex currentIndex = phashIndex;
+        return new ExtractorStatus(parserStatus, dispatchStatus, currentCache == null ? null : currentCache.getStatus(),
+                currentIndex == null ? null : currentIndex.getStatus());
+    }
+
+    /**
+     * Set how many bytes of an uploaded stream are kept in memory when several parsers may be tried.
+     * The remaining bytes are spilled to a temporary file.
+     *
+     * @param memoryThreshold the number of bytes kept in memory
+     * @return the current instance
+     */
+    public ExtractorManager spillMemoryThreshold(final int memoryThreshold) {
+        if (memoryThreshold < 0)
+            throw new IllegalArgumentException("The memory threshold should be positive: " + memoryThreshold);
+        this.spillMemoryThreshold = memoryThreshold;
+        return this;
+    }
+
+    /**
+     * Set how many idle instances of a {@link ParserFactory.ThreadSafety#REUSABLE} parser are kept.
+     * It applies to the parsers registered afterwards.
+     *
+     * @param poolSize the maximum number of idle instances per parser
+     * @return the current instance
+     */
+    public ExtractorManager parserPoolSize(final int poolSize) {
+        if (poolSize < 1)
+            throw new IllegalArgumentException("The pool size should be greater than zero: " + poolSize);
+        this.parserPoolSize = poolSize;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of concurrent extractions for the parsers
+     * which don't have a specific limit.
+     * It applies to the parsers registered afterwards.
+     *
+     * @param concurrency the maximum number of concurrent extractions per parser
+     * @return the current instance
+     */
+    public ExtractorManager defaultConcurrency(final int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("The concurrency should be greater than zero: " + concurrency);
+        this.defaultConcurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of concurrent extractions for one parser.
+     * It applies if the parser is registered afterwards.
+     *
+     * @param parserName  the name of the parser
+     * @param concurrency the maximum number of concurrent extractions
+     * @return the current instance
+     */
+    public ExtractorManager parserConcurrency(final String parserName, final int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("The concurrency should be greater than zero: " + concurrency);
+        parserConcurrencies.put(parserName, concurrency);
+        return this;
+    }
+
+    /**
+     * Set the maximum extraction time used when the request does not provide a timeout parameter.
+     *
+     * @param timeoutMillis the timeout in milliseconds
+     * @return the current instance
+     */
+    public ExtractorManager defaultTimeout(final long timeoutMillis) {
+        if (timeoutMillis < 1)
+            throw new IllegalArgumentException("The timeout should be greater than zero: " + timeoutMillis);
+        this.defaultTimeout = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * Set the number of threads shared by the batch extractions.
+     * It is also the maximum parallelism of one batch.
+     *
+     * @param concurrency the number of batch threads
+     * @return the current instance
+     */
+    public ExtractorManager batchConcurrency(final int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("The concurrency should be greater than zero: " + concurrency);
+        synchronized (batchExecutor) {
+            // The core size can't exceed the maximum size
+            if (concurrency > batchExecutor.getMaximumPoolSize()) {
+                batchExecutor.setMaximumPoolSize(concurrency);
+                batchExecutor.setCorePoolSize(concurrency);
+            } else {
+                batchExecutor.setCorePoolSize(concurrency);
+                batchExecutor.setMaximumPoolSize(concurrency);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Set the number of background extractions running concurrently.
+     *
+     * @param concurrency the number of threads running the extraction jobs
+     * @return the current instance
+     */
+    public ExtractorManager jobConcurrency(final int concurrency) {
+        if (concurrency < 1)
+            throw new IllegalArgumentException("The concurrency should be greater than zero: " + concurrency);
+        extractionJobs.setConcurrency(concurrency);
+        return this;
+    }
+
+    /**
+     * Set how many extraction jobs may wait for a thread.
+     * When the queue is full, the new jobs are refused with a 503 error.
+     *
+     * @param queueSize the maximum number of waiting jobs
+     * @return the current instance
+     */
+    public ExtractorManager jobQueueSize(final int queueSize) {
+        if (queueSize < 0)
+            throw new IllegalArgumentException("The queue size should be positive: " + queueSize);
+        extractionJobs.setQueueSize(queueSize);
+        return this;
+    }
+
+    /**
+     * Set the number of documents from which the language detection runs in parallel.
+     * Below, the documents are detected by the thread of the request.
+     *
+     * @param threshold the minimum number of documents detected in parallel
+     * @return the current instance
+     */
+    public ExtractorManager languageDetectionThreshold(final int threshold) {
+        if (threshold < 1)
+            throw new IllegalArgumentException("The threshold should be greater than zero: " + threshold);
+        languageDetection.setThreshold(threshold);
+        return this;
+    }
+
+    /**
+     * Set how long the result of a completed job is kept, and how many results are kept.
+     *
+     * @param resultTtlMillis the time to live of the results in milliseconds
+     * @param maxResults      the maximum number of results
+     * @return the current instance
+     */
+    public ExtractorManager jobResults(final long resultTtlMillis, final int maxResults) {
+        if (resultTtlMillis < 1)
+            throw new IllegalArgumentException("The time to live should be greater than zero: " + resultTtlMillis);
+        if (maxResults < 1)
+            throw new IllegalArgumentException("The number of results should be greater than zero: " + maxResults);
+        extractionJobs.setResultTtl(resultTtlMillis);
+        extractionJobs.setMaxResults(maxResults);
+        return this;
+    }
+
+    /**
+     * Set how long a finished directory job is kept, and how many finished directory jobs are kept.
+     * The running jobs are always kept.
+     *
+     * @param ttlMillis the time to live of the finished jobs in milliseconds
+     * @param maxJobs   the maximum number of finished jobs
+     * @return the current instance
+     */
+    public ExtractorManager directoryJobs(final long ttlMillis, final int maxJobs) {
+        if (ttlMillis < 1)
+            throw new IllegalArgumentException("The time to live should be greater than zero: " + ttlMillis);
+        if (maxJobs < 1)
+            throw new IllegalArgumentException("The number of jobs should be greater than zero: " + maxJobs);
+        directoryJobTtl = ttlMillis;
+        maxDirectoryJobs = maxJobs;
+        purgeDirectoryJobs();
+        return this;
+    }
+
+    /**
+     * Set the memory used by the results of the completed jobs, estimated by the size of their JSON.
+     * The oldest results are forgotten first, a larger result is not kept.
+     *
+     * @param maxBytes the maximum size of the kept results
+     * @return the current instance
+     */
+    public ExtractorManager jobResultsMemory(final long maxBytes) {
+        if (maxBytes < 1)
+            throw new IllegalArgumentException("The size should be greater than zero: " + maxBytes);
+        extractionJobs.setMaxResultBytes(maxBytes);
+        return this;
+    }
+
+    /**
+     * Enable the cache of the extraction results.
+     * The key of a result is the digest of the content, the media type or the extension, and the parameters.
+     *
+     * @param directory      the directory of the disk tier, or null to keep the results in memory only
+     * @param memoryMaxBytes the maximum size of the serialized results kept in memory
+     * @param diskMaxBytes   the maximum size of the serialized results kept in the directory
+     * @return the current instance
+     */
+    public ExtractorManager cache(final Path directory, final long memoryMaxBytes, final long diskMaxBytes) {
+        if (memoryMaxBytes < 0 || diskMaxBytes < 0)
+            throw new IllegalArgumentException("The cache sizes should be positive");
+        try {
+            cache = new ExtractionCache(directory, memoryMaxBytes, diskMaxBytes);
+        } catch (IOException e) {
+            throw new InternalServerErrorException("An error occurs while opening the cache directory: " + directory,
+                    e);
+        }
+        return this;
+    }
+
+    /**
+     * Enable the index of the perceptual hashes of the images.
+     * The images are added by the extractions which have the phash_index parameter.
+     *
+     * @param file the file of the index, created if it does not exist
+     * @return the current instance
+     */
+    public synchronized ExtractorManager phashIndex(final Path file) {
+        final NearDuplicateIndex previousIndex = phashIndex;
+        try {
+            phashIndex = new NearDuplicateIndex(file, ImagePHash.DEFAULT_BITS);
+        } catch (IOException e) {
+            throw new InternalServerErrorException("An error occurs while opening the phash index: " + file, e);
+        }
+        IOUtils.closeQuietly(previousIndex);
+        return this;
+    }
+
+    /**
+     * Find the indexed images near a perceptual hash.
+     *
+     * @param phash       the hash, as returned in the phash field
+     * @param maxDistance the maximum number of different bits, {@link #DEFAULT_PHASH_DISTANCE} if null
+     * @param limit       the maximum number of images returned, {@link #DEFAULT_PHASH_LIMIT} if null
+     * @return the nearest images first
+     */
+    public PHashSearchResult searchPHash(final String phash, final Integer maxDistance, final Integer limit) {
+        final NearDuplicateIndex currentIndex = phashIndex;
+        if (currentIndex == null)
+            throw new NotFoundException("The phash index is not enabled");
+        if (phash == null || phash.isEmpty())
+            throw new BadRequestException("The hash parameter is missing");
+        final long hash = parsePHash(phash);
+        if (maxDistance != null && (maxDistance < 0 || maxDistance > Long.SIZE))
+            throw new BadRequestException("The distance should be between 0 and 64: " + maxDistance);
+        if (limit != null && limit < 1)
+            throw new BadRequestException("The limit should be greater than zero: " + limit);
+        return currentIndex.search(hash, maxDistance == null ? DEFAULT_PHASH_DISTANCE : maxDistance,
+                limit == null ? DEFAULT_PHASH_LIMIT : limit);
+    }
+
+    /**
+     * @param phash a hash made of {@link ImagePHash#DEFAULT_BITS} binary digits, the highest bit first
+     * @return the bits of the hash
+     */
+    private static long parsePHash(final String phash) {
+        if (phash.length() != ImagePHash.DEFAULT_BITS)
+            throw new BadRequestException("Not a valid perceptual hash: " + phash);
+        long hash = 0;
+        for (int i = 0; i < phash.length(); i++) {
+            final char c = phash.charAt(i);
+            if (c != '0' && c != '1')
+                throw new BadRequestException("Not a valid perceptual hash: " + phash);
+            hash = (hash << 1) | (c - '0');
+        }
+        return hash;
+    }
+
+    /**
+     * @param parameters the parameters of the request
+     * @param filePath   the extracted file, null for a stream
+     * @return the key of the images in the index, or null if the images are not indexed
+     */
+    private String getPHashKey(final MultivaluedMap<String, String> parameters, final Path filePath) {
+        if (!Boolean.parseBoolean(ParserUtils.getParameterValue(parameters, PHASH_INDEX, 0)))
+            return null;
+        if (phashIndex == null)
+            throw new BadRequestException("The phash index is not enabled");
+        final String key = ParserUtils.getParameterValue(parameters, PHASH_KEY, 0);
+        if (key == null && filePath == null)
+            throw new BadRequestException("The " + PHASH_KEY.name + " parameter is required to index a stream");
+        final String indexKey = key != null ? key : filePath.toString();
+        if (!NearDuplicateIndex.isValidKey(indexKey))
+            throw new BadRequestException("The key of the phash index is longer than "
+                    + NearDuplicateIndex.MAX_KEY_LENGTH + " bytes");
+        return indexKey;
+    }
+
+    /**
+     * Add the perceptual hash of each document to the index
+     */
+    private ParserResult indexPHashes(final String key, final ParserResult result) throws IOException {
+        if (key == null || result.documents == null)
+            return result;
+        final List<Object> phashes = new ArrayList<>();
+        for (final Map<String, Object> document : result.documents)
+            PHashIndexSink.collect(document, phashes);
+        indexPHashes(key, phashes);
+        return result;
+    }
+
+    private void indexPHashes(final String key, final List<Object> phashes) throws IOException {
+        final NearDuplicateIndex currentIndex = phashIndex;
+        if (currentIndex == null)
+            return;
+        for (final Object phash : phashes) {
+            try {
+                currentIndex.add(key, parsePHash(phash.toString()));
+            } catch (BadRequestException e) {
+                LOGGER.warning(() -> "Ignoring an invalid perceptual hash of " + key + ": " + phash);
+            }
+        }
+    }
+
+    /**
+     * @return the sink which indexes the perceptual hashes of the streamed documents
+     */
+    private ResultSink indexingSink(final String key, final ResultSink sink) {
+        return key == null ? sink : new PHashIndexSink(sink, phashes -> indexPHashes(key, phashes));
+    }
+
+    private ParserPool newPool(final ParserFactory factory) {
+        return ParserPool.of(factory, parserPoolSize);
+    }
+
+    private ParserBulkhead newBulkhead(final ParserFactory factory) {
+        final String name = factory.getName();
+        return new ParserBulkhead(name, parserConcurrencies.getOrDefault(name, defaultConcurrency));
     }
 
     public ExtractorManager registerServices() {
         ServiceLoader
                 .load(ParserFactory.class, Thread.currentThread().getContextClassLoader())
-                .forEach(factory -> register(factory, new Parser(factory)));
+                .forEach(factory -> register(factory, new Parser(newPool(factory), newBulkhead(factory))));
         return this;
     }
 
@@ -85,7 +561,8 @@ public class ExtractorManager implements ParserInterface, AutoCloseable {
             loader.apply(classLoader -> {
                 ServiceLoader.
                         load(ParserFactory.class, classLoader)
-                        .forEach(factory -> register(factory, new ParserWithClassloader(loader, factory)));
+                        .forEach(factory -> register(factory,
+                                new ParserWithClassloader(loader, newPool(factory), newBulkhead(factory))));
                 return null;
             });
             return this;
@@ -110,48 +587,104 @@ public class ExtractorManager implements ParserInterface, AutoCloseable {
         return this;
     }
 
-    private void register(final ParserFactory parserFactory, final Parser parser) {
-        synchronized (parserFactories) {
-            final Collection<String> extensions = parserFactory.getSupportedFileExtensions();
-            if (extensions != null)
-                for (final String extension : extensions)
-                    extensionsMap.computeIfAbsent(extension,
-                            e -> Collections.synchronizedList(new ArrayList<>()))
-                            .add(parser);
-            final Collection<MediaType> mimeTypes = parserFactory.getSupportedMimeTypes();
-            if (mimeTypes != null)
-                for (final MediaType mimeType : mimeTypes)
-                    mimeTypesMap.computeIfAbsent(mimeType,
-                            t -> Collections.synchronizedList(new ArrayList<>()))
-                            .add(parser);
-            parserFactories.put(parserFactory.getName(), parserFactory);
-        }
+    /**
+     * A new registry snapshot is published, the extractions in progress keep using the previous one.
+     */
+    private synchronized void register(final ParserFactory parserFactory, final Parser parser) {
+        registry = registry.with(parserFactory, parser);
     }
 
     public ParserDefinition getParserDefinition(String parserName) {
-        final ParserFactory factory = parserFactories.get(parserName);
-        return factory == null ? null : new ParserDefinition(factory);
+        final Parser parser = registry.get(parserName);
+        return parser == null ? null : new ParserDefinition(parser.pool.factory);
     }
 
     @Override
     public synchronized void close() {
-        mimeTypesMap.clear();
-        extensionsMap.clear();
+        directoryJobs.values().forEach(DirectoryJob::cancel);
+        jobExecutor.shutdownNow();
+        extractionJobs.close();
+        batchExecutor.shutdownNow();
+        languageDetection.close();
+        IOUtils.closeQuietly(phashIndex);
+        registry.getParsers().values().forEach(parser -> parser.bulkhead.close());
+        registry = ParserRegistry.empty(Parser[]::new);
         for (final ParserLoader parserLoader : parserLoaders)
             IOUtils.closeQuietly(parserLoader);
         parserLoaders.clear();
     }
 
-    private ParserResult tryParsers(final String info,
-                                    final Collection<Parser> parsers,
+    /**
+     * Order the candidates by decreasing score.
+     * The parsers with an open circuit are skipped, unless every candidate has an open circuit.
+     */
+    private static Parser[] rankParsers(final String dispatchKey, final Parser[] candidates) {
+        final long now = System.currentTimeMillis();
+        final Parser[] ordered = candidates.clone();
+        // The sort is stable, the registration order is kept for equal scores
+        Arrays.sort(ordered,
+                Comparator.comparingDouble((Parser parser) -> parser.getRanking(dispatchKey).getScore()).reversed());
+        int closed = 0;
+        for (final Parser parser : ordered)
+            if (!parser.getRanking(dispatchKey).isOpen(now))
+                ordered[closed++] = parser;
+        return closed == 0 ? candidates : Arrays.copyOf(ordered, closed);
+    }
+
+    /**
+     * @return the deadline of the extraction, relative to {@link System#nanoTime()}
+     */
+    private long getDeadline(final MultivaluedMap<String, String> parameters) {
+        final String timeoutParam = ParserUtils.getParameterValue(parameters, TIMEOUT, 0);
+        long timeout = defaultTimeout;
+        if (timeoutParam != null) {
+            try {
+                timeout = Long.parseLong(timeoutParam.trim());
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("The timeout parameter is not a valid number: " + timeoutParam);
+            }
+            if (timeout < 1)
+                throw new BadRequestException("The timeout should be greater than zero: " + timeoutParam);
+        }
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    }
+
+    /**
+     * Each parser runs in its own bulkhead. The deadline is shared by the successive attempts.
+     * The next parser is only tried if the fallback supplier allows it.
+     */
+    private ParserResult tryParsers(final MultivaluedMap<String, String> parameters,
+                                    final String info,
+                                    final String dispatchKey,
+                                    final long deadline,
+                                    final Parser[] candidates,
+                                    final BooleanSupplier fallback,
                                     final FunctionEx<Parser, ParserResult, IOException> parserFunction) throws IOException {
-        if (parsers == null || parsers.isEmpty())
+        if (candidates.length == 0)
             throw new NotAcceptableException("No parser found: " + info);
+        checkRequestedFields(parameters, candidates);
+        // The ranking is only useful when there is a choice
+        final boolean ranked = candidates.length > 1;
+        final Parser[] parsers = ranked ? rankParsers(dispatchKey, candidates) : candidates;
         List<Exception> exceptions = null;
         for (final Parser parser : parsers) {
+            final ParserRanking ranking = ranked ? parser.getRanking(dispatchKey) : null;
+            final long startTime = System.nanoTime();
             try {
-                return parserFunction.apply(parser);
-            } catch (Exception e) {
+                final ParserResult result = parser.bulkhead.execute(() -> parserFunction.apply(parser),
+                        TimeUnit.NANOSECONDS.toMillis(deadline - startTime));
+                if (ranking != null)
+                    ranking.success(System.nanoTime() - startTime);
+                return result;
+            } catch (ServiceUnavailableException e) {
+                // The bulkhead of the parser is full
+                throw e;
+            } catch (IOException | RuntimeException e) {
+                if (ranking != null)
+                    ranking.failure(System.nanoTime() - startTime);
+                // No time left for the next parsers, or the result has already been partially written
+                if (System.nanoTime() - deadline >= 0 || !fallback.getAsBoolean())
+                    throw e;
                 if (exceptions == null)
                     exceptions = new ArrayList<>();
                 exceptions.add(e);
@@ -161,6 +694,9 @@ public class ExtractorManager implements ParserInterface, AutoCloseable {
             final Exception exception = exceptions.get(0);
             if (exception instanceof IOException)
                 throw (IOException) exception;
+            // Keep the status given by the parser (a bad parameter, a too large image)
+            if (exception instanceof WebApplicationException)
+                throw (WebApplicationException) exception;
         }
         for (final Exception exception : exceptions) {
             LOGGER.log(Level.WARNING, exception.getMessage(), exception);
@@ -168,6 +704,26 @@ public class ExtractorManager implements ParserInterface, AutoCloseable {
         throw new InternalServerErrorException("Every parser failed on '" + info + "'. See the emitted warning logs for details.");
     }
 
+    /**
+     * Each requested field must be known by at least one of the candidates
+     */
+    private static void checkRequestedFields(final MultivaluedMap<String, String> parameters,
+                                             final Parser[] candidates) {
+        final Set<String> requestedFields = ParserUtils.getRequestedFields(parameters);
+        if (requestedFields == null)
+            return;
+        if (requestedFields.isEmpty())
+            throw new BadRequestException("The fields parameter is empty");
+        final Set<String> unknownFields = new TreeSet<>(requestedFields);
+        for (final Parser parser : candidates) {
+            final Collection<ParserField> fields = parser.pool.factory.getFields();
+            if (fields != null)
+                fields.forEach(field -> unknownFields.remove(field.name));
+        }
+        if (!unknownFields.isEmpty())
+            throw new BadRequestException("Unknown fields: " + String.join(", ", unknownFields));
+    }
+
     private void checkPathIsRegularFile(final Path filePath) throws ServerException {
         if (filePath == null)
             throw new NotAcceptableException("The file path is missing");
@@ -177,42 +733,579 @@ public class ExtractorManager implements ParserInterface, AutoCloseable {
             throw new NotAcceptableException("The path is not a regular file: " + filePath.toAbsolutePath());
     }
 
+    /**
+     * When several parsers are candidates, the stream is recorded while the first parser reads it.
+     * If the parser fails, the next parser reads the recorded content from the beginning.
+     */
+    private ParserResult tryParsers(final MultivaluedMap<String, String> parameters,
+                                    final InputStream inputStream,
+                                    final MediaType mimeType,
+                                    final Parser[] parsers,
+                                    final BooleanSupplier fallback,
+                                    final StreamExtraction extraction) throws IOException {
+        final long deadline = getDeadline(parameters);
+        if (parsers.length <= 1)
+            return tryParsers(parameters, mimeType.toString(), null, deadline, parsers, fallback,
+                    parser -> extraction.apply(parser, inputStream, mimeType));
+        try (final SpillBuffer spillBuffer = new SpillBuffer(spillMemoryThreshold)) {
+            final InputStream teeStream = new TeeInputStream(new CloseShieldInputStream(inputStream), spillBuffer);
+            final AtomicBoolean firstAttempt = new AtomicBoolean(true);
+            return tryParsers(parameters, mimeType.toString(), ParserRanking.keyOf(mimeType), deadline, parsers,
+                    fallback, parser -> {
+                        if (firstAttempt.getAndSet(false))
+                            return extraction.apply(parser, teeStream, mimeType);
+                        // Record what has not been consumed by the previous parsers, then rewind
+                        inputStream.transferTo(spillBuffer);
+                        return extraction.apply(parser, spillBuffer.newInputStream(), mimeType);
+                    });
+        }
+    }
+
+    /**
+     * Find the parsers of the media type, which is detected if it is missing or too generic.
+     */
+    private ParserResult tryParsers(final MultivaluedMap<String, String> parameters,
+                                    final InputStream inputStream,
+                                    final MediaType mimeType,
+                                    final BooleanSupplier fallback,
+                                    final StreamExtraction extraction) throws IOException {
+        final ParserRegistry<Parser> currentRegistry = registry;
+        if (!MediaTypeDetector.isUndefined(mimeType))
+            return tryParsers(parameters, inputStream, mimeType, currentRegistry.forMediaType(mimeType), fallback,
+                    extraction);
+        // The media type is missing or too generic, let's sniff the first bytes
+        final InputStream markableStream = inputStream.markSupported() ?
+                inputStream :
+                new BufferedInputStream(inputStream, MediaTypeDetector.MAX_PREFIX_LENGTH);
+        final MediaType detectedType = currentRegistry.detector.detect(markableStream);
+        if (detectedType == null)
+            throw new NotAcceptableException("Unable to detect the media type of the stream: " + mimeType);
+        return tryParsers(parameters, markableStream, detectedType, currentRegistry.forMediaType(detectedType),
+                fallback, extraction);
+    }
+
+    /**
+     * Apply the limits, then detect the language of the documents if requested.
+     */
+    private ParserResult complete(final MultivaluedMap<String, String> parameters,
+                                  final ParserResult result,
+                                  final ExtractionLimits limits,
+                                  final boolean inputTruncated) {
+        final ParserResult limitedResult = result.limit(limits, inputTruncated);
+        return Boolean.parseBoolean(ParserUtils.getParameterValue(parameters, DETECT_LANGUAGES, 0)) ?
+                languageDetection.apply(limitedResult) :
+                limitedResult;
+    }
+
+    /**
+     * The stream is fully recorded while its digest is computed.
+     * If the result is not in the cache, the parsers read the recorded content.
+     */
+    private ParserResult extractCached(final ExtractionCache currentCache,
+                                       final MultivaluedMap<String, String> parameters,
+                                       final ExtractionLimits limits,
+                                       final ExtractionLimits.LimitedInputStream inputStream,
+                                       final MediaType mimeType) throws IOException {
+        final long deadline = getDeadline(parameters);
+        final ParserRegistry<Parser> currentRegistry = registry;
+        try (final SpillBuffer spillBuffer = new SpillBuffer(spillMemoryThreshold)) {
+            final MessageDigest digest = ExtractionCache.newDigest();
+            inputStream.transferTo(new DigestOutputStream(spillBuffer, digest));
+            MediaType mediaType = mimeType;
+            if (MediaTypeDetector.isUndefined(mediaType)) {
+                try (final InputStream prefixStream = new BufferedInputStream(spillBuffer.newInputStream(),
+                        MediaTypeDetector.MAX_PREFIX_LENGTH)) {
+                    mediaType = currentRegistry.detector.detect(prefixStream);
+                }
+                if (mediaType == null)
+                    throw new NotAcceptableException("Unable to detect the media type of the stream: " + mimeType);
+            }
+            final String dispatchKey = ParserRanking.keyOf(mediaType);
+            final String cacheKey =
+                    ExtractionCache.key(digest.digest(), dispatchKey, parameters, CACHE_IGNORED_PARAMETERS);
+            final ParserResult cachedResult = currentCache.get(cacheKey);
+            if (cachedResult != null)
+                return cachedResult;
+            final Parser[] parsers = currentRegistry.forMediaType(mediaType);
+            final MediaType parsedType = mediaType;
+            ParserResult result = tryParsers(parameters, parsedType.toString(),
+                    parsers.length > 1 ? dispatchKey : null, deadline, parsers, () -> true,
+                    parser -> parser.extract(parameters, spillBuffer.newInputStream(), parsedType));
+            result = complete(parameters, result, limits, inputStream.isTruncated());
+            currentCache.put(cacheKey, result);
+            return new ParserResult(result, ParserResult.CACHE_MISS);
+        }
+    }
+
     @Override
     public ParserResult extract(final MultivaluedMap<String, String> parameters,
                                 final InputStream inputStream,
                                 final MediaType mimeType) throws IOException {
-        return tryParsers(mimeType.toString(), mimeTypesMap.get(mimeType),
-                parser -> parser.extract(parameters, inputStream, mimeType));
+        final String phashKey = getPHashKey(parameters, null);
+        return indexPHashes(phashKey, extractStream(parameters, inputStream, mimeType));
+    }
+
+    private ParserResult extractStream(final MultivaluedMap<String, String> parameters,
+                                       final InputStream inputStream,
+                                       final MediaType mimeType) throws IOException {
+        final ExtractionLimits limits = ExtractionLimits.of(parameters);
+        final ExtractionLimits.LimitedInputStream limitedStream = limits.limit(inputStream);
+        final ExtractionCache currentCache = cache;
+        if (currentCache != null)
+            return extractCached(currentCache, parameters, limits, limitedStream, mimeType);
+        final ParserResult result = tryParsers(parameters, limitedStream, mimeType, () -> true,
+                (parser, stream, type) -> parser.extract(parameters, stream, type));
+        return complete(parameters, result, limits, limitedStream.isTruncated());
     }
 
     @Override
     public ParserResult extract(final MultivaluedMap<String, String> parameters,
                                 final Path filePath) throws IOException {
+        final String phashKey = getPHashKey(parameters, filePath);
+        return indexPHashes(phashKey, extractFile(parameters, filePath));
+    }
+
+    private ParserResult extractFile(final MultivaluedMap<String, String> parameters,
+                                     final Path filePath) throws IOException {
+        final long deadline = getDeadline(parameters);
+        final ExtractionLimits limits = ExtractionLimits.of(parameters);
         checkPathIsRegularFile(filePath);
         final String extension = ParserUtils.getExtension(filePath);
-        return tryParsers(extension, extensionsMap.get(extension),
-                parser -> parser.extract(parameters, filePath));
+        final Parser[] parsers = registry.forExtension(extension);
+        final String dispatchKey = ParserRanking.keyOf(extension);
+        final ExtractionCache currentCache = cache;
+        if (currentCache == null || parsers.length == 0 || isIncremental(parameters))
+            return complete(parameters, tryParsers(parameters, extension, parsers.length > 1 ? dispatchKey : null,
+                    deadline, parsers, () -> true, parser -> parser.extract(parameters, filePath)), limits, false);
+        final String cacheKey = ExtractionCache.key(ExtractionCache.digest(filePath), dispatchKey, parameters,
+                CACHE_IGNORED_PARAMETERS);
+        final ParserResult cachedResult = currentCache.get(cacheKey);
+        if (cachedResult != null)
+            return cachedResult;
+        final ParserResult result = complete(parameters, tryParsers(parameters, extension,
+                parsers.length > 1 ? dispatchKey : null, deadline, parsers, () -> true,
+                parser -> parser.extract(parameters, filePath)), limits, false);
+        currentCache.put(cacheKey, result);
+        return new ParserResult(result, ParserResult.CACHE_MISS);
+    }
+
+    /**
+     * An incremental extraction only reads the end of a growing file: it is not cached,
+     * the digest of the whole file would cost more than the extraction itself.
+     */
+    private static boolean isIncremental(final MultivaluedMap<String, String> parameters) {
+        return ParserUtils.getParameterValue(parameters, TextParser.OFFSET, 0) != null;
+    }
+
+    /**
+     * Extract a stream, the result is given to the sink piece by piece.
+     * A {@link StreamingParserInterface} writes each document as soon as it is complete,
+     * the result of the other parsers is written when the extraction is done.
+     * Once something has been written, a failure is not followed by an attempt with the next parser.
+     * When the cache is enabled, the complete result is built, cached, then written.
+     * With the phash_index parameter, the hashes of the images are indexed when the extraction ends.
+     *
+     * @param parameters  the extraction parameters
+     * @param inputStream the stream to extract
+     * @param mimeType    the media type of the stream
+     * @param sink        receives the metas and the documents
+     * @throws IOException if the stream can't be read or if the sink fails
+     */
+    public void extract(final MultivaluedMap<String, String> parameters,
+                        final InputStream inputStream,
+                        final MediaType mimeType,
+                        final ResultSink sink) throws IOException {
+        final String phashKey = getPHashKey(parameters, null);
+        final ExtractionLimits limits = ExtractionLimits.of(parameters);
+        final ExtractionLimits.LimitedInputStream limitedStream = limits.limit(inputStream);
+        final ExtractionCache currentCache = cache;
+        if (currentCache != null) {
+            indexPHashes(phashKey, extractCached(currentCache, parameters, limits, limitedStream, mimeType))
+                    .replay(sink);
+            return;
+        }
+        final GuardedResultSink guardedSink = new GuardedResultSink(
+                new LimitedResultSink(indexingSink(phashKey, sink), limits, limitedStream));
+        try {
+            tryParsers(parameters, limitedStream, mimeType, guardedSink::isRetryable,
+                    (parser, stream, type) -> parser.extract(parameters, stream, type, guardedSink));
+        } finally {
+            guardedSink.close();
+        }
+    }
+
+    /**
+     * Extract a file, the result is given to the sink piece by piece.
+     * See {@link #extract(MultivaluedMap, InputStream, MediaType, ResultSink)}.
+     *
+     * @param parameters the extraction parameters
+     * @param filePath   the file to extract
+     * @param sink       receives the metas and the documents
+     * @throws IOException if the file can't be read or if the sink fails
+     */
+    public void extract(final MultivaluedMap<String, String> parameters,
+                        final Path filePath,
+                        final ResultSink sink) throws IOException {
+        if (cache != null && !isIncremental(parameters)) {
+            extract(parameters, filePath).replay(sink);
+            return;
+        }
+        final String phashKey = getPHashKey(parameters, filePath);
+        final long deadline = getDeadline(parameters);
+        final ExtractionLimits limits = ExtractionLimits.of(parameters);
+        checkPathIsRegularFile(filePath);
+        final String extension = ParserUtils.getExtension(filePath);
+        final Parser[] parsers = registry.forExtension(extension);
+        final GuardedResultSink guardedSink =
+                new GuardedResultSink(new LimitedResultSink(indexingSink(phashKey, sink), limits, null));
+        try {
+            tryParsers(parameters, extension, parsers.length > 1 ? ParserRanking.keyOf(extension) : null, deadline,
+                    parsers, guardedSink::isRetryable, parser -> parser.extract(parameters, filePath, guardedSink));
+        } finally {
+            guardedSink.close();
+        }
+    }
+
+    /**
+     * @return the number of files of a batch extracted concurrently
+     */
+    int getBatchParallelism(final MultivaluedMap<String, String> parameters) {
+        final int maxParallelism = batchExecutor.getMaximumPoolSize();
+        final String parallelismParam = ParserUtils.getParameterValue(parameters, PARALLELISM, 0);
+        if (parallelismParam == null)
+            return maxParallelism;
+        final int parallelism;
+        try {
+            parallelism = Integer.parseInt(parallelismParam.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("The parallelism parameter is not a valid number: " + parallelismParam);
+        }
+        if (parallelism < 1)
+            throw new BadRequestException("The parallelism should be greater than zero: " + parallelismParam);
+        return Math.min(parallelism, maxParallelism);
+    }
+
+    private BatchResult extractBatchItem(final MultivaluedMap<String, String> parameters, final BatchItem item) {
+        if (item == null)
+            return new BatchResult(null, Response.Status.BAD_REQUEST.getStatusCode(), "The batch item is empty");
+        try {
+            final Path filePath = item.path == null ? null : Path.of(item.path);
+            return new BatchResult(item.path, extract(item.mergeParameters(parameters), filePath));
+        } catch (WebApplicationException | InvalidPathException e) {
+            return new BatchResult(item.path, getErrorStatus(e), e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, e, () -> "Batch extraction failed: " + item.path);
+            return new BatchResult(item.path, getErrorStatus(e), e.getMessage());
+        }
+    }
+
+    /**
+     * @return the HTTP status code describing the failure of an extraction
+     */
+    private static int getErrorStatus(final Exception exception) {
+        if (exception instanceof WebApplicationException)
+            return ((WebApplicationException) exception).getResponse().getStatus();
+        if (exception instanceof InvalidPathException)
+            return Response.Status.BAD_REQUEST.getStatusCode();
+        return Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
+    }
+
+    /**
+     * Extract a list of files in parallel.
+     * The items are consumed lazily, and each result is given to the consumer as soon as it is available.
+     * A failure on one file is reported by its result, it does not stop the batch.
+     *
+     * @param parameters the parameters shared by every file
+     * @param items      the files to extract
+     * @param consumer   receives the results in completion order
+     * @throws IOException if the consumer fails
+     */
+    public void extractBatch(final MultivaluedMap<String, String> parameters,
+                             final Iterator<BatchItem> items,
+                             final ConsumerEx<BatchResult, IOException> consumer) throws IOException {
+        ParallelExtraction.run(batchExecutor, getBatchParallelism(parameters), items,
+                item -> extractBatchItem(parameters, item), consumer);
+    }
+
+    private boolean isSupported(final Path filePath) {
+        return registry.forExtension(ParserUtils.getExtension(filePath)).length > 0;
+    }
+
+    /**
+     * Start the extraction of every file of a directory tree.
+     * The files are dispatched by extension, the results are written to the output file (NDJSON).
+     *
+     * @param definition the directory, the patterns and the parameters
+     * @return the status of the new job
+     */
+    public DirectoryJobStatus startDirectoryJob(final DirectoryJobDefinition definition) {
+        if (definition == null || definition.root == null || definition.output == null)
+            throw new BadRequestException("The root directory and the output file are required");
+        final Path root = Path.of(definition.root).toAbsolutePath().normalize();
+        if (!Files.isDirectory(root))
+            throw new BadRequestException("The root is not a directory: " + root);
+        final Path output = Path.of(definition.output).toAbsolutePath().normalize();
+        if (output.getParent() == null || !Files.isDirectory(output.getParent()))
+            throw new BadRequestException("The parent directory of the output does not exist: " + output);
+        final MultivaluedMap<String, String> parameters = BatchItem.mergeParameters(null, definition.parameters);
+        getDeadline(parameters);
+        ExtractionLimits.of(parameters);
+        final int parallelism = getBatchParallelism(parameters);
+        final DirectoryJob job;
+        try {
+            job = new DirectoryJob(UUID.randomUUID().toString(), root, output, definition.include,
+                    definition.exclude);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid pattern: " + e.getMessage(), e);
+        }
+        synchronized (directoryJobs) {
+            purgeDirectoryJobs();
+            for (final DirectoryJob other : directoryJobs.values())
+                if (other.isRunning() && other.output.equals(output))
+                    throw new ClientErrorException("The job " + other.id + " is already writing to " + output,
+                            Response.Status.CONFLICT);
+            directoryJobs.put(job.id, job);
+        }
+        job.start(jobExecutor, batchExecutor, parallelism, this::isSupported,
+                filePath -> extractBatchItem(parameters, new BatchItem(filePath.toString())));
+        return job.getStatus();
+    }
+
+    /**
+     * @return the status of the directory jobs, the oldest first
+     */
+    public List<DirectoryJobStatus> getDirectoryJobs() {
+        purgeDirectoryJobs();
+        return directoryJobs.values()
+                .stream()
+                .map(DirectoryJob::getStatus)
+                .sorted(Comparator.comparing(status -> status.startTime))
+                .collect(Collectors.toList());
+    }
+
+    public DirectoryJobStatus getDirectoryJob(final String jobId) {
+        purgeDirectoryJobs();
+        final DirectoryJob job = directoryJobs.get(jobId);
+        return job == null ? null : job.getStatus();
+    }
+
+    /**
+     * Forget the finished directory jobs which expired, and the oldest ones if too many jobs are finished.
+     */
+    private void purgeDirectoryJobs() {
+        final long expiration = System.currentTimeMillis() - directoryJobTtl;
+        synchronized (directoryJobs) {
+            final List<DirectoryJob> finished = directoryJobs.values()
+                    .stream()
+                    .filter(job -> !job.isRunning())
+                    .sorted(Comparator.comparingLong(DirectoryJob::getEndTime))
+                    .collect(Collectors.toList());
+            int excess = finished.size() - maxDirectoryJobs;
+            for (final DirectoryJob job : finished)
+                if (excess-- > 0 || job.getEndTime() < expiration)
+                    directoryJobs.remove(job.id, job);
+        }
+    }
+
+    /**
+     * Stop the job if it is running, and forget it.
+     * The output file is kept.
+     *
+     * @param jobId the identifier of the job
+     * @return the last status of the job, or null if the job does not exist
+     */
+    public DirectoryJobStatus removeDirectoryJob(final String jobId) {
+        final DirectoryJob job = directoryJobs.remove(jobId);
+        if (job == null)
+            return null;
+        job.cancel();
+        return job.getStatus();
+    }
+
+    /**
+     * Queue the extraction of a file.
+     * The deadline of the extraction starts when the job leaves the queue.
+     *
+     * @param parameters the extraction parameters
+     * @param filePath   the file to extract
+     * @return the status of the new job
+     */
+    public ExtractionJobStatus submitJob(final MultivaluedMap<String, String> parameters, final Path filePath) {
+        getDeadline(parameters);
+        ExtractionLimits.of(parameters);
+        extractionJobs.acquire();
+        return extractionJobs.submit(() -> extract(parameters, filePath), ExtractorManager::getErrorStatus, null)
+                .getStatus();
+    }
+
+    /**
+     * Queue the extraction of a stream.
+     * The stream is fully read before the method returns, the bytes beyond the spill threshold
+     * are kept in a temporary file until the end of the job.
+     *
+     * @param parameters  the extraction parameters
+     * @param inputStream the stream to extract
+     * @param mimeType    the media type of the stream
+     * @return the status of the new job
+     * @throws IOException if the stream can't be read
+     */
+    public ExtractionJobStatus submitJob(final MultivaluedMap<String, String> parameters,
+                                         final InputStream inputStream,
+                                         final MediaType mimeType) throws IOException {
+        getDeadline(parameters);
+        ExtractionLimits.of(parameters);
+        extractionJobs.acquire();
+        final SpillBuffer upload = new SpillBuffer(spillMemoryThreshold);
+        try {
+            inputStream.transferTo(upload);
+        } catch (IOException | RuntimeException e) {
+            IOUtils.closeQuietly(upload);
+            extractionJobs.release();
+            throw e;
+        }
+        return extractionJobs.submit(() -> extract(parameters, upload.newInputStream(), mimeType),
+                ExtractorManager::getErrorStatus, upload).getStatus();
+    }
+
+    /**
+     * @param jobId      the identifier of the job
+     * @param waitMillis how long to wait for the end of the job, at most {@link #MAX_JOB_WAIT_MS}
+     * @return the status of the job, or null if the job does not exist or has expired
+     */
+    public ExtractionJobStatus getJob(final String jobId, final long waitMillis) {
+        final ExtractionJob job = extractionJobs.get(jobId);
+        if (job == null)
+            return null;
+        job.await(Math.min(waitMillis, MAX_JOB_WAIT_MS));
+        return job.getStatus();
+    }
+
+    /**
+     * @param jobId      the identifier of the job
+     * @param waitMillis how long to wait for the end of the job, at most {@link #MAX_JOB_WAIT_MS}
+     * @return the result of the extraction
+     * @throws NotFoundException       if the job does not exist or has expired
+     * @throws WebApplicationException if the job is not done, or if the extraction failed
+     */
+    public ParserResult getJobResult(final String jobId, final long waitMillis) {
+        final ExtractionJob job = extractionJobs.get(jobId);
+        if (job == null)
+            throw new NotFoundException("Job not found: " + jobId);
+        job.await(Math.min(waitMillis, MAX_JOB_WAIT_MS));
+        return job.getResult();
+    }
+
+    /**
+     * Cancel the job if it is not done, and forget it.
+     *
+     * @param jobId the identifier of the job
+     * @return the last status of the job, or null if the job does not exist
+     */
+    public ExtractionJobStatus removeJob(final String jobId) {
+        final ExtractionJob job = extractionJobs.remove(jobId);
+        return job == null ? null : job.getStatus();
+    }
+
+    /**
+     * Extracts a stream with one parser
+     */
+    @FunctionalInterface
+    private interface StreamExtraction {
+
+        ParserResult apply(Parser parser, InputStream inputStream, MediaType mimeType) throws IOException;
     }
 
     private static class Parser implements ParserInterface {
 
-        private final ParserFactory factory;
+        private final ParserPool pool;
 
-        private Parser(final ParserFactory factory) {
-            this.factory = factory;
+        private final ParserBulkhead bulkhead;
+
+        private final Map<String, ParserRanking> rankings;
+
+        private Parser(final ParserPool pool, final ParserBulkhead bulkhead) {
+            this.pool = pool;
+            this.bulkhead = bulkhead;
+            this.rankings = new ConcurrentHashMap<>();
+        }
+
+        private ParserRanking getRanking(final String dispatchKey) {
+            return rankings.computeIfAbsent(dispatchKey, key -> new ParserRanking());
+        }
+
+        private ParserStatus getStatus() {
+            return new ParserStatus(pool.factory.getThreadSafety(), pool.getStatus(), bulkhead.getStatus());
+        }
+
+        private ParserResult extract(final FunctionEx<ParserInterface, ParserResult, IOException> extractor)
+                throws IOException {
+            final ParserInterface parser = pool.borrow();
+            final ParserResult result = extractor.apply(parser);
+            // A parser which failed is not given back, its state may be inconsistent
+            pool.release(parser);
+            return result;
         }
 
         @Override
         public ParserResult extract(final MultivaluedMap<String, String> parameters,
                                     final InputStream inputStream,
                                     final MediaType mimeType) throws IOException {
-            return factory.createParser().extract(parameters, inputStream, mimeType);
+            return extract(parser -> parser.extract(parameters, inputStream, mimeType));
         }
 
         @Override
         public ParserResult extract(final MultivaluedMap<String, String> parameters,
                                     final Path filePath) throws IOException {
-            return factory.createParser().extract(parameters, filePath);
+            return extract(parser -> parser.extract(parameters, filePath));
+        }
+
+        /**
+         * A {@link StreamingParserInterface} writes directly to the sink,
+         * the result of a classic parser is written once complete.
+         *
+         * @return the result, without the documents written by a streaming parser
+         */
+        ParserResult extract(final MultivaluedMap<String, String> parameters,
+                             final InputStream inputStream,
+                             final MediaType mimeType,
+                             final ResultSink sink) throws IOException {
+            return extract(parser -> {
+                if (!(parser instanceof StreamingParserInterface))
+                    return replay(parser.extract(parameters, inputStream, mimeType), sink);
+                final StreamingParserInterface streamingParser = (StreamingParserInterface) parser;
+                return push(streamingParser, sink,
+                        builder -> streamingParser.extract(parameters, inputStream, mimeType, builder));
+            });
+        }
+
+        ParserResult extract(final MultivaluedMap<String, String> parameters,
+                             final Path filePath,
+                             final ResultSink sink) throws IOException {
+            return extract(parser -> {
+                if (!(parser instanceof StreamingParserInterface))
+                    return replay(parser.extract(parameters, filePath), sink);
+                final StreamingParserInterface streamingParser = (StreamingParserInterface) parser;
+                return push(streamingParser, sink, builder -> streamingParser.extract(parameters, filePath, builder));
+            });
+        }
+
+        private static ParserResult replay(final ParserResult result, final ResultSink sink) throws IOException {
+            result.replay(sink);
+            return result;
+        }
+
+        private static ParserResult push(final StreamingParserInterface parser,
+                                         final ResultSink sink,
+                                         final ConsumerEx<ParserResult.Builder, IOException> extraction)
+                throws IOException {
+            final ParserResult.Builder builder = ParserResult.of(parser.getName(), sink);
+            try {
+                extraction.accept(builder);
+                return builder.build();
+            } catch (UncheckedIOException e) {
+                // The builder reports the failures of the sink
+                throw e.getCause();
+            }
         }
     }
 
@@ -221,8 +1314,9 @@ public class ExtractorManager implements ParserInterface, AutoCloseable {
         private final ParserLoader loader;
 
         private ParserWithClassloader(final ParserLoader loader,
-                                      final ParserFactory factory) {
-            super(factory);
+                                      final ParserPool pool,
+                                      final ParserBulkhead bulkhead) {
+            super(pool, bulkhead);
             this.loader = loader;
         }
 
@@ -238,5 +1332,20 @@ public class ExtractorManager implements ParserInterface, AutoCloseable {
                                     final Path filePath) throws IOException {
             return loader.apply(classLoader -> super.extract(parameters, filePath));
         }
+
+        @Override
+        ParserResult extract(final MultivaluedMap<String, String> parameters,
+                             final InputStream inputStream,
+                             final MediaType mimeType,
+                             final ResultSink sink) throws IOException {
+            return loader.apply(classLoader -> super.extract(parameters, inputStream, mimeType, sink));
+        }
+
+        @Override
+        ParserResult extract(final MultivaluedMap<String, String> parameters,
+                             final Path filePath,
+                             final ResultSink sink) throws IOException {
+            return loader.apply(classLoader -> super.extract(parameters, filePath, sink));
+        }
     }
 }
@@ -26,6 +26,7 @@ import com.qwazr.server.WelcomeShutdownService;
 import com.qwazr.server.configuration.ServerConfiguration;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
@@ -33,6 +34,61 @@ import java.util.concurrent.Executors;
 
 public class ExtractorServer implements BaseServer {
 
+    /**
+     * The default maximum extraction time in milliseconds
+     */
+    public final static String TIMEOUT_PROPERTY = "QWAZR_EXTRACTOR_TIMEOUT";
+
+    /**
+     * The default maximum number of concurrent extractions per parser
+     */
+    public final static String CONCURRENCY_PROPERTY = "QWAZR_EXTRACTOR_CONCURRENCY";
+
+    /**
+     * The number of threads shared by the batch extractions
+     */
+    public final static String BATCH_CONCURRENCY_PROPERTY = "QWAZR_EXTRACTOR_BATCH_CONCURRENCY";
+
+    /**
+     * The number of extraction jobs running concurrently
+     */
+    public final static String JOB_CONCURRENCY_PROPERTY = "QWAZR_EXTRACTOR_JOB_CONCURRENCY";
+
+    /**
+     * The maximum number of extraction jobs waiting for a thread
+     */
+    public final static String JOB_QUEUE_SIZE_PROPERTY = "QWAZR_EXTRACTOR_JOB_QUEUE_SIZE";
+
+    /**
+     * The maximum size in bytes of the results of the completed extraction jobs
+     */
+    public final static String JOB_RESULTS_MEMORY_PROPERTY = "QWAZR_EXTRACTOR_JOB_RESULTS_MEMORY";
+
+    /**
+     * The directory of the result cache. Setting it, or the memory size, enables the cache.
+     */
+    public final static String CACHE_DIRECTORY_PROPERTY = "QWAZR_EXTRACTOR_CACHE_DIRECTORY";
+
+    /**
+     * The maximum size in bytes of the results cached in memory
+     */
+    public final static String CACHE_MEMORY_PROPERTY = "QWAZR_EXTRACTOR_CACHE_MEMORY";
+
+    /**
+     * The maximum size in bytes of the results cached in the directory
+     */
+    public final static String CACHE_DISK_PROPERTY = "QWAZR_EXTRACTOR_CACHE_DISK";
+
+    /**
+     * The number of documents from which the language detection runs in parallel
+     */
+    public final static String LANG_DETECTION_THRESHOLD_PROPERTY = "QWAZR_EXTRACTOR_LANG_DETECTION_THRESHOLD";
+
+    /**
+     * The file of the perceptual hash index. Setting it enables the index.
+     */
+    public final static String PHASH_INDEX_FILE_PROPERTY = "QWAZR_EXTRACTOR_PHASH_INDEX_FILE";
+
     private final GenericServer server;
 
     private ExtractorServer(final ServerConfiguration configuration) throws IOException {
@@ -50,14 +106,55 @@ public class ExtractorServer implements BaseServer {
                 new ClusterManager(executorService, configuration).registerProtocolListener(builder, services);
         webServices.singletons(clusterManager.getService());
 
-        final ExtractorManager extractorManager = new ExtractorManager().registerServices();
+        final ExtractorManager extractorManager = new ExtractorManager();
+        final String timeout = getProperty(TIMEOUT_PROPERTY);
+        if (timeout != null)
+            extractorManager.defaultTimeout(Long.parseLong(timeout));
+        final String concurrency = getProperty(CONCURRENCY_PROPERTY);
+        if (concurrency != null)
+            extractorManager.defaultConcurrency(Integer.parseInt(concurrency));
+        final String batchConcurrency = getProperty(BATCH_CONCURRENCY_PROPERTY);
+        if (batchConcurrency != null)
+            extractorManager.batchConcurrency(Integer.parseInt(batchConcurrency));
+        final String jobConcurrency = getProperty(JOB_CONCURRENCY_PROPERTY);
+        if (jobConcurrency != null)
+            extractorManager.jobConcurrency(Integer.parseInt(jobConcurrency));
+        final String jobQueueSize = getProperty(JOB_QUEUE_SIZE_PROPERTY);
+        if (jobQueueSize != null)
+            extractorManager.jobQueueSize(Integer.parseInt(jobQueueSize));
+        final String jobResultsMemory = getProperty(JOB_RESULTS_MEMORY_PROPERTY);
+        if (jobResultsMemory != null)
+            extractorManager.jobResultsMemory(Long.parseLong(jobResultsMemory));
+        final String langDetectionThreshold = getProperty(LANG_DETECTION_THRESHOLD_PROPERTY);
+        if (langDetectionThreshold != null)
+            extractorManager.languageDetectionThreshold(Integer.parseInt(langDetectionThreshold));
+        final String cacheDirectory = getProperty(CACHE_DIRECTORY_PROPERTY);
+        final String cacheMemory = getProperty(CACHE_MEMORY_PROPERTY);
+        if (cacheDirectory != null || cacheMemory != null) {
+            final String cacheDisk = getProperty(CACHE_DISK_PROPERTY);
+            extractorManager.cache(cacheDirectory == null ? null : Path.of(cacheDirectory),
+                    cacheMemory == null ? ExtractionCache.DEFAULT_MEMORY_MAX_BYTES : Long.parseLong(cacheMemory),
+                    cacheDisk == null ? ExtractionCache.DEFAULT_DISK_MAX_BYTES : Long.parseLong(cacheDisk));
+        }
+        final String phashIndexFile = getProperty(PHASH_INDEX_FILE_PROPERTY);
+        if (phashIndexFile != null)
+            extractorManager.phashIndex(Path.of(phashIndexFile));
+        extractorManager.registerServices();
         builder.shutdownListener(server -> extractorManager.close());
-        webServices.singletons(extractorManager.getService());
+        webServices.singletons(extractorManager.getService(), new CacheHeaderFilter());
 
         builder.getWebServiceContext().jaxrs(webServices);
         server = builder.build();
     }
 
+    /**
+     * Read a setting from the system properties, or from the environment variables
+     */
+    private static String getProperty(final String key) {
+        final String value = System.getProperty(key);
+        return value != null ? value : System.getenv(key);
+    }
+
     @Override
     public GenericServer getServer() {
         return server;
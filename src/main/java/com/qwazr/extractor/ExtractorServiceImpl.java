@@ -17,16 +17,23 @@ package com.qwazr.extractor;
 
 import com.qwazr.server.AbstractServiceImpl;
 import com.qwazr.utils.LoggerUtils;
+import com.qwazr.utils.ObjectMappers;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.util.List;
 import java.util.Set;
 import java.util.logging.Logger;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 final class ExtractorServiceImpl extends AbstractServiceImpl implements ExtractorServiceInterface {
@@ -44,6 +51,16 @@ final class ExtractorServiceImpl extends AbstractServiceImpl implements Extracto
         return extractorManager.getParserNames();
     }
 
+    @Override
+    public ExtractorStatus getStatus() {
+        return extractorManager.getStatus();
+    }
+
+    @Override
+    public PHashSearchResult searchPHash(final String phash, final Integer maxDistance, final Integer limit) {
+        return extractorManager.searchPHash(phash, maxDistance, limit);
+    }
+
     @Override
     public ParserDefinition getParserDefinition(final String parserName) {
         final ParserDefinition parserDefinition = extractorManager.getParserDefinition(parserName);
@@ -78,6 +95,127 @@ final class ExtractorServiceImpl extends AbstractServiceImpl implements Extracto
         }
     }
 
+    @Override
+    public StreamingOutput extractFileStreamed(final UriInfo uriInfo,
+                                               final String filePath) {
+        final MultivaluedMap<String, String> parameters = getQueryParameters(uriInfo);
+        return output -> {
+            try (final ResultStreamWriter writer = new ResultStreamWriter(output)) {
+                extractorManager.extract(parameters, Path.of(filePath), writer);
+            }
+        };
+    }
+
+    @Override
+    public StreamingOutput extractStreamStreamed(final UriInfo uriInfo,
+                                                 final HttpHeaders headers,
+                                                 final InputStream inputStream) {
+        final MultivaluedMap<String, String> parameters = getQueryParameters(uriInfo);
+        final MediaType mediaType = headers.getMediaType();
+        return output -> {
+            try (final ResultStreamWriter writer = new ResultStreamWriter(output)) {
+                extractorManager.extract(parameters, inputStream, mediaType, writer);
+            }
+        };
+    }
+
+    @Override
+    public StreamingOutput extractBatch(final UriInfo uriInfo,
+                                        final List<BatchItem> items) {
+        if (items == null)
+            throw new BadRequestException("The list of files is missing");
+        final MultivaluedMap<String, String> parameters = getQueryParameters(uriInfo);
+        // Checked before the response is committed
+        extractorManager.getBatchParallelism(parameters);
+        return output -> extractorManager.extractBatch(parameters, items.iterator(), result -> {
+            output.write(ObjectMappers.JSON.writeValueAsBytes(result));
+            output.write('\n');
+            output.flush();
+        });
+    }
+
+    @Override
+    public DirectoryJobStatus startDirectoryJob(final DirectoryJobDefinition definition) {
+        return extractorManager.startDirectoryJob(definition);
+    }
+
+    @Override
+    public List<DirectoryJobStatus> getDirectoryJobs() {
+        return extractorManager.getDirectoryJobs();
+    }
+
+    @Override
+    public DirectoryJobStatus getDirectoryJob(final String jobId) {
+        final DirectoryJobStatus status = extractorManager.getDirectoryJob(jobId);
+        if (status == null)
+            throw new NotFoundException("Job not found: " + jobId);
+        return status;
+    }
+
+    @Override
+    public DirectoryJobStatus removeDirectoryJob(final String jobId) {
+        final DirectoryJobStatus status = extractorManager.removeDirectoryJob(jobId);
+        if (status == null)
+            throw new NotFoundException("Job not found: " + jobId);
+        return status;
+    }
+
+    /**
+     * @throws BadRequestException if the path is missing or invalid
+     */
+    private static Path toJobPath(final String filePath) {
+        if (filePath == null || filePath.isBlank())
+            throw new BadRequestException("The path of the file is missing");
+        try {
+            return Path.of(filePath);
+        } catch (InvalidPathException e) {
+            throw new BadRequestException("Invalid path: " + filePath, e);
+        }
+    }
+
+    private static Response accepted(final ExtractionJobStatus status) {
+        return Response.accepted(status).location(URI.create(SERVICE_NAME + "/_jobs/" + status.id)).build();
+    }
+
+    @Override
+    public Response submitFileJob(final UriInfo uriInfo,
+                                  final String filePath) {
+        return accepted(extractorManager.submitJob(getQueryParameters(uriInfo), toJobPath(filePath)));
+    }
+
+    @Override
+    public Response submitStreamJob(final UriInfo uriInfo,
+                                    final HttpHeaders headers,
+                                    final InputStream inputStream) {
+        try {
+            return accepted(
+                    extractorManager.submitJob(getQueryParameters(uriInfo), inputStream, headers.getMediaType()));
+        } catch (IOException e) {
+            throw new InternalServerErrorException("Error while receiving stream:" + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public ExtractionJobStatus getJob(final String jobId, final Long waitMillis) {
+        final ExtractionJobStatus status = extractorManager.getJob(jobId, waitMillis == null ? 0 : waitMillis);
+        if (status == null)
+            throw new NotFoundException("Job not found: " + jobId);
+        return status;
+    }
+
+    @Override
+    public ParserResult getJobResult(final String jobId, final Long waitMillis) {
+        return extractorManager.getJobResult(jobId, waitMillis == null ? 0 : waitMillis);
+    }
+
+    @Override
+    public ExtractionJobStatus removeJob(final String jobId) {
+        final ExtractionJobStatus status = extractorManager.removeJob(jobId);
+        if (status == null)
+            throw new NotFoundException("Job not found: " + jobId);
+        return status;
+    }
+
     @Override
     public ParserResult extract(final MultivaluedMap<String, String> parameters,
                                 final InputStream inputStream,
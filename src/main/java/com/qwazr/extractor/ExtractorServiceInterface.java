@@ -17,16 +17,23 @@ package com.qwazr.extractor;
 
 import com.qwazr.server.ServiceInterface;
 import java.io.InputStream;
+import java.util.List;
 import java.util.Set;
 import javax.annotation.security.RolesAllowed;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 
 @RolesAllowed(ExtractorServiceInterface.SERVICE_NAME)
@@ -35,11 +42,28 @@ public interface ExtractorServiceInterface extends ServiceInterface, ParserInter
 
     String SERVICE_NAME = "extractor";
 
+    /**
+     * Newline delimited JSON: one JSON object per line
+     */
+    String APPLICATION_NDJSON = "application/x-ndjson";
+
     @GET
     @Path("/")
     @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
     Set<String> getParserNames();
 
+    @GET
+    @Path("/_status")
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    ExtractorStatus getStatus();
+
+    @GET
+    @Path("/_phash")
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    PHashSearchResult searchPHash(final @QueryParam("hash") String phash,
+                                  final @QueryParam("distance") Integer maxDistance,
+                                  final @QueryParam("limit") Integer limit);
+
     @GET
     @Path("/{name}")
     @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
@@ -58,5 +82,75 @@ public interface ExtractorServiceInterface extends ServiceInterface, ParserInter
                                final @Context HttpHeaders headers,
                                final InputStream inputStream);
 
+    @POST
+    @Path("/_stream")
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    StreamingOutput extractFileStreamed(final @Context UriInfo uriInfo,
+                                        final String filePath);
+
+    @PUT
+    @Path("/_stream")
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    StreamingOutput extractStreamStreamed(final @Context UriInfo uriInfo,
+                                          final @Context HttpHeaders headers,
+                                          final InputStream inputStream);
+
+    @POST
+    @Path("/_batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(APPLICATION_NDJSON)
+    StreamingOutput extractBatch(final @Context UriInfo uriInfo,
+                                 final List<BatchItem> items);
+
+    @POST
+    @Path("/_directory")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    DirectoryJobStatus startDirectoryJob(final DirectoryJobDefinition definition);
+
+    @GET
+    @Path("/_directory")
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    List<DirectoryJobStatus> getDirectoryJobs();
+
+    @GET
+    @Path("/_directory/{id}")
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    DirectoryJobStatus getDirectoryJob(final @PathParam("id") String jobId);
+
+    @DELETE
+    @Path("/_directory/{id}")
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    DirectoryJobStatus removeDirectoryJob(final @PathParam("id") String jobId);
+
+    @POST
+    @Path("/_jobs")
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    Response submitFileJob(final @Context UriInfo uriInfo,
+                           final String filePath);
+
+    @PUT
+    @Path("/_jobs")
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    Response submitStreamJob(final @Context UriInfo uriInfo,
+                             final @Context HttpHeaders headers,
+                             final InputStream inputStream);
+
+    @GET
+    @Path("/_jobs/{id}")
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    ExtractionJobStatus getJob(final @PathParam("id") String jobId,
+                               final @QueryParam("wait") Long waitMillis);
+
+    @GET
+    @Path("/_jobs/{id}/result")
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    ParserResult getJobResult(final @PathParam("id") String jobId,
+                              final @QueryParam("wait") Long waitMillis);
+
+    @DELETE
+    @Path("/_jobs/{id}")
+    @Produces(ServiceInterface.APPLICATION_JSON_UTF8)
+    ExtractionJobStatus removeJob(final @PathParam("id") String jobId);
 
 }
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+import java.util.SortedMap;
+
+@JsonInclude(Include.NON_EMPTY)
+@JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE)
+public class ExtractorStatus {
+
+    /**
+     * The runtime status of each parser, by parser name
+     */
+    final public SortedMap<String, ParserStatus> parsers;
+
+    /**
+     * For each media type (type/subtype) or extension (.ext) supported by several parsers,
+     * the parsers in the order they are currently tried
+     */
+    final public SortedMap<String, List<Rank>> dispatch;
+
+    /**
+     * The statistics of the result cache, null if the cache is disabled
+     */
+    final public Cache cache;
+
+    /**
+     * The statistics of the perceptual hash index, null if the index is disabled
+     */
+    @JsonProperty("phash_index")
+    final public PHashIndex phashIndex;
+
+    @JsonCreator
+    ExtractorStatus(final @JsonProperty("parsers") SortedMap<String, ParserStatus> parsers,
+                    final @JsonProperty("dispatch") SortedMap<String, List<Rank>> dispatch,
+                    final @JsonProperty("cache") Cache cache,
+                    final @JsonProperty("phash_index") PHashIndex phashIndex) {
+        this.parsers = parsers;
+        this.dispatch = dispatch;
+        this.cache = cache;
+        this.phashIndex = phashIndex;
+    }
+
+    @JsonInclude(Include.NON_NULL)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+            getterVisibility = JsonAutoDetect.Visibility.NONE,
+            isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+            fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+            creatorVisibility = JsonAutoDetect.Visibility.NONE)
+    public static class Rank {
+
+        final public String parser;
+
+        final public long successes;
+
+        final public long failures;
+
+        /**
+         * Moving average of the extraction time in milliseconds
+         */
+        @JsonProperty("mean_time")
+        final public long meanTime;
+
+        final public double score;
+
+        /**
+         * True if the parser is currently skipped because it keeps failing
+         */
+        @JsonProperty("circuit_open")
+        final public boolean circuitOpen;
+
+        @JsonCreator
+        Rank(final @JsonProperty("parser") String parser,
+             final @JsonProperty("successes") long successes,
+             final @JsonProperty("failures") long failures,
+             final @JsonProperty("mean_time") long meanTime,
+             final @JsonProperty("score") double score,
+             final @JsonProperty("circuit_open") boolean circuitOpen) {
+            this.parser = parser;
+            this.successes = successes;
+            this.failures = failures;
+            this.meanTime = meanTime;
+            this.score = score;
+            this.circuitOpen = circuitOpen;
+        }
+    }
+
+    @JsonInclude(Include.NON_NULL)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+            getterVisibility = JsonAutoDetect.Visibility.NONE,
+            isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+            fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+            creatorVisibility = JsonAutoDetect.Visibility.NONE)
+    public static class Cache {
+
+        @JsonProperty("memory_hits")
+        final public long memoryHits;
+
+        @JsonProperty("disk_hits")
+        final public long diskHits;
+
+        final public long misses;
+
+        @JsonProperty("memory_entries")
+        final public int memoryEntries;
+
+        @JsonProperty("memory_bytes")
+        final public long memoryBytes;
+
+        @JsonProperty("disk_entries")
+        final public int diskEntries;
+
+        @JsonProperty("disk_bytes")
+        final public long diskBytes;
+
+        @JsonCreator
+        Cache(final @JsonProperty("memory_hits") long memoryHits,
+              final @JsonProperty("disk_hits") long diskHits,
+              final @JsonProperty("misses") long misses,
+              final @JsonProperty("memory_entries") int memoryEntries,
+              final @JsonProperty("memory_bytes") long memoryBytes,
+              final @JsonProperty("disk_entries") int diskEntries,
+              final @JsonProperty("disk_bytes") long diskBytes) {
+            this.memoryHits = memoryHits;
+            this.diskHits = diskHits;
+            this.misses = misses;
+            this.memoryEntries = memoryEntries;
+            this.memoryBytes = memoryBytes;
+            this.diskEntries = diskEntries;
+            this.diskBytes = diskBytes;
+        }
+    }
+
+    @JsonInclude(Include.NON_NULL)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+            getterVisibility = JsonAutoDetect.Visibility.NONE,
+            isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+            fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+            creatorVisibility = JsonAutoDetect.Visibility.NONE)
+    public static class PHashIndex {
+
+        final public int entries;
+
+        /**
+         * The estimated size in memory of the hashes, the block tables and the keys
+         */
+        @JsonProperty("memory_bytes")
+        final public long memoryBytes;
+
+        @JsonProperty("file_bytes")
+        final public long fileBytes;
+
+        final public long searches;
+
+        /**
+         * The mean search time in microseconds
+         */
+        @JsonProperty("mean_search_time")
+        final public long meanSearchTime;
+
+        /**
+         * The longest search time in microseconds
+         */
+        @JsonProperty("max_search_time")
+        final public long maxSearchTime;
+
+        @JsonCreator
+        PHashIndex(final @JsonProperty("entries") int entries,
+                   final @JsonProperty("memory_bytes") long memoryBytes,
+                   final @JsonProperty("file_bytes") long fileBytes,
+                   final @JsonProperty("searches") long searches,
+                   final @JsonProperty("mean_search_time") long meanSearchTime,
+                   final @JsonProperty("max_search_time") long maxSearchTime) {
+            this.entries = entries;
+            this.memoryBytes = memoryBytes;
+            this.fileBytes = fileBytes;
+            this.searches = searches;
+            this.meanSearchTime = meanSearchTime;
+            this.maxSearchTime = maxSearchTime;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The fields of a document, in insertion order.
+ * The names and the values are stored side by side in one array, the names are compared by identity first
+ * (they usually come from the {@link ParserField} constants of the parser), then by equality.
+ * A field filled with {@link #add} keeps its first value inline, a list is only created with the second value.
+ * The JSON is the same as a map of lists: an added field is always written as an array.
+ * The map is mutable through the {@link Map} methods: {@link #put} and {@link Entry#setValue} behave as {@link #set}.
+ * The list returned for a field added with a single value is read-only, the value of such a field is replaced
+ * with {@link #put}.
+ */
+@JsonSerialize(using = FieldsMap.Serializer.class)
+final class FieldsMap extends AbstractMap<String, Object> {
+
+    /**
+     * The number of fields before the first resize
+     */
+    private final static int INITIAL_CAPACITY = 4;
+
+    /**
+     * Name at even positions, value at odd positions
+     */
+    private Object[] slots;
+
+    private int size;
+
+    /**
+     * A bit per field filled with {@link #add}. The fields beyond the 64th always hold a {@link Values}.
+     */
+    private long addedMask;
+
+    FieldsMap() {
+        slots = new Object[INITIAL_CAPACITY * 2];
+    }
+
+    /**
+     * A copy of the fields of a document, the values are not copied.
+     *
+     * @param fields        the fields to copy, may be null
+     * @param extraCapacity the number of fields which will be appended without resizing
+     */
+    FieldsMap(final Map<String, Object> fields, final int extraCapacity) {
+        if (fields instanceof FieldsMap) {
+            final FieldsMap source = (FieldsMap) fields;
+            slots = Arrays.copyOf(source.slots, Math.max(1, source.size + extraCapacity) * 2);
+            size = source.size;
+            addedMask = source.addedMask;
+            // The lists are copied, a value added to the copy is not added to the source
+            for (int i = 1; i < size * 2; i += 2)
+                if (slots[i] instanceof Values)
+                    slots[i] = new Values((Values) slots[i]);
+        } else {
+            slots = new Object[Math.max(1, (fields == null ? 0 : fields.size()) + extraCapacity) * 2];
+            if (fields != null)
+                fields.forEach(this::set);
+        }
+    }
+
+    /**
+     * The values of a field, created by {@link #add} when a second value arrives
+     */
+    private final static class Values extends ArrayList<Object> {
+
+        private Values(final int initialCapacity) {
+            super(initialCapacity);
+        }
+
+        private Values(final Values values) {
+            super(values);
+        }
+    }
+
+    private int indexOf(final Object name) {
+        final int end = size * 2;
+        for (int i = 0; i < end; i += 2)
+            if (slots[i] == name)
+                return i >> 1;
+        if (name == null)
+            return -1;
+        for (int i = 0; i < end; i += 2)
+            if (name.equals(slots[i]))
+                return i >> 1;
+        return -1;
+    }
+
+    private boolean isAdded(final int index) {
+        return index < Long.SIZE ? (addedMask & (1L << index)) != 0 : slots[index * 2 + 1] instanceof Values;
+    }
+
+    private int append(final String name, final Object value) {
+        if (size * 2 == slots.length)
+            slots = Arrays.copyOf(slots, slots.length * 2);
+        slots[size * 2] = name;
+        slots[size * 2 + 1] = value;
+        return size++;
+    }
+
+    /**
+     * Set the unique value of a field, the previous values are replaced
+     */
+    void set(final String name, final Object value) {
+        final int index = indexOf(name);
+        if (index == -1) {
+            append(name, value);
+            return;
+        }
+        replaceValue(index, value);
+    }
+
+    private void replaceValue(final int index, final Object value) {
+        slots[index * 2 + 1] = value;
+        if (index < Long.SIZE)
+            addedMask &= ~(1L << index);
+    }
+
+    /**
+     * Add a value to a field, the elements of a collection are added one by one
+     */
+    void add(final String name, final Object value) {
+        final int index = indexOf(name);
+        if (index == -1) {
+            final int newIndex = append(name, null);
+            if (newIndex < Long.SIZE && !(value instanceof Collection)) {
+                // The first value is kept inline
+                slots[newIndex * 2 + 1] = value;
+                addedMask |= 1L << newIndex;
+            } else
+                slots[newIndex * 2 + 1] = newValues(null, value);
+            return;
+        }
+        final Object current = slots[index * 2 + 1];
+        if (current instanceof Values)
+            addTo((Values) current, value);
+        else {
+            // The inline value, or the value set before, becomes the first value of the list
+            slots[index * 2 + 1] = newValues(current, value);
+        }
+        if (index < Long.SIZE)
+            addedMask |= 1L << index;
+    }
+
+    private static Values newValues(final Object current, final Object value) {
+        final Values values = new Values(2);
+        if (current != null)
+            addTo(values, current);
+        addTo(values, value);
+        return values;
+    }
+
+    private static void addTo(final Values values, final Object value) {
+        if (value instanceof Collection)
+            values.addAll((Collection<?>) value);
+        else
+            values.add(value);
+    }
+
+    private Object setValue(final int index, final Object value) {
+        final Object previous = getValue(index);
+        replaceValue(index, value);
+        return previous;
+    }
+
+    private Object removeAt(final int index) {
+        final Object previous = getValue(index);
+        final int next = (index + 1) * 2;
+        System.arraycopy(slots, next, slots, index * 2, size * 2 - next);
+        size--;
+        slots[size * 2] = null;
+        slots[size * 2 + 1] = null;
+        if (index < Long.SIZE) {
+            // The bits of the following fields move down by one
+            final long lowerBits = (1L << index) - 1;
+            addedMask = (addedMask & lowerBits) | ((addedMask >>> 1) & ~lowerBits);
+            // The 65th field, if any, moved to the 64th position: it holds a list only if it was added
+            if (size >= Long.SIZE && slots[(Long.SIZE - 1) * 2 + 1] instanceof Values)
+                addedMask |= 1L << (Long.SIZE - 1);
+        }
+        return previous;
+    }
+
+    private Object getValue(final int index) {
+        final Object value = slots[index * 2 + 1];
+        return isAdded(index) && !(value instanceof Values) ? Collections.singletonList(value) : value;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    public Object get(final Object key) {
+        final int index = indexOf(key);
+        return index == -1 ? null : getValue(index);
+    }
+
+    @Override
+    public Object put(final String key, final Object value) {
+        final int index = indexOf(key);
+        if (index == -1) {
+            append(key, value);
+            return null;
+        }
+        return setValue(index, value);
+    }
+
+    @Override
+    public Object remove(final Object key) {
+        final int index = indexOf(key);
+        return index == -1 ? null : removeAt(index);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(slots, 0, size * 2, null);
+        size = 0;
+        addedMask = 0;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+
+                    private int index;
+
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < size;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (index >= size)
+                            throw new NoSuchElementException();
+                        last = index++;
+                        return new Field(last);
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last == -1)
+                            throw new IllegalStateException();
+                        removeAt(last);
+                        index = last;
+                        last = -1;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * An entry backed by the map, valid until a field is removed
+     */
+    private final class Field implements Entry<String, Object> {
+
+        private final int index;
+
+        private Field(final int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return (String) slots[index * 2];
+        }
+
+        @Override
+        public Object getValue() {
+            return FieldsMap.this.getValue(index);
+        }
+
+        @Override
+        public Object setValue(final Object value) {
+            return FieldsMap.this.setValue(index, value);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Entry))
+                return false;
+            final Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    /**
+     * Writes the fields without building the entries
+     */
+    final static class Serializer extends StdSerializer<FieldsMap> {
+
+        Serializer() {
+            super(FieldsMap.class);
+        }
+
+        @Override
+        public boolean isEmpty(final SerializerProvider provider, final FieldsMap fields) {
+            return fields == null || fields.size == 0;
+        }
+
+        @Override
+        public void serialize(final FieldsMap fields,
+                              final JsonGenerator generator,
+                              final SerializerProvider provider) throws IOException {
+            generator.writeStartObject(fields);
+            for (int i = 0; i < fields.size; i++) {
+                generator.writeFieldName((String) fields.slots[i * 2]);
+                final Object value = fields.slots[i * 2 + 1];
+                if (fields.isAdded(i) && !(value instanceof Values)) {
+                    generator.writeStartArray();
+                    provider.defaultSerializeValue(value, generator);
+                    generator.writeEndArray();
+                } else
+                    provider.defaultSerializeValue(value, generator);
+            }
+            generator.writeEndObject();
+        }
+    }
+}
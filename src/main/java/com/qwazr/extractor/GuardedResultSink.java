@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Protects the sink of a streamed extraction.
+ * Once something has been written, a failed parser can't be replaced by the next candidate.
+ * Once the extraction is over (a timeout for instance), a worker thread still running can't write anymore.
+ */
+final class GuardedResultSink implements ResultSink {
+
+    private final ResultSink sink;
+
+    private boolean started;
+
+    private boolean closed;
+
+    GuardedResultSink(final ResultSink sink) {
+        this.sink = sink;
+    }
+
+    private void checkNotClosed() throws IOException {
+        if (closed)
+            throw new IOException("The extraction is over, the result can't be written anymore");
+    }
+
+    @Override
+    public synchronized void start(final String parserName, final Map<String, Object> metas) throws IOException {
+        checkNotClosed();
+        started = true;
+        sink.start(parserName, metas);
+    }
+
+    @Override
+    public synchronized void document(final Map<String, Object> fields) throws IOException {
+        checkNotClosed();
+        sink.document(fields);
+    }
+
+    @Override
+    public synchronized void end(final Map<String, Object> trailingMetas, final long timeElapsed)
+            throws IOException {
+        checkNotClosed();
+        sink.end(trailingMetas, timeElapsed);
+    }
+
+    /**
+     * @return true if nothing has been written, another parser may then be tried
+     */
+    synchronized boolean isRetryable() {
+        return !started && !closed;
+    }
+
+    synchronized void close() {
+        closed = true;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Detects the language of each document of a result, from its content.
+ * The documents which already have a detected language are skipped.
+ * Above a number of documents, the detection runs in parallel in a fork-join pool shared by the requests.
+ */
+final class LanguageDetectionStage implements AutoCloseable {
+
+    /**
+     * Below this number of documents, the detection runs on the calling thread
+     */
+    final static int DEFAULT_THRESHOLD = 32;
+
+    /**
+     * The number of characters of each document submitted to the detection
+     */
+    final static int MAX_LENGTH = 10000;
+
+    /**
+     * The number of documents detected by one task
+     */
+    private final static int BATCH_SIZE = 8;
+
+    private final ForkJoinPool pool;
+
+    private volatile int threshold;
+
+    LanguageDetectionStage(final int parallelism) {
+        pool = new ForkJoinPool(parallelism, pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("extractor-lang-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+        threshold = DEFAULT_THRESHOLD;
+    }
+
+    void setThreshold(final int threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param result the result to complete
+     * @return the result with the detected language of each document and the time spent in the metas
+     */
+    ParserResult apply(final ParserResult result) {
+        final List<Map<String, Object>> documents = result.documents;
+        if (documents == null || documents.isEmpty())
+            return result;
+        final long startTime = System.nanoTime();
+        final String[] languages = new String[documents.size()];
+        if (documents.size() < threshold)
+            detect(documents, languages, 0, documents.size());
+        else
+            pool.invoke(new DetectionTask(documents, languages, 0, documents.size()));
+        final List<Map<String, Object>> detectedDocuments = new ArrayList<>(documents.size());
+        for (int i = 0; i < languages.length; i++) {
+            final Map<String, Object> document = documents.get(i);
+            if (languages[i] == null)
+                detectedDocuments.add(document);
+            else {
+                // The same JSON as a field added by a parser: an array
+                final FieldsMap detectedDocument = new FieldsMap(document, 1);
+                detectedDocument.add(ParserInterface.LANG_DETECTION.name, languages[i]);
+                detectedDocuments.add(detectedDocument);
+            }
+        }
+        final Map<String, Object> metas =
+                result.metas == null ? new LinkedHashMap<>() : new LinkedHashMap<>(result.metas);
+        metas.put(ExtractorManager.LANG_DETECTION_TIME.name,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        return new ParserResult(result.parserName, result.timeElapsed, metas, detectedDocuments);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Detect the language of the documents from one position to another, on the calling thread
+     */
+    private static void detect(final List<Map<String, Object>> documents,
+                               final String[] languages,
+                               final int from,
+                               final int to) {
+        final List<CharSequence> texts = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            final Map<String, Object> document = documents.get(i);
+            if (document == null || document.containsKey(ParserInterface.LANG_DETECTION.name))
+                continue;
+            texts.clear();
+            LanguageSampler.collectTexts(document.get(ParserInterface.CONTENT.name), texts);
+            if (!texts.isEmpty())
+                languages[i] = LanguageSampler.detect(texts, MAX_LENGTH);
+        }
+    }
+
+    private final static class DetectionTask extends RecursiveAction {
+
+        private final List<Map<String, Object>> documents;
+
+        private final String[] languages;
+
+        private final int from;
+
+        private final int to;
+
+        private DetectionTask(final List<Map<String, Object>> documents,
+                              final String[] languages,
+                              final int from,
+                              final int to) {
+            this.documents = documents;
+            this.languages = languages;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > BATCH_SIZE) {
+                final int middle = (from + to) >>> 1;
+                invokeAll(new DetectionTask(documents, languages, from, middle),
+                        new DetectionTask(documents, languages, middle, to));
+                return;
+            }
+            detect(documents, languages, from, to);
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.qwazr.utils.Language;
+import java.util.List;
+
+/**
+ * Builds the text submitted to the language detection.
+ * A long text is sampled at its start, its middle and its end, instead of its prefix only,
+ * the characters are copied once into a buffer reused by the thread.
+ */
+final class LanguageSampler {
+
+    /**
+     * The number of windows of a long text
+     */
+    private final static int WINDOWS = 3;
+
+    /**
+     * A larger buffer is not kept by the thread
+     */
+    private final static int MAX_KEPT_CAPACITY = 64 * 1024;
+
+    private final static ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(StringBuilder::new);
+
+    private LanguageSampler() {
+    }
+
+    /**
+     * Collect the text of a field value, without copying it
+     *
+     * @param value a single value or a list of values
+     * @param texts receives the texts
+     */
+    static void collectTexts(final Object value, final List<CharSequence> texts) {
+        if (value instanceof List) {
+            for (final Object object : (List<?>) value)
+                if (object != null)
+                    texts.add(object instanceof CharSequence ? (CharSequence) object : object.toString());
+        } else if (value != null)
+            texts.add(value instanceof CharSequence ? (CharSequence) value : value.toString());
+    }
+
+    /**
+     * @param texts     the texts, considered as one text separated by spaces
+     * @param maxLength the maximum number of characters submitted to the detection
+     * @return the detected language, or null
+     */
+    static String detect(final List<? extends CharSequence> texts, final int maxLength) {
+        if (texts.isEmpty() || maxLength <= 0)
+            return null;
+        if (texts.size() == 1 && texts.get(0).length() <= maxLength)
+            return Language.quietDetect(texts.get(0).toString(), maxLength);
+        final StringBuilder buffer = BUFFER.get();
+        try {
+            sample(texts, maxLength, buffer);
+            return Language.quietDetect(buffer.toString(), maxLength);
+        } finally {
+            buffer.setLength(0);
+            if (buffer.capacity() > MAX_KEPT_CAPACITY)
+                BUFFER.remove();
+        }
+    }
+
+    /**
+     * Append at most maxLength characters: the whole text if it is short enough,
+     * otherwise a window at the start, the middle and the end.
+     */
+    static void sample(final List<? extends CharSequence> texts, final int maxLength, final StringBuilder buffer) {
+        long totalLength = texts.size() - 1;
+        for (final CharSequence text : texts)
+            totalLength += text.length();
+        if (totalLength <= maxLength) {
+            append(texts, 0, totalLength, buffer);
+            return;
+        }
+        final int windowLength = (maxLength - (WINDOWS - 1)) / WINDOWS;
+        for (int i = 0; i < WINDOWS; i++) {
+            if (i > 0)
+                buffer.append(' ');
+            final long start = (totalLength - windowLength) * i / (WINDOWS - 1);
+            append(texts, start, start + windowLength, buffer);
+        }
+    }
+
+    /**
+     * Append a range of the texts joined by spaces, without building the joined text
+     */
+    private static void append(final List<? extends CharSequence> texts,
+                               final long start,
+                               final long end,
+                               final StringBuilder buffer) {
+        long position = 0;
+        for (final CharSequence text : texts) {
+            if (position >= end)
+                return;
+            if (position > 0) {
+                // The separator
+                if (position - 1 >= start)
+                    buffer.append(' ');
+            }
+            final long textEnd = position + text.length();
+            if (textEnd > start)
+                buffer.append(text, (int) Math.max(0, start - position), (int) (Math.min(end, textEnd) - position));
+            position = textEnd + 1;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Applies the limits of the request to a streamed result.
+ * The documents beyond the maximum are not written, the content of each document is truncated.
+ */
+final class LimitedResultSink implements ResultSink {
+
+    private final ResultSink sink;
+
+    private final ExtractionLimits limits;
+
+    private final ExtractionLimits.LimitedInputStream input;
+
+    private int documents;
+
+    private boolean truncated;
+
+    /**
+     * @param sink   receives the limited result
+     * @param limits the limits of the request
+     * @param input  the limited input, null if the parser reads a file
+     */
+    LimitedResultSink(final ResultSink sink,
+                      final ExtractionLimits limits,
+                      final ExtractionLimits.LimitedInputStream input) {
+        this.sink = sink;
+        this.limits = limits;
+        this.input = input;
+    }
+
+    @Override
+    public void start(final String parserName, final Map<String, Object> metas) throws IOException {
+        sink.start(parserName, metas);
+    }
+
+    @Override
+    public void document(final Map<String, Object> fields) throws IOException {
+        if (documents >= limits.maxDocuments) {
+            truncated = true;
+            return;
+        }
+        documents++;
+        final Map<String, Object> limitedFields = limits.limitContent(fields);
+        if (limitedFields != fields)
+            truncated = true;
+        sink.document(limitedFields);
+    }
+
+    @Override
+    public void end(final Map<String, Object> trailingMetas, final long timeElapsed) throws IOException {
+        if (!truncated && (input == null || !input.isTruncated())) {
+            sink.end(trailingMetas, timeElapsed);
+            return;
+        }
+        final Map<String, Object> metas =
+                trailingMetas == null ? new LinkedHashMap<>() : new LinkedHashMap<>(trailingMetas);
+        metas.put(ParserInterface.TRUNCATED.name, true);
+        sink.end(metas, timeElapsed);
+    }
+}
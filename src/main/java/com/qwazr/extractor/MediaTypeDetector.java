@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Detects the media type of a stream by matching its first bytes
+ * against the signatures declared by the registered parser factories.
+ * An instance is immutable, registering new signatures builds a new detector.
+ */
+class MediaTypeDetector {
+
+    /**
+     * Upper bound of the prefix read from a stream, whatever the declared signatures are.
+     */
+    final static int MAX_PREFIX_LENGTH = 8192;
+
+    final static MediaTypeDetector EMPTY = new MediaTypeDetector(new ParserSignature[0], 0);
+
+    private final ParserSignature[] signatures;
+
+    private final int prefixLength;
+
+    private MediaTypeDetector(final ParserSignature[] signatures, final int prefixLength) {
+        this.signatures = signatures;
+        this.prefixLength = prefixLength;
+    }
+
+    /**
+     * Build a new detector including additional signatures.
+     *
+     * @param newSignatures the signatures to add
+     * @return a new detector, or the current one if there is no signature to add
+     */
+    MediaTypeDetector with(final Collection<ParserSignature> newSignatures) {
+        if (newSignatures == null || newSignatures.isEmpty())
+            return this;
+        final ParserSignature[] array = Arrays.copyOf(signatures, signatures.length + newSignatures.size());
+        int i = signatures.length;
+        int length = prefixLength;
+        for (final ParserSignature signature : newSignatures) {
+            if (signature.getLength() > MAX_PREFIX_LENGTH)
+                throw new IllegalArgumentException("The signature is too long: " + signature);
+            array[i++] = signature;
+            length = Math.max(length, signature.getLength());
+        }
+        // The most specific (longest) signatures are checked first
+        Arrays.sort(array, Comparator.comparingInt(ParserSignature::getLength).reversed());
+        return new MediaTypeDetector(array, length);
+    }
+
+    /**
+     * Check if the media type is missing or too generic to select a parser.
+     *
+     * @param mediaType the media type provided by the client
+     * @return true if the content should be sniffed
+     */
+    static boolean isUndefined(final MediaType mediaType) {
+        return mediaType == null
+                || mediaType.isWildcardType()
+                || mediaType.isWildcardSubtype()
+                || MediaType.APPLICATION_OCTET_STREAM_TYPE.isCompatible(mediaType);
+    }
+
+    /**
+     * Peek the first bytes of the stream and return the matching media type.
+     * The stream is reset to its initial position.
+     *
+     * @param inputStream a stream supporting mark/reset
+     * @return the detected media type or null
+     * @throws IOException if any I/O error occurs
+     */
+    MediaType detect(final InputStream inputStream) throws IOException {
+        if (signatures.length == 0)
+            return null;
+        final byte[] prefix = new byte[prefixLength];
+        inputStream.mark(prefixLength);
+        final int read;
+        try {
+            read = inputStream.readNBytes(prefix, 0, prefixLength);
+        } finally {
+            inputStream.reset();
+        }
+        for (final ParserSignature signature : signatures)
+            if (signature.matches(prefix, read))
+                return signature.mediaType;
+        return null;
+    }
+
+}
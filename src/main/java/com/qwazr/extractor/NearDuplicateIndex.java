@@ -0,0 +1,509 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.qwazr.utils.LoggerUtils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Logger;
+
+/**
+ * The perceptual hashes of the images, by key, searched by Hamming distance.
+ * <p>
+ * Multi-index hashing: the bits of the hashes are split in {@link #BLOCKS} blocks, each block value lists the
+ * entries which have it. Two hashes within a distance k have at least one block within a distance k / BLOCKS,
+ * the candidates are found by enumerating the values near each block of the searched hash.
+ * When this enumeration is larger than the index, every hash is compared.
+ * <p>
+ * The entries are appended to a file, which is read again when the index is opened.
+ * A key has one entry: when it is added again with another hash, the last entry of the file replaces the previous one.
+ */
+final class NearDuplicateIndex implements Closeable {
+
+    private final static Logger LOGGER = LoggerUtils.getLogger(NearDuplicateIndex.class);
+
+    final static int BLOCKS = 4;
+
+    /**
+     * Above this distance per block, the hashes are scanned
+     */
+    private final static int MAX_BLOCK_DISTANCE = 2;
+
+    private final static int FILE_MAGIC = 0x50484958;
+
+    private final static int FILE_VERSION = 1;
+
+    private final static int HEADER_LENGTH = Integer.BYTES * 2;
+
+    /**
+     * The maximum length of a key, in modified UTF-8 bytes
+     */
+    final static int MAX_KEY_LENGTH = 65535;
+
+    /**
+     * The estimated sizes in memory, with compressed references: a reference, an array header,
+     * a String with its array header, a HashMap node with its Integer value
+     */
+    private final static int REFERENCE_BYTES = 4;
+
+    private final static int ARRAY_BYTES = 16;
+
+    private final static int STRING_BYTES = 24 + ARRAY_BYTES;
+
+    private final static int MAP_ENTRY_BYTES = 32 + 16;
+
+    private final Path file;
+
+    private final int bits;
+
+    private final int[] blockShifts;
+
+    private final int[] blockMasks;
+
+    private final ReadWriteLock lock;
+
+    private long[] hashes;
+
+    private String[] keys;
+
+    private final Map<String, Integer> entriesByKey;
+
+    private int size;
+
+    /**
+     * The estimated size in memory of the keys
+     */
+    private long keysBytes;
+
+    /**
+     * For each block and each block value, the entries
+     */
+    private final int[][][] postings;
+
+    private final int[][] postingSizes;
+
+    private DataOutputStream output;
+
+    private final LongAdder searches;
+
+    private final LongAdder searchNanos;
+
+    private final LongAccumulator maxSearchNanos;
+
+    /**
+     * @param file the file of the entries, created if it does not exist
+     * @param bits the number of bits of the hashes
+     * @throws IOException if the file can't be read or created
+     */
+    NearDuplicateIndex(final Path file, final int bits) throws IOException {
+        if (bits < BLOCKS || bits > Long.SIZE)
+            throw new IllegalArgumentException("Unsupported number of bits: " + bits);
+        this.file = file;
+        this.bits = bits;
+        blockShifts = new int[BLOCKS];
+        blockMasks = new int[BLOCKS];
+        postings = new int[BLOCKS][][];
+        postingSizes = new int[BLOCKS][];
+        for (int block = 0; block < BLOCKS; block++) {
+            final int from = block * bits / BLOCKS;
+            final int to = (block + 1) * bits / BLOCKS;
+            blockShifts[block] = from;
+            blockMasks[block] = (1 << (to - from)) - 1;
+            postings[block] = new int[1 << (to - from)][];
+            postingSizes[block] = new int[1 << (to - from)];
+        }
+        lock = new ReentrantReadWriteLock();
+        hashes = new long[1024];
+        keys = new String[1024];
+        entriesByKey = new HashMap<>();
+        searches = new LongAdder();
+        searchNanos = new LongAdder();
+        maxSearchNanos = new LongAccumulator(Math::max, 0);
+        load();
+    }
+
+    /**
+     * Read the entries of the file. An incomplete header or last entry, left by a crash, is removed.
+     */
+    private void load() throws IOException {
+        final Path parent = file.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+        long validLength = 0;
+        if (Files.exists(file) && Files.size(file) > 0) {
+            if (Files.size(file) >= HEADER_LENGTH) {
+                try (final DataInputStream input = new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(file)))) {
+                    if (input.readInt() != FILE_MAGIC || input.readInt() != FILE_VERSION)
+                        throw new IOException("Not a phash index file: " + file);
+                    validLength = HEADER_LENGTH;
+                    while (true) {
+                        final long hash;
+                        final String key;
+                        try {
+                            hash = input.readLong();
+                            key = input.readUTF();
+                        } catch (EOFException | UTFDataFormatException e) {
+                            break;
+                        }
+                        putEntry(key, hash);
+                        validLength += Long.BYTES + 2 + modifiedUtf8Length(key);
+                    }
+                }
+            }
+            if (validLength < Files.size(file)) {
+                LOGGER.warning(() -> "Removing an incomplete entry at the end of " + file);
+                try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(validLength);
+                }
+            }
+        }
+        output = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        if (validLength == 0) {
+            output.writeInt(FILE_MAGIC);
+            output.writeInt(FILE_VERSION);
+            output.flush();
+        }
+    }
+
+    private static int modifiedUtf8Length(final String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c > 0x07FF ? 3 : 2;
+        }
+        return length;
+    }
+
+    /**
+     * @param key the key of an image
+     * @return true if the key can be written in the file
+     */
+    static boolean isValidKey(final String key) {
+        return key != null && modifiedUtf8Length(key) <= MAX_KEY_LENGTH;
+    }
+
+    private static long stringBytes(final String key) {
+        int latin1 = 1;
+        for (int i = 0; i < key.length() && latin1 == 1; i++)
+            if (key.charAt(i) > 0xFF)
+                latin1 = 2;
+        return align(STRING_BYTES + (long) key.length() * latin1);
+    }
+
+    private static long align(final long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private int blockValue(final long hash, final int block) {
+        return (int) (hash >>> blockShifts[block]) & blockMasks[block];
+    }
+
+    /**
+     * Index the hash of a key, in place of its previous hash if any
+     */
+    private void putEntry(final String key, final long hash) {
+        final Integer previous = entriesByKey.get(key);
+        final int entry;
+        if (previous != null) {
+            entry = previous;
+            for (int block = 0; block < BLOCKS; block++)
+                removePosting(block, blockValue(hashes[entry], block), entry);
+        } else {
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            entry = size++;
+            keys[entry] = key;
+            keysBytes += stringBytes(key);
+            entriesByKey.put(key, entry);
+        }
+        hashes[entry] = hash;
+        for (int block = 0; block < BLOCKS; block++)
+            addPosting(block, blockValue(hash, block), entry);
+    }
+
+    private void addPosting(final int block, final int value, final int entry) {
+        final int[] blockEntries = postings[block][value];
+        final int count = postingSizes[block][value];
+        if (blockEntries == null)
+            postings[block][value] = new int[] { entry };
+        else if (count == blockEntries.length) {
+            postings[block][value] = Arrays.copyOf(blockEntries, count * 2);
+            postings[block][value][count] = entry;
+        } else
+            blockEntries[count] = entry;
+        postingSizes[block][value] = count + 1;
+    }
+
+    private void removePosting(final int block, final int value, final int entry) {
+        final int[] blockEntries = postings[block][value];
+        final int count = postingSizes[block][value];
+        for (int i = 0; i < count; i++) {
+            if (blockEntries[i] == entry) {
+                blockEntries[i] = blockEntries[count - 1];
+                postingSizes[block][value] = count - 1;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Add an entry, or replace the hash of an indexed key, unless the key is already indexed with the same hash.
+     *
+     * @param key  the key of the image, at most {@link #MAX_KEY_LENGTH} bytes in modified UTF-8
+     * @param hash the perceptual hash of the image
+     * @return true if the entry has been added or replaced
+     * @throws IOException if the entry can't be written
+     */
+    boolean add(final String key, final long hash) throws IOException {
+        if (bits < Long.SIZE && hash >>> bits != 0)
+            throw new IllegalArgumentException("The hash has more than " + bits + " bits");
+        if (!isValidKey(key))
+            throw new IllegalArgumentException("The key is longer than " + MAX_KEY_LENGTH + " bytes");
+        // The whole entry is written at once, a failure leaves no partial entry in the file
+        final ByteArrayOutputStream entryBytes = new ByteArrayOutputStream(Long.BYTES + 2 + key.length());
+        try (final DataOutputStream entryOutput = new DataOutputStream(entryBytes)) {
+            entryOutput.writeLong(hash);
+            entryOutput.writeUTF(key);
+        }
+        lock.writeLock().lock();
+        try {
+            final Integer previous = entriesByKey.get(key);
+            if (previous != null && hashes[previous] == hash)
+                return false;
+            entryBytes.writeTo(output);
+            output.flush();
+            putEntry(key, hash);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param hash        the searched hash
+     * @param maxDistance the maximum number of different bits
+     * @param maxMatches  the maximum number of matches returned
+     * @return the entries within the distance, the nearest first
+     */
+    PHashSearchResult search(final long hash, final int maxDistance, final int maxMatches) {
+        final long startTime = System.nanoTime();
+        final List<Candidate> matches = new ArrayList<>();
+        final int candidates;
+        lock.readLock().lock();
+        try {
+            final int blockDistance = maxDistance / BLOCKS;
+            if (blockDistance > MAX_BLOCK_DISTANCE || size < enumerationSize(blockDistance))
+                candidates = scan(hash, maxDistance, matches);
+            else
+                candidates = probe(hash, maxDistance, blockDistance, matches);
+        } finally {
+            lock.readLock().unlock();
+        }
+        matches.sort(Comparator.comparingInt((Candidate c) -> c.distance).thenComparing(c -> c.key));
+        final List<PHashSearchResult.Match> result = new ArrayList<>(Math.min(maxMatches, matches.size()));
+        for (final Candidate candidate : matches) {
+            if (result.size() == maxMatches)
+                break;
+            result.add(new PHashSearchResult.Match(candidate.key, toBinaryString(candidate.hash), candidate.distance));
+        }
+        final long elapsed = System.nanoTime() - startTime;
+        searches.increment();
+        searchNanos.add(elapsed);
+        maxSearchNanos.accumulate(elapsed);
+        return new PHashSearchResult(elapsed / 1000, candidates, result);
+    }
+
+    /**
+     * The number of block values probed for a distance per block
+     */
+    private int enumerationSize(final int blockDistance) {
+        int count = 0;
+        for (int block = 0; block < BLOCKS; block++) {
+            final int blockBits = Integer.bitCount(blockMasks[block]);
+            int combinations = 1;
+            for (int d = 1; d <= blockDistance; d++)
+                combinations += binomial(blockBits, d);
+            count += combinations;
+        }
+        return count;
+    }
+
+    private static int binomial(final int n, final int k) {
+        long result = 1;
+        for (int i = 0; i < k; i++)
+            result = result * (n - i) / (i + 1);
+        return (int) result;
+    }
+
+    private int scan(final long hash, final int maxDistance, final List<Candidate> matches) {
+        for (int i = 0; i < size; i++) {
+            final int distance = Long.bitCount(hashes[i] ^ hash);
+            if (distance <= maxDistance)
+                matches.add(new Candidate(keys[i], hashes[i], distance));
+        }
+        return size;
+    }
+
+    private int probe(final long hash, final int maxDistance, final int blockDistance, final List<Candidate> matches) {
+        int candidates = 0;
+        for (int block = 0; block < BLOCKS; block++)
+            candidates += probe(hash, maxDistance, blockDistance, block, blockValue(hash, block), 0, blockDistance,
+                    matches);
+        return candidates;
+    }
+
+    /**
+     * Visit the block value, then the values obtained by flipping up to the given number of bits, from a given bit.
+     * Each value within the distance of the block of the searched hash is visited once.
+     */
+    private int probe(final long hash,
+                      final int maxDistance,
+                      final int blockDistance,
+                      final int block,
+                      final int value,
+                      final int fromBit,
+                      final int flips,
+                      final List<Candidate> matches) {
+        int candidates = visit(hash, maxDistance, blockDistance, block, value, matches);
+        if (flips > 0) {
+            final int blockBits = Integer.bitCount(blockMasks[block]);
+            for (int bit = fromBit; bit < blockBits; bit++)
+                candidates += probe(hash, maxDistance, blockDistance, block, value ^ (1 << bit), bit + 1, flips - 1,
+                        matches);
+        }
+        return candidates;
+    }
+
+    /**
+     * An entry is only reported by the first block within the distance, which avoids the duplicates.
+     */
+    private int visit(final long hash,
+                      final int maxDistance,
+                      final int blockDistance,
+                      final int block,
+                      final int value,
+                      final List<Candidate> matches) {
+        final int[] entries = postings[block][value];
+        final int count = postingSizes[block][value];
+        for (int i = 0; i < count; i++) {
+            final int entry = entries[i];
+            final long entryHash = hashes[entry];
+            final int distance = Long.bitCount(entryHash ^ hash);
+            if (distance > maxDistance || isFoundByPreviousBlock(entryHash, hash, block, blockDistance))
+                continue;
+            matches.add(new Candidate(keys[entry], entryHash, distance));
+        }
+        return count;
+    }
+
+    private boolean isFoundByPreviousBlock(final long entryHash,
+                                           final long hash,
+                                           final int block,
+                                           final int blockDistance) {
+        for (int previous = 0; previous < block; previous++)
+            if (Integer.bitCount(blockValue(entryHash, previous) ^ blockValue(hash, previous)) <= blockDistance)
+                return true;
+        return false;
+    }
+
+    private String toBinaryString(final long hash) {
+        final char[] chars = new char[bits];
+        for (int i = 0; i < bits; i++)
+            chars[i] = (hash & (1L << (bits - 1 - i))) != 0 ? '1' : '0';
+        return new String(chars);
+    }
+
+    ExtractorStatus.PHashIndex getStatus() {
+        final int entries;
+        long memoryBytes;
+        lock.readLock().lock();
+        try {
+            entries = size;
+            memoryBytes = (long) hashes.length * Long.BYTES;
+            for (int block = 0; block < BLOCKS; block++) {
+                memoryBytes += (long) postings[block].length * (REFERENCE_BYTES + Integer.BYTES);
+                for (final int[] blockEntries : postings[block])
+                    if (blockEntries != null)
+                        memoryBytes += align(ARRAY_BYTES + (long) blockEntries.length * Integer.BYTES);
+            }
+            // The keys, and the HashMap of the entries by key: a node per key, and its table at 75% load
+            memoryBytes += (long) keys.length * REFERENCE_BYTES + keysBytes;
+            memoryBytes += (long) size * MAP_ENTRY_BYTES +
+                    Long.highestOneBit(Math.max(16, size * 4L / 3) * 2 - 1) * REFERENCE_BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+        long fileBytes;
+        try {
+            fileBytes = Files.size(file);
+        } catch (IOException e) {
+            fileBytes = -1;
+        }
+        final long count = searches.sum();
+        return new ExtractorStatus.PHashIndex(entries, memoryBytes, fileBytes, count,
+                count == 0 ? 0 : searchNanos.sum() / count / 1000, maxSearchNanos.get() / 1000);
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            output.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private final static class Candidate {
+
+        private final String key;
+
+        private final long hash;
+
+        private final int distance;
+
+        private Candidate(final String key, final long hash, final int distance) {
+            this.key = key;
+            this.hash = hash;
+            this.distance = distance;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.qwazr.extractor.parser.ImageParser;
+import com.qwazr.utils.concurrent.ConsumerEx;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the perceptual hashes of the documents of a streamed result.
+ * They are indexed when the extraction ends, a failed extraction adds nothing to the index.
+ */
+final class PHashIndexSink implements ResultSink {
+
+    private final ResultSink sink;
+
+    private final ConsumerEx<List<Object>, IOException> indexer;
+
+    private final List<Object> phashes;
+
+    /**
+     * @param sink    receives the result
+     * @param indexer adds the collected hashes to the index
+     */
+    PHashIndexSink(final ResultSink sink, final ConsumerEx<List<Object>, IOException> indexer) {
+        this.sink = sink;
+        this.indexer = indexer;
+        this.phashes = new ArrayList<>();
+    }
+
+    /**
+     * @param fields  the fields of a document, may be null
+     * @param phashes receives the perceptual hashes of the document
+     */
+    static void collect(final Map<String, Object> fields, final List<Object> phashes) {
+        final Object value = fields == null ? null : fields.get(ImageParser.PHASH.name);
+        if (value instanceof Collection) {
+            for (final Object phash : (Collection<?>) value)
+                if (phash != null)
+                    phashes.add(phash);
+        } else if (value != null)
+            phashes.add(value);
+    }
+
+    @Override
+    public void start(final String parserName, final Map<String, Object> metas) throws IOException {
+        sink.start(parserName, metas);
+    }
+
+    @Override
+    public void document(final Map<String, Object> fields) throws IOException {
+        collect(fields, phashes);
+        sink.document(fields);
+    }
+
+    @Override
+    public void end(final Map<String, Object> trailingMetas, final long timeElapsed) throws IOException {
+        indexer.accept(phashes);
+        sink.end(trailingMetas, timeElapsed);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+/**
+ * The images of the perceptual hash index near a given hash, the nearest first.
+ */
+@JsonInclude(Include.NON_NULL)
+@JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE)
+public class PHashSearchResult {
+
+    /**
+     * The search time in microseconds
+     */
+    @JsonProperty("time_elapsed")
+    final public long timeElapsed;
+
+    /**
+     * The number of hashes compared with the searched hash
+     */
+    final public int candidates;
+
+    final public List<Match> matches;
+
+    @JsonCreator
+    PHashSearchResult(final @JsonProperty("time_elapsed") long timeElapsed,
+                      final @JsonProperty("candidates") int candidates,
+                      final @JsonProperty("matches") List<Match> matches) {
+        this.timeElapsed = timeElapsed;
+        this.candidates = candidates;
+        this.matches = matches;
+    }
+
+    @JsonInclude(Include.NON_NULL)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+            getterVisibility = JsonAutoDetect.Visibility.NONE,
+            isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+            fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+            creatorVisibility = JsonAutoDetect.Visibility.NONE)
+    public static class Match {
+
+        final public String key;
+
+        final public String phash;
+
+        /**
+         * The number of different bits
+         */
+        final public int distance;
+
+        @JsonCreator
+        Match(final @JsonProperty("key") String key,
+              final @JsonProperty("phash") String phash,
+              final @JsonProperty("distance") int distance) {
+            this.key = key;
+            this.phash = phash;
+            this.distance = distance;
+        }
+    }
+}
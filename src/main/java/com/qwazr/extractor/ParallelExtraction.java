@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.qwazr.utils.concurrent.ConsumerEx;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Runs a function over a sequence of items using a bounded number of tasks in flight.
+ * The items are pulled from the iterator only when a slot is free,
+ * the memory used does not depend on the number of items.
+ */
+final class ParallelExtraction {
+
+    private ParallelExtraction() {
+    }
+
+    /**
+     * The results are given to the consumer in completion order, by the calling thread.
+     *
+     * @param executor    the executor running the function
+     * @param parallelism the maximum number of tasks in flight
+     * @param items       the items to process
+     * @param function    the function applied to each item, it should not throw any exception
+     * @param consumer    receives each result as soon as it is available
+     * @param <T>         the type of the items
+     * @param <R>         the type of the results
+     * @throws IOException if the consumer fails or if the thread is interrupted
+     */
+    static <T, R> void run(final Executor executor,
+                           final int parallelism,
+                           final Iterator<T> items,
+                           final Function<T, R> function,
+                           final ConsumerEx<R, IOException> consumer) throws IOException {
+        final CompletionService<R> completionService = new ExecutorCompletionService<>(executor);
+        int inFlight = 0;
+        try {
+            while (true) {
+                while (inFlight < parallelism && items.hasNext()) {
+                    final T item = items.next();
+                    completionService.submit(() -> function.apply(item));
+                    inFlight++;
+                }
+                if (inFlight == 0)
+                    return;
+                final Future<R> future = completionService.take();
+                inFlight--;
+                consumer.accept(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The extraction has been interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Unexpected extraction failure", e.getCause());
+        } finally {
+            // Drain the pending tasks, the consumer is not called anymore
+            while (inFlight-- > 0) {
+                try {
+                    completionService.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.Response;
+
+/**
+ * Each parser runs in its own bounded thread pool,
+ * a slow format can't take the threads needed by the other formats.
+ */
+final class ParserBulkhead implements AutoCloseable {
+
+    /**
+     * Number of extractions waiting for a thread, per allowed concurrent extraction
+     */
+    final static int QUEUE_FACTOR = 16;
+
+    /**
+     * The delay suggested to the client when the queue is full
+     */
+    private final static long RETRY_AFTER_SECONDS = 5;
+
+    private final String parserName;
+
+    private final int concurrency;
+
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder rejected;
+
+    private final LongAdder timeouts;
+
+    ParserBulkhead(final String parserName, final int concurrency) {
+        this.parserName = parserName;
+        this.concurrency = concurrency;
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = runnable -> {
+            final Thread thread = new Thread(runnable, "extractor-" + parserName + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(concurrency, concurrency, 1, TimeUnit.MINUTES,
+                new LinkedBlockingQueue<>(concurrency * QUEUE_FACTOR), threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        rejected = new LongAdder();
+        timeouts = new LongAdder();
+    }
+
+    /**
+     * Run the extraction in the pool and wait for the result.
+     * If the deadline is reached, the worker thread is interrupted and an error is returned immediately.
+     *
+     * @param extraction    the extraction to run
+     * @param timeoutMillis the maximum time to wait for the result
+     * @return the result of the extraction
+     * @throws IOException if any I/O error occurs
+     */
+    ParserResult execute(final Callable<ParserResult> extraction, final long timeoutMillis) throws IOException {
+        if (timeoutMillis <= 0)
+            throw timeoutException(0);
+        final Future<ParserResult> future;
+        try {
+            future = executor.submit(extraction);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceUnavailableException(
+                    "Too many extractions in progress for the parser " + parserName, RETRY_AFTER_SECONDS);
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timeouts.increment();
+            throw timeoutException(timeoutMillis);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InternalServerErrorException("The extraction has been interrupted: " + parserName, e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private ServerErrorException timeoutException(final long timeoutMillis) {
+        return new ServerErrorException(
+                "The extraction with the parser " + parserName + " did not complete within " + timeoutMillis + " ms",
+                Response.Status.GATEWAY_TIMEOUT);
+    }
+
+    ParserStatus.Bulkhead getStatus() {
+        return new ParserStatus.Bulkhead(concurrency, executor.getActiveCount(), executor.getQueue().size(),
+                rejected.sum(), timeouts.sum());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -30,8 +30,45 @@ public interface ParserFactory {
 
     Collection<String> getSupportedFileExtensions();
 
+    /**
+     * The magic numbers used to detect the media type of a stream
+     * when it is not provided or too generic (application/octet-stream).
+     *
+     * @return the signatures, or null if the format has no known signature
+     */
+    default Collection<ParserSignature> getSignatures() {
+        return null;
+    }
+
     String getName();
 
     ParserInterface createParser();
 
+    /**
+     * Tells the manager how the instances returned by {@link #createParser()} can be reused.
+     *
+     * @return the thread safety of the parser instances
+     */
+    default ThreadSafety getThreadSafety() {
+        return ThreadSafety.SINGLE_USE;
+    }
+
+    enum ThreadSafety {
+
+        /**
+         * One instance can be shared by concurrent requests.
+         */
+        THREAD_SAFE,
+
+        /**
+         * An instance can be reused by successive requests, but not by concurrent ones.
+         */
+        REUSABLE,
+
+        /**
+         * A new instance is required for each request.
+         */
+        SINGLE_USE
+    }
+
 }
@@ -83,8 +83,12 @@ public class ParserField extends Equalizer.Immutable<ParserField> {
         return new ParserField(name, Type.MAP, description);
     }
 
+    public static ParserField newBoolean(String name, String description) {
+        return new ParserField(name, Type.BOOLEAN, description);
+    }
+
     public enum Type {
-        STRING, INTEGER, DATE, MAP
+        STRING, INTEGER, DATE, MAP, BOOLEAN
     }
 
 }
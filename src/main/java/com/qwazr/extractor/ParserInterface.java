@@ -31,6 +31,8 @@ public interface ParserInterface {
 
     ParserField MIME_TYPE = ParserField.newString("mime_type", "The mime type of the file");
 
+    ParserField TRUNCATED = ParserField.newBoolean("truncated", "True if a limit of the extraction has been reached");
+
     /**
      * Extract data from a stream and return the ParserResult.
      *
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the instances returned by {@link ParserFactory#createParser()}
+ * according to the thread safety declared by the factory.
+ */
+abstract class ParserPool {
+
+    final ParserFactory factory;
+
+    private final LongAdder hits;
+
+    private final LongAdder misses;
+
+    private ParserPool(final ParserFactory factory) {
+        this.factory = factory;
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+
+    /**
+     * @return an instance which is not used by any other thread
+     */
+    abstract ParserInterface borrow();
+
+    /**
+     * Give back an instance obtained with {@link #borrow()}
+     *
+     * @param parser the instance which is not used anymore
+     */
+    abstract void release(ParserInterface parser);
+
+    /**
+     * @return the number of instances kept for the next requests
+     */
+    abstract int getIdle();
+
+    final ParserInterface hit(final ParserInterface parser) {
+        hits.increment();
+        return parser;
+    }
+
+    final ParserInterface miss() {
+        misses.increment();
+        return factory.createParser();
+    }
+
+    final ParserStatus.Pool getStatus() {
+        return new ParserStatus.Pool(hits.sum(), misses.sum(), getIdle());
+    }
+
+    static ParserPool of(final ParserFactory factory, final int maxIdle) {
+        final ParserFactory.ThreadSafety threadSafety = factory.getThreadSafety();
+        switch (threadSafety == null ? ParserFactory.ThreadSafety.SINGLE_USE : threadSafety) {
+            case THREAD_SAFE:
+                return new Shared(factory);
+            case REUSABLE:
+                return new Bounded(factory, maxIdle);
+            default:
+                return new SingleUse(factory);
+        }
+    }
+
+    private final static class Shared extends ParserPool {
+
+        private volatile ParserInterface instance;
+
+        private Shared(final ParserFactory factory) {
+            super(factory);
+        }
+
+        @Override
+        ParserInterface borrow() {
+            final ParserInterface parser = instance;
+            if (parser != null)
+                return hit(parser);
+            synchronized (this) {
+                if (instance != null)
+                    return hit(instance);
+                instance = miss();
+                return instance;
+            }
+        }
+
+        @Override
+        void release(final ParserInterface parser) {
+        }
+
+        @Override
+        int getIdle() {
+            return instance == null ? 0 : 1;
+        }
+    }
+
+    private final static class Bounded extends ParserPool {
+
+        private final ArrayBlockingQueue<ParserInterface> idle;
+
+        private Bounded(final ParserFactory factory, final int maxIdle) {
+            super(factory);
+            this.idle = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+        }
+
+        @Override
+        ParserInterface borrow() {
+            final ParserInterface parser = idle.poll();
+            return parser == null ? miss() : hit(parser);
+        }
+
+        @Override
+        void release(final ParserInterface parser) {
+            // If the pool is full, the instance is left to the garbage collector
+            idle.offer(parser);
+        }
+
+        @Override
+        int getIdle() {
+            return idle.size();
+        }
+    }
+
+    private final static class SingleUse extends ParserPool {
+
+        private SingleUse(final ParserFactory factory) {
+            super(factory);
+        }
+
+        @Override
+        ParserInterface borrow() {
+            return miss();
+        }
+
+        @Override
+        void release(final ParserInterface parser) {
+        }
+
+        @Override
+        int getIdle() {
+            return 0;
+        }
+    }
+}
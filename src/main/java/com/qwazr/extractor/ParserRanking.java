@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * The observed behavior of a parser for one media type or one extension.
+ * It is used to try first the parsers which are the most likely to succeed quickly,
+ * and to skip for a while a parser which keeps failing (circuit breaker).
+ */
+final class ParserRanking {
+
+    /**
+     * Number of consecutive failures opening the circuit
+     */
+    final static int FAILURE_THRESHOLD = 5;
+
+    /**
+     * How long a parser is skipped once its circuit is open
+     */
+    final static long OPEN_DURATION_MS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * Weight of the last observation in the moving average of the extraction time
+     */
+    private final static double TIME_SMOOTHING = 0.2;
+
+    private final LongAdder successes;
+
+    private final LongAdder failures;
+
+    private final AtomicInteger consecutiveFailures;
+
+    private volatile long openUntil;
+
+    private volatile double meanTimeMs;
+
+    ParserRanking() {
+        successes = new LongAdder();
+        failures = new LongAdder();
+        consecutiveFailures = new AtomicInteger();
+    }
+
+    static String keyOf(final MediaType mediaType) {
+        return (mediaType.getType() + '/' + mediaType.getSubtype()).toLowerCase(Locale.ROOT);
+    }
+
+    static String keyOf(final String extension) {
+        return "." + (extension == null ? "" : extension.toLowerCase(Locale.ROOT));
+    }
+
+    private synchronized void updateTime(final long elapsedNanos) {
+        final double elapsedMs = elapsedNanos / 1_000_000d;
+        meanTimeMs = successes.sum() + failures.sum() <= 1 ?
+                elapsedMs :
+                meanTimeMs + TIME_SMOOTHING * (elapsedMs - meanTimeMs);
+    }
+
+    void success(final long elapsedNanos) {
+        successes.increment();
+        consecutiveFailures.set(0);
+        openUntil = 0;
+        updateTime(elapsedNanos);
+    }
+
+    void failure(final long elapsedNanos) {
+        failures.increment();
+        if (consecutiveFailures.incrementAndGet() >= FAILURE_THRESHOLD)
+            openUntil = System.currentTimeMillis() + OPEN_DURATION_MS;
+        updateTime(elapsedNanos);
+    }
+
+    /**
+     * When the open period is over, the parser is tried again (half-open).
+     * One more failure reopens the circuit, a success closes it.
+     *
+     * @param now the current time in milliseconds
+     * @return true if the parser should be skipped
+     */
+    boolean isOpen(final long now) {
+        return openUntil > now;
+    }
+
+    /**
+     * The expected number of successes per millisecond spent.
+     * Trying the candidates by decreasing score minimizes the expected time to obtain a result.
+     * Unknown parsers have a neutral success ratio.
+     *
+     * @return the score of the parser
+     */
+    double getScore() {
+        final long s = successes.sum();
+        final long f = failures.sum();
+        final double ratio = (s + 1d) / (s + f + 2d);
+        return ratio / Math.max(meanTimeMs, 0.1d);
+    }
+
+    ExtractorStatus.Rank getStatus(final String parserName, final long now) {
+        return new ExtractorStatus.Rank(parserName, successes.sum(), failures.sum(),
+                Math.round(meanTimeMs), getScore(), isOpen(now));
+    }
+}
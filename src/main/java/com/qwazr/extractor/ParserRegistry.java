@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * An immutable snapshot of the registered parsers.
+ * Registering a parser builds a new snapshot, the lookups never lock nor allocate.
+ *
+ * @param <T> the type of the registered parsers
+ */
+final class ParserRegistry<T> {
+
+    private final IntFunction<T[]> arrayFactory;
+
+    private final T[] empty;
+
+    private final Map<String, Map<String, T[]>> mediaTypes;
+
+    private final Map<String, T[]> extensions;
+
+    private final SortedMap<String, T> parsers;
+
+    final MediaTypeDetector detector;
+
+    private ParserRegistry(final IntFunction<T[]> arrayFactory,
+                           final Map<String, Map<String, T[]>> mediaTypes,
+                           final Map<String, T[]> extensions,
+                           final SortedMap<String, T> parsers,
+                           final MediaTypeDetector detector) {
+        this.arrayFactory = arrayFactory;
+        this.empty = arrayFactory.apply(0);
+        this.mediaTypes = mediaTypes;
+        this.extensions = extensions;
+        this.parsers = parsers;
+        this.detector = detector;
+    }
+
+    static <T> ParserRegistry<T> empty(final IntFunction<T[]> arrayFactory) {
+        return new ParserRegistry<>(arrayFactory,
+                Collections.emptyMap(), Collections.emptyMap(), Collections.emptySortedMap(), MediaTypeDetector.EMPTY);
+    }
+
+    private static String normalize(final String key) {
+        // toLowerCase returns the same instance when the key is already in lower case
+        return key == null ? null : key.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private T[] append(final T[] parsers, final T parser) {
+        if (parsers == null) {
+            final T[] array = arrayFactory.apply(1);
+            array[0] = parser;
+            return array;
+        }
+        final T[] array = Arrays.copyOf(parsers, parsers.length + 1);
+        array[parsers.length] = parser;
+        return array;
+    }
+
+    /**
+     * Build a new snapshot including the given parser.
+     *
+     * @param factory the factory declaring the supported types and extensions
+     * @param parser  the parser to register
+     * @return a new registry
+     */
+    ParserRegistry<T> with(final ParserFactory factory, final T parser) {
+
+        final Map<String, Map<String, T[]>> newMediaTypes = new HashMap<>(mediaTypes);
+        final Collection<MediaType> mimeTypes = factory.getSupportedMimeTypes();
+        if (mimeTypes != null) {
+            for (final MediaType mimeType : mimeTypes) {
+                final String type = normalize(mimeType.getType());
+                final String subtype = normalize(mimeType.getSubtype());
+                final Map<String, T[]> subtypes = new HashMap<>(newMediaTypes.getOrDefault(type, Collections.emptyMap()));
+                subtypes.put(subtype, append(subtypes.get(subtype), parser));
+                newMediaTypes.put(type, subtypes);
+            }
+        }
+
+        final Map<String, T[]> newExtensions = new HashMap<>(extensions);
+        final Collection<String> fileExtensions = factory.getSupportedFileExtensions();
+        if (fileExtensions != null) {
+            for (final String fileExtension : fileExtensions) {
+                final String extension = normalize(fileExtension);
+                newExtensions.put(extension, append(newExtensions.get(extension), parser));
+            }
+        }
+
+        final SortedMap<String, T> newParsers = new TreeMap<>(parsers);
+        newParsers.put(factory.getName(), parser);
+
+        return new ParserRegistry<>(arrayFactory,
+                Collections.unmodifiableMap(newMediaTypes),
+                Collections.unmodifiableMap(newExtensions),
+                Collections.unmodifiableSortedMap(newParsers),
+                detector.with(factory.getSignatures()));
+    }
+
+    /**
+     * The parameters of the media type (charset, ...) are ignored.
+     *
+     * @param mediaType the media type of the document
+     * @return the parsers supporting the media type, in registration order
+     */
+    T[] forMediaType(final MediaType mediaType) {
+        if (mediaType == null)
+            return empty;
+        final Map<String, T[]> subtypes = mediaTypes.get(normalize(mediaType.getType()));
+        if (subtypes == null)
+            return empty;
+        final T[] result = subtypes.get(normalize(mediaType.getSubtype()));
+        return result == null ? empty : result;
+    }
+
+    /**
+     * @param extension the extension of the file, case insensitive
+     * @return the parsers supporting the extension, in registration order
+     */
+    T[] forExtension(final String extension) {
+        if (extension == null)
+            return empty;
+        final T[] result = extensions.get(normalize(extension));
+        return result == null ? empty : result;
+    }
+
+    T get(final String name) {
+        return parsers.get(name);
+    }
+
+    /**
+     * @return the registered parsers sorted by name
+     */
+    SortedMap<String, T> getParsers() {
+        return parsers;
+    }
+}
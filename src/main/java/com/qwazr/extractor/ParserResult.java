@@ -21,11 +21,13 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 @JsonInclude(Include.NON_EMPTY)
@@ -36,25 +38,45 @@ import java.util.function.Consumer;
         creatorVisibility = JsonAutoDetect.Visibility.NONE)
 public class ParserResult {
 
+    final static String CACHE_HIT_MEMORY = "HIT-MEMORY";
+
+    final static String CACHE_HIT_DISK = "HIT-DISK";
+
+    final static String CACHE_MISS = "MISS";
+
     @JsonProperty("parser_name")
     final public String parserName;
 
     @JsonProperty("time_elapsed")
     final public Long timeElapsed;
 
-    final public LinkedHashMap<String, Object> metas;
+    final public Map<String, Object> metas;
 
-    final public List<LinkedHashMap<String, Object>> documents;
+    final public List<Map<String, Object>> documents;
+
+    /**
+     * How the cache provided this result, null if the cache is disabled. It is not serialized.
+     */
+    final String cacheStatus;
 
     @JsonCreator
     ParserResult(final @JsonProperty("parser_name") String parserName,
                  final @JsonProperty("time_elapsed") Long timeElapsed,
-                 final @JsonProperty("metas") LinkedHashMap<String, Object> metas,
-                 final @JsonProperty("documents") List<LinkedHashMap<String, Object>> documents) {
+                 final @JsonProperty("metas") Map<String, Object> metas,
+                 final @JsonProperty("documents") List<Map<String, Object>> documents) {
         this.parserName = parserName;
         this.timeElapsed = timeElapsed;
         this.metas = metas;
         this.documents = documents;
+        this.cacheStatus = null;
+    }
+
+    ParserResult(final ParserResult result, final String cacheStatus) {
+        this.parserName = result.parserName;
+        this.timeElapsed = result.timeElapsed;
+        this.metas = result.metas;
+        this.documents = result.documents;
+        this.cacheStatus = cacheStatus;
     }
 
     ParserResult(final Builder builder) {
@@ -73,6 +95,7 @@ public class ParserResult {
         } else
             documents = Collections.emptyList();
 
+        cacheStatus = null;
     }
 
     /**
@@ -104,12 +127,70 @@ public class ParserResult {
     public Object getDocumentFieldValues(int documentPos, String fieldName) {
         if (documents == null || documentPos >= documents.size())
             return null;
-        final LinkedHashMap<String, Object> fields = documents.get(documentPos);
+        final Map<String, Object> fields = documents.get(documentPos);
         return fields == null ? null : fields.get(fieldName);
     }
 
     public static Builder of(String parserName) {
-        return new Builder(parserName);
+        return new Builder(parserName, null);
+    }
+
+    /**
+     * Create a builder which gives the documents to the sink as soon as they are complete.
+     * A document is complete when the next document is created, or when the result is built.
+     * The first document is kept until the second one is created,
+     * the metas set by a parser returning one document are then all written first.
+     *
+     * @param parserName the name of the parser
+     * @param sink       receives the metas and the documents
+     * @return a new builder
+     */
+    public static Builder of(String parserName, ResultSink sink) {
+        return new Builder(parserName, sink);
+    }
+
+    /**
+     * Send the result to a sink
+     */
+    void replay(final ResultSink sink) throws IOException {
+        sink.start(parserName, metas);
+        if (documents != null)
+            for (final Map<String, Object> document : documents)
+                sink.document(document);
+        sink.end(null, timeElapsed == null ? 0 : timeElapsed);
+    }
+
+    /**
+     * Apply the limits to a result built by a parser which ignores them.
+     *
+     * @param limits         the limits of the request
+     * @param inputTruncated true if the input has been cut
+     * @return the same result if no limit is exceeded, or a truncated copy
+     */
+    ParserResult limit(final ExtractionLimits limits, final boolean inputTruncated) {
+        boolean truncated = inputTruncated;
+        List<Map<String, Object>> limitedDocuments = documents;
+        if (documents != null) {
+            if (documents.size() > limits.maxDocuments) {
+                limitedDocuments = new ArrayList<>(documents.subList(0, limits.maxDocuments));
+                truncated = true;
+            }
+            for (int i = 0; i < limitedDocuments.size(); i++) {
+                final Map<String, Object> document = limitedDocuments.get(i);
+                final Map<String, Object> limitedDocument = limits.limitContent(document);
+                if (limitedDocument == document)
+                    continue;
+                if (limitedDocuments == documents)
+                    limitedDocuments = new ArrayList<>(documents);
+                limitedDocuments.set(i, limitedDocument);
+                truncated = true;
+            }
+        }
+        if (!truncated)
+            return this;
+        final Map<String, Object> limitedMetas = metas == null ? new LinkedHashMap<>() : new LinkedHashMap<>(metas);
+        limitedMetas.put(ParserInterface.TRUNCATED.name, true);
+        return new ParserResult(parserName, timeElapsed, limitedMetas, limitedDocuments);
     }
 
     final static public class Builder {
@@ -118,42 +199,92 @@ public class ParserResult {
 
         private final long startTime;
 
+        private final ResultSink sink;
+
         private FieldsBuilder metasBuilder;
 
         private List<FieldsBuilder> documentsBuilders;
 
-        private Builder(final String parserName) {
+        private boolean started;
+
+        private Builder(final String parserName, final ResultSink sink) {
             this.parserName = parserName;
             this.startTime = System.currentTimeMillis();
+            this.sink = sink;
         }
 
         public FieldsBuilder newDocument() {
             if (documentsBuilders == null)
                 documentsBuilders = new ArrayList<>();
+            else if (sink != null)
+                flushDocuments();
             final FieldsBuilder parserDocumentBuilder = new FieldsBuilder();
             documentsBuilders.add(parserDocumentBuilder);
             return parserDocumentBuilder;
         }
 
+        /**
+         * Give the complete documents to the sink. The metas are written before the first document,
+         * the metas set afterwards are written after the last document.
+         *
+         * @throws UncheckedIOException if the sink fails
+         */
+        private void flushDocuments() {
+            try {
+                if (!started) {
+                    sink.start(parserName, metasBuilder == null ? null : metasBuilder.fields);
+                    metasBuilder = null;
+                    started = true;
+                }
+                for (final FieldsBuilder documentBuilder : documentsBuilders)
+                    sink.document(documentBuilder.fields);
+                documentsBuilders.clear();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
         public FieldsBuilder metas() {
             if (metasBuilder == null)
                 metasBuilder = new FieldsBuilder();
             return metasBuilder;
         }
 
+        /**
+         * With a sink, only the documents which have not been written yet are visited.
+         *
+         * @param documentConsumer receives the documents
+         */
         public void forEachDocument(Consumer<FieldsBuilder> documentConsumer) {
             if (documentsBuilders != null)
                 documentsBuilders.forEach(documentConsumer);
         }
 
+        /**
+         * With a sink, the remaining documents are written and the returned result has no document.
+         *
+         * @return the result
+         * @throws UncheckedIOException if the sink fails
+         */
         public ParserResult build() {
-            return new ParserResult(this);
+            if (sink == null)
+                return new ParserResult(this);
+            if (documentsBuilders == null)
+                documentsBuilders = new ArrayList<>();
+            flushDocuments();
+            final ParserResult result = new ParserResult(this);
+            try {
+                sink.end(result.metas, result.timeElapsed);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return result;
         }
     }
 
     final static public class FieldsBuilder {
 
-        private LinkedHashMap<String, Object> fields;
+        private FieldsMap fields;
 
         /**
          * Add a field/value pair to the document
@@ -165,12 +296,8 @@ public class ParserResult {
             if (value == null)
                 return;
             if (fields == null)
-                fields = new LinkedHashMap<>();
-            final List<Object> values = (List<Object>) fields.computeIfAbsent(field.name, f -> new ArrayList<Object>(1));
-            if (value instanceof Collection)
-                values.addAll((Collection) value);
-            else
-                values.add(value);
+                fields = new FieldsMap();
+            fields.add(field.name, value);
         }
 
         /**
@@ -183,14 +310,25 @@ public class ParserResult {
             if (value == null)
                 return;
             if (fields == null)
-                fields = new LinkedHashMap<>();
-            fields.put(field.name, value);
+                fields = new FieldsMap();
+            fields.set(field.name, value);
+        }
+
+        /**
+         * Collect the text values of a field, the values are not copied
+         *
+         * @param source the field to read
+         * @param texts  receives the values
+         */
+        void collectTexts(final ParserField source, final List<CharSequence> texts) {
+            if (fields != null)
+                LanguageSampler.collectTexts(fields.get(source.name), texts);
         }
 
         public void extractField(final ParserField source,
                                  final int maxLength,
                                  final StringBuilder sb) {
-            if (sb.length() >= maxLength)
+            if (sb.length() >= maxLength || fields == null)
                 return;
             final Object value = fields.get(source.name);
             if (value == null)
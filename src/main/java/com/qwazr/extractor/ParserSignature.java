@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * A magic number (a fixed sequence of bytes at a fixed offset) identifying a media type.
+ */
+public class ParserSignature {
+
+    /**
+     * The media type identified by this signature.
+     */
+    public final MediaType mediaType;
+
+    /**
+     * The position of the magic bytes from the start of the stream.
+     */
+    public final int offset;
+
+    private final byte[] magic;
+
+    ParserSignature(final MediaType mediaType, final int offset, final byte[] magic) {
+        this.mediaType = Objects.requireNonNull(mediaType, "The media type is missing");
+        if (offset < 0)
+            throw new IllegalArgumentException("The offset should be positive: " + offset);
+        if (magic == null || magic.length == 0)
+            throw new IllegalArgumentException("The magic bytes are missing");
+        this.offset = offset;
+        this.magic = magic;
+    }
+
+    /**
+     * @return the number of bytes which should be read to check this signature
+     */
+    public int getLength() {
+        return offset + magic.length;
+    }
+
+    /**
+     * Check if the prefix of a stream matches this signature
+     *
+     * @param prefix the first bytes of the stream
+     * @param length the number of valid bytes in the prefix
+     * @return true if the prefix contains the magic bytes at the expected offset
+     */
+    public boolean matches(final byte[] prefix, final int length) {
+        if (length < getLength())
+            return false;
+        for (int i = 0; i < magic.length; i++)
+            if (prefix[offset + i] != magic[i])
+                return false;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return mediaType + "@" + offset + ":" + Arrays.toString(magic);
+    }
+
+    public static ParserSignature of(final MediaType mediaType, final int offset, final byte... magic) {
+        return new ParserSignature(mediaType, offset, magic.clone());
+    }
+
+    public static ParserSignature of(final MediaType mediaType, final int offset, final int... magic) {
+        final byte[] bytes = new byte[magic.length];
+        for (int i = 0; i < magic.length; i++)
+            bytes[i] = (byte) magic[i];
+        return new ParserSignature(mediaType, offset, bytes);
+    }
+
+    public static ParserSignature of(final MediaType mediaType, final String asciiMagic) {
+        return new ParserSignature(mediaType, 0, asciiMagic.getBytes(StandardCharsets.US_ASCII));
+    }
+
+}
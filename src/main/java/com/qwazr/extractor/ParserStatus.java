@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonInclude(Include.NON_NULL)
+@JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+        getterVisibility = JsonAutoDetect.Visibility.NONE,
+        isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+        fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+        creatorVisibility = JsonAutoDetect.Visibility.NONE)
+public class ParserStatus {
+
+    @JsonProperty("thread_safety")
+    final public ParserFactory.ThreadSafety threadSafety;
+
+    final public Pool pool;
+
+    final public Bulkhead bulkhead;
+
+    @JsonCreator
+    ParserStatus(final @JsonProperty("thread_safety") ParserFactory.ThreadSafety threadSafety,
+                 final @JsonProperty("pool") Pool pool,
+                 final @JsonProperty("bulkhead") Bulkhead bulkhead) {
+        this.threadSafety = threadSafety;
+        this.pool = pool;
+        this.bulkhead = bulkhead;
+    }
+
+    @JsonInclude(Include.NON_NULL)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+            getterVisibility = JsonAutoDetect.Visibility.NONE,
+            isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+            fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+            creatorVisibility = JsonAutoDetect.Visibility.NONE)
+    public static class Pool {
+
+        /**
+         * Number of requests served by an existing parser instance
+         */
+        final public long hits;
+
+        /**
+         * Number of parser instances created
+         */
+        final public long misses;
+
+        /**
+         * Number of parser instances available for the next requests
+         */
+        final public int idle;
+
+        @JsonCreator
+        Pool(final @JsonProperty("hits") long hits,
+             final @JsonProperty("misses") long misses,
+             final @JsonProperty("idle") int idle) {
+            this.hits = hits;
+            this.misses = misses;
+            this.idle = idle;
+        }
+    }
+
+    @JsonInclude(Include.NON_NULL)
+    @JsonAutoDetect(setterVisibility = JsonAutoDetect.Visibility.NONE,
+            getterVisibility = JsonAutoDetect.Visibility.NONE,
+            isGetterVisibility = JsonAutoDetect.Visibility.NONE,
+            fieldVisibility = JsonAutoDetect.Visibility.PUBLIC_ONLY,
+            creatorVisibility = JsonAutoDetect.Visibility.NONE)
+    public static class Bulkhead {
+
+        /**
+         * Maximum number of concurrent extractions
+         */
+        final public int concurrency;
+
+        /**
+         * Number of extractions in progress
+         */
+        final public int active;
+
+        /**
+         * Number of extractions waiting for a thread
+         */
+        final public int queued;
+
+        /**
+         * Number of extractions refused because the queue was full
+         */
+        final public long rejected;
+
+        /**
+         * Number of extractions which did not complete before their deadline
+         */
+        final public long timeouts;
+
+        @JsonCreator
+        Bulkhead(final @JsonProperty("concurrency") int concurrency,
+                 final @JsonProperty("active") int active,
+                 final @JsonProperty("queued") int queued,
+                 final @JsonProperty("rejected") long rejected,
+                 final @JsonProperty("timeouts") long timeouts) {
+            this.concurrency = concurrency;
+            this.active = active;
+            this.queued = queued;
+            this.rejected = rejected;
+            this.timeouts = timeouts;
+        }
+    }
+}
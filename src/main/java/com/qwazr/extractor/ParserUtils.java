@@ -15,7 +15,6 @@
  */
 package com.qwazr.extractor;
 
-import com.qwazr.utils.Language;
 import com.qwazr.utils.concurrent.FunctionEx;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
@@ -24,13 +23,20 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import javax.ws.rs.core.MultivaluedMap;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 
 public interface ParserUtils {
 
+    ParserField REQUESTED_FIELDS = ParserField.newString("fields",
+            "The comma separated names of the fields to extract. By default, every field is extracted");
+
     static String getParameterValue(final MultivaluedMap<String, String> parameters,
                                     final ParserField param,
                                     final int position) {
@@ -44,6 +50,44 @@ public interface ParserUtils {
         return values.get(position);
     }
 
+    /**
+     * @param parameters the parameters of the request
+     * @return the names of the fields given by the fields parameter, or null if every field is requested
+     */
+    static Set<String> getRequestedFields(final MultivaluedMap<String, String> parameters) {
+        final List<String> values = parameters == null ? null : parameters.get(REQUESTED_FIELDS.name);
+        if (values == null || values.isEmpty())
+            return null;
+        final Set<String> fields = new LinkedHashSet<>();
+        for (final String value : values)
+            for (final String field : StringUtils.split(value, ','))
+                if (!StringUtils.isBlank(field))
+                    fields.add(field.trim());
+        return fields;
+    }
+
+    /**
+     * A parser should not compute a field which has not been requested.
+     * The fields parameter is parsed by each call: a parser checking several fields, or each document,
+     * should parse it once with {@link #getRequestedFields(MultivaluedMap)}.
+     *
+     * @param parameters the parameters of the request
+     * @param field      the field to check
+     * @return true if the field is requested, or if the request does not select the fields
+     */
+    static boolean isFieldRequested(final MultivaluedMap<String, String> parameters, final ParserField field) {
+        return isFieldRequested(getRequestedFields(parameters), field);
+    }
+
+    /**
+     * @param requestedFields the fields returned by {@link #getRequestedFields(MultivaluedMap)}
+     * @param field           the field to check
+     * @return true if the field is requested, or if the request does not select the fields
+     */
+    static boolean isFieldRequested(final Set<String> requestedFields, final ParserField field) {
+        return requestedFields == null || requestedFields.contains(field.name);
+    }
+
     static String getExtension(final Path filePath) {
         return filePath == null ? null : FilenameUtils.getExtension(filePath.getFileName().toString());
     }
@@ -69,7 +113,7 @@ public interface ParserUtils {
 
     /**
      * Submit the content of a field to language detection. It checks all the
-     * document.
+     * document. A long content is sampled at its start, its middle and its end.
      *
      * @param resultBuilder the documents to check
      * @param source        The field to submit
@@ -79,13 +123,14 @@ public interface ParserUtils {
     static String languageDetection(final ParserResult.Builder resultBuilder,
                                     final ParserField source,
                                     final int maxLength) {
-        final StringBuilder sb = new StringBuilder();
-        resultBuilder.forEachDocument(doc -> doc.extractField(source, maxLength, sb));
-        return Language.quietDetect(sb.toString(), maxLength);
+        final List<CharSequence> texts = new ArrayList<>();
+        resultBuilder.forEachDocument(doc -> doc.collectTexts(source, texts));
+        return LanguageSampler.detect(texts, maxLength);
     }
 
     /**
      * Submit the content if of a field to language detection.
+     * A long content is sampled at its start, its middle and its end.
      *
      * @param document  the document to check
      * @param source    the field containing the text to match
@@ -95,9 +140,21 @@ public interface ParserUtils {
     static String languageDetection(final ParserResult.FieldsBuilder document,
                                     final ParserField source,
                                     final int maxLength) {
-        final StringBuilder sb = new StringBuilder();
-        document.extractField(source, maxLength, sb);
-        return Language.quietDetect(sb.toString(), maxLength);
+        final List<CharSequence> texts = new ArrayList<>(1);
+        document.collectTexts(source, texts);
+        return LanguageSampler.detect(texts, maxLength);
+    }
+
+    /**
+     * Submit a text to language detection.
+     * A long text is sampled at its start, its middle and its end, it is not copied.
+     *
+     * @param text      the text to check
+     * @param maxLength the maximum number of characters to test
+     * @return the detected language
+     */
+    static String languageDetection(final CharSequence text, final int maxLength) {
+        return text == null ? null : LanguageSampler.detect(List.of(text), maxLength);
     }
 
 }
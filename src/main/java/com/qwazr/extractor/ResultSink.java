@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Receives an extraction result piece by piece: the metas first, then each document as soon as it is complete.
+ * The peak memory is one document instead of the whole result.
+ */
+public interface ResultSink {
+
+    /**
+     * Called once, before the first document.
+     *
+     * @param parserName the name of the parser
+     * @param metas      the metas known before the first document, may be null
+     * @throws IOException if the result can't be written
+     */
+    void start(String parserName, Map<String, Object> metas) throws IOException;
+
+    /**
+     * @param fields the fields of a complete document, may be null for an empty document
+     * @throws IOException if the result can't be written
+     */
+    void document(Map<String, Object> fields) throws IOException;
+
+    /**
+     * Called once, after the last document.
+     *
+     * @param trailingMetas the metas set by the parser after the first document was emitted, may be null
+     * @param timeElapsed   the extraction time in milliseconds
+     * @throws IOException if the result can't be written
+     */
+    void end(Map<String, Object> trailingMetas, long timeElapsed) throws IOException;
+}
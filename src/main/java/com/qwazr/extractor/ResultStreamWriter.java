@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.qwazr.utils.ObjectMappers;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes a result with the JSON format of {@link ParserResult}, one document at a time.
+ * The fields are written in this order: parser_name, documents, metas, time_elapsed.
+ * The metas are kept until the end, the metas set after the first document are merged with them.
+ */
+final class ResultStreamWriter implements ResultSink, Closeable {
+
+    private final JsonGenerator generator;
+
+    private boolean documentsStarted;
+
+    private Map<String, Object> metas;
+
+    ResultStreamWriter(final OutputStream output) throws IOException {
+        generator = ObjectMappers.JSON.getFactory().createGenerator(output);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // A failed extraction must not look like a complete JSON document
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+    }
+
+    @Override
+    public void start(final String parserName, final Map<String, Object> metas) throws IOException {
+        generator.writeStartObject();
+        if (parserName != null)
+            generator.writeStringField("parser_name", parserName);
+        this.metas = metas;
+    }
+
+    @Override
+    public void document(final Map<String, Object> fields) throws IOException {
+        if (!documentsStarted) {
+            generator.writeArrayFieldStart("documents");
+            documentsStarted = true;
+        }
+        generator.writeObject(fields);
+    }
+
+    @Override
+    public void end(final Map<String, Object> trailingMetas, final long timeElapsed) throws IOException {
+        if (documentsStarted)
+            generator.writeEndArray();
+        if (trailingMetas != null && !trailingMetas.isEmpty()) {
+            if (metas == null || metas.isEmpty())
+                metas = trailingMetas;
+            else {
+                metas = new LinkedHashMap<>(metas);
+                metas.putAll(trailingMetas);
+            }
+        }
+        if (metas != null && !metas.isEmpty())
+            generator.writeObjectField("metas", metas);
+        generator.writeNumberField("time_elapsed", timeElapsed);
+        generator.writeEndObject();
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
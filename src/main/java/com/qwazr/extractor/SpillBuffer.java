@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.qwazr.utils.IOUtils;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A write-once buffer which keeps the first bytes in memory and spills the remaining bytes to a temporary file.
+ * Once written, the content can be read several times from the beginning.
+ * <p>
+ * A parser which timed out may still be writing from its worker thread when the buffer is closed:
+ * the methods are synchronized, and a write after {@link #close()} fails instead of creating a new spill file.
+ */
+class SpillBuffer extends OutputStream {
+
+    /**
+     * Default number of bytes kept in memory before spilling to disk
+     */
+    final static int DEFAULT_MEMORY_THRESHOLD = 4 * 1024 * 1024;
+
+    private final int memoryThreshold;
+
+    private byte[] memory;
+
+    private int memoryLength;
+
+    private Path spillFile;
+
+    private OutputStream spillOutput;
+
+    private long length;
+
+    private final List<InputStream> views;
+
+    private boolean closed;
+
+    SpillBuffer(final int memoryThreshold) {
+        this.memoryThreshold = memoryThreshold;
+        this.views = new ArrayList<>();
+    }
+
+    private void checkNotClosed() throws IOException {
+        if (closed)
+            throw new IOException("The buffer is closed");
+    }
+
+    @Override
+    public synchronized void write(final int b) throws IOException {
+        checkNotClosed();
+        if (memoryLength < memoryThreshold) {
+            ensureMemoryCapacity(memoryLength + 1);
+            memory[memoryLength++] = (byte) b;
+        } else
+            getSpillOutput().write(b);
+        length++;
+    }
+
+    @Override
+    public synchronized void write(final byte[] bytes, int offset, int len) throws IOException {
+        checkNotClosed();
+        final int toMemory = Math.min(len, memoryThreshold - memoryLength);
+        if (toMemory > 0) {
+            ensureMemoryCapacity(memoryLength + toMemory);
+            System.arraycopy(bytes, offset, memory, memoryLength, toMemory);
+            memoryLength += toMemory;
+            offset += toMemory;
+            len -= toMemory;
+            length += toMemory;
+        }
+        if (len > 0) {
+            getSpillOutput().write(bytes, offset, len);
+            length += len;
+        }
+    }
+
+    private void ensureMemoryCapacity(final int capacity) {
+        if (memory == null)
+            memory = new byte[Math.min(memoryThreshold, Math.max(capacity, 8192))];
+        else if (capacity > memory.length)
+            memory = Arrays.copyOf(memory, Math.min(memoryThreshold, Math.max(capacity, memory.length * 2)));
+    }
+
+    private OutputStream getSpillOutput() throws IOException {
+        if (spillOutput == null) {
+            spillFile = Files.createTempFile("qwazr-extractor", ".spill");
+            spillOutput = new BufferedOutputStream(Files.newOutputStream(spillFile));
+        }
+        return spillOutput;
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    synchronized long getLength() {
+        return length;
+    }
+
+    /**
+     * @return true if a part of the content has been written to disk
+     */
+    synchronized boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Read the whole content from the beginning.
+     * The returned stream is closed when the buffer is closed.
+     *
+     * @return a new stream over the content
+     * @throws IOException if any I/O error occurs
+     */
+    synchronized InputStream newInputStream() throws IOException {
+        checkNotClosed();
+        final InputStream memoryInput = new ByteArrayInputStream(memory == null ? new byte[0] : memory, 0, memoryLength);
+        if (spillOutput == null)
+            return memoryInput;
+        spillOutput.flush();
+        final InputStream view = new SequenceInputStream(memoryInput, Files.newInputStream(spillFile));
+        views.add(view);
+        return view;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        for (final InputStream view : views)
+            IOUtils.closeQuietly(view);
+        views.clear();
+        if (spillOutput != null) {
+            IOUtils.closeQuietly(spillOutput);
+            spillOutput = null;
+        }
+        if (spillFile != null) {
+            Files.deleteIfExists(spillFile);
+            spillFile = null;
+        }
+        memory = null;
+    }
+}
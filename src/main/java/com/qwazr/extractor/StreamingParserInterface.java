@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * A parser which fills a result builder provided by the caller, instead of returning a complete result.
+ * When the builder has a {@link ResultSink}, each document is written as soon as the next one is created,
+ * the parser never holds every document in memory.
+ * <p>
+ * The parser must not call {@link ParserResult.Builder#build()}, the caller does it.
+ * The methods of {@link ParserInterface} are provided, they build the result in memory.
+ */
+public interface StreamingParserInterface extends ParserInterface {
+
+    /**
+     * @return the name of the parser written in the results
+     */
+    String getName();
+
+    /**
+     * Extract data from a stream.
+     *
+     * @param parameters  The optional parameters of the parser
+     * @param inputStream the stream of the file
+     * @param mimeType    an optional mime type of the file
+     * @param result      receives the metas and the documents
+     * @throws IOException if any I/O error occurs
+     */
+    void extract(final MultivaluedMap<String, String> parameters,
+                 final InputStream inputStream,
+                 final MediaType mimeType,
+                 final ParserResult.Builder result) throws IOException;
+
+    /**
+     * Read a file and extract the data.
+     *
+     * @param parameters The optional parameters of the parser
+     * @param filePath   the path of the file instance of the document to parse
+     * @param result     receives the metas and the documents
+     * @throws IOException if any I/O error occurs
+     */
+    void extract(final MultivaluedMap<String, String> parameters,
+                 final Path filePath,
+                 final ParserResult.Builder result) throws IOException;
+
+    @Override
+    default ParserResult extract(final MultivaluedMap<String, String> parameters,
+                                 final InputStream inputStream,
+                                 final MediaType mimeType) throws IOException {
+        final ParserResult.Builder result = ParserResult.of(getName());
+        extract(parameters, inputStream, mimeType, result);
+        return result.build();
+    }
+
+    @Override
+    default ParserResult extract(final MultivaluedMap<String, String> parameters,
+                                 final Path filePath) throws IOException {
+        final ParserResult.Builder result = ParserResult.of(getName());
+        extract(parameters, filePath, result);
+        return result.build();
+    }
+
+}
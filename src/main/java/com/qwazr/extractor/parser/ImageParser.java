@@ -19,25 +19,39 @@ import com.qwazr.extractor.ParserFactory;
 import com.qwazr.extractor.ParserField;
 import com.qwazr.extractor.ParserInterface;
 import com.qwazr.extractor.ParserResult;
+import com.qwazr.extractor.ParserSignature;
 import com.qwazr.extractor.ParserUtils;
 import com.qwazr.extractor.util.ImagePHash;
 import com.qwazr.utils.AutoCloseWrapper;
 import com.qwazr.utils.LoggerUtils;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
 import javax.imageio.ImageReader;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
 import org.apache.commons.lang3.NotImplementedException;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -52,6 +66,8 @@ public class ImageParser implements ParserFactory, ParserInterface {
 
     private static final List<String> DEFAULT_EXTENSIONS;
 
+    private static final List<ParserSignature> DEFAULT_SIGNATURES;
+
     static {
         DEFAULT_EXTENSIONS = Arrays.asList(ImageIO.getReaderFileSuffixes());
 
@@ -59,6 +75,19 @@ public class ImageParser implements ParserFactory, ParserInterface {
         for (final String type : ImageIO.getReaderMIMETypes())
             types.add(MediaType.valueOf(type));
         DEFAULT_MIMETYPES = List.copyOf(types);
+
+        // Only keep the signatures of the formats supported by the available readers
+        DEFAULT_SIGNATURES = List.of(
+                ParserSignature.of(MediaType.valueOf("image/png"), 0, 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A),
+                ParserSignature.of(MediaType.valueOf("image/gif"), "GIF87a"),
+                ParserSignature.of(MediaType.valueOf("image/gif"), "GIF89a"),
+                ParserSignature.of(MediaType.valueOf("image/jpeg"), 0, 0xFF, 0xD8, 0xFF),
+                ParserSignature.of(MediaType.valueOf("image/tiff"), 0, 0x49, 0x49, 0x2A, 0x00),
+                ParserSignature.of(MediaType.valueOf("image/tiff"), 0, 0x4D, 0x4D, 0x00, 0x2A),
+                ParserSignature.of(MediaType.valueOf("image/bmp"), "BM"))
+                .stream()
+                .filter(signature -> DEFAULT_MIMETYPES.contains(signature.mediaType))
+                .collect(Collectors.toUnmodifiableList());
     }
 
     final private static ParserField WIDTH = ParserField.newInteger("width", "Width of the image in pixels");
@@ -67,13 +96,48 @@ public class ImageParser implements ParserFactory, ParserInterface {
 
     final private static ParserField FORMAT = ParserField.newString("format", "The detected format");
 
-    final private static ParserField PHASH = ParserField.newString("phash", "Perceptual Hash");
+    final public static ParserField PHASH = ParserField.newString("phash", "Perceptual Hash");
+
+    final private static ParserField METADATA =
+            ParserField.newString("META", "The metadata of the image, one field per path of the metadata tree");
+
+    final private static List<ParserField> FIELDS = List.of(WIDTH, HEIGHT, FORMAT, PHASH, METADATA);
+
+    /**
+     * The minimum number of pixels per side of the image decoded for the perceptual hash,
+     * eight times the size of the hashed image. Smaller images are decoded as a whole.
+     */
+    final private static int PHASH_DECODE_SIZE = 256;
+
+    /**
+     * The uploaded images up to this size are read from memory, the larger ones are copied to a temporary file
+     */
+    final private static int MEMORY_THRESHOLD = 8 * 1024 * 1024;
+
+    /**
+     * The default maximum number of pixels of a decoded image (100 megapixels)
+     */
+    final public static long DEFAULT_MAX_PIXELS = 100_000_000L;
 
-    final private static List<ParserField> FIELDS = List.of(WIDTH, HEIGHT, FORMAT, PHASH);
+    /**
+     * The system property, or environment variable, setting the maximum number of pixels allowed by the server.
+     * The max_pixels parameter can only lower it.
+     */
+    final public static String MAX_PIXELS_PROPERTY = "QWAZR_EXTRACTOR_IMAGE_MAX_PIXELS";
+
+    final private static long MAX_PIXELS_CEILING = readMaxPixelsCeiling();
+
+    final public static ParserField METADATA_ONLY = ParserField.newBoolean("metadata_only",
+            "Only read the headers and the metadata of the image, the pixels are never decoded");
+
+    final public static ParserField MAX_PIXELS = ParserField.newInteger("max_pixels",
+            "The maximum number of pixels of an image decoded for the perceptual hash");
+
+    final private static Collection<ParserField> PARAMETERS = List.of(METADATA_ONLY, MAX_PIXELS);
 
     @Override
-    public List<ParserField> getParameters() {
-        return null;
+    public Collection<ParserField> getParameters() {
+        return PARAMETERS;
     }
 
     @Override
@@ -86,6 +150,11 @@ public class ImageParser implements ParserFactory, ParserInterface {
         return DEFAULT_EXTENSIONS;
     }
 
+    @Override
+    public List<ParserSignature> getSignatures() {
+        return DEFAULT_SIGNATURES;
+    }
+
     @Override
     public String getName() {
         return NAME;
@@ -96,6 +165,11 @@ public class ImageParser implements ParserFactory, ParserInterface {
         return this;
     }
 
+    @Override
+    public ThreadSafety getThreadSafety() {
+        return ThreadSafety.THREAD_SAFE;
+    }
+
     @Override
     public List<MediaType> getSupportedMimeTypes() {
         return DEFAULT_MIMETYPES;
@@ -128,32 +202,124 @@ public class ImageParser implements ParserFactory, ParserInterface {
         }
     }
 
+    private static long readMaxPixelsCeiling() {
+        final String property = System.getProperty(MAX_PIXELS_PROPERTY);
+        final String value = property != null ? property : System.getenv(MAX_PIXELS_PROPERTY);
+        if (value == null)
+            return DEFAULT_MAX_PIXELS;
+        try {
+            final long ceiling = Long.parseLong(value.trim());
+            if (ceiling > 0)
+                return ceiling;
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        LOGGER.warning(() -> "Invalid " + MAX_PIXELS_PROPERTY + ": " + value + ", using " + DEFAULT_MAX_PIXELS);
+        return DEFAULT_MAX_PIXELS;
+    }
+
+    /**
+     * @return the maximum number of pixels allowed by the server, set by {@link #MAX_PIXELS_PROPERTY}
+     */
+    public static long getMaxPixelsCeiling() {
+        return MAX_PIXELS_CEILING;
+    }
+
+    private static long getMaxPixels(final MultivaluedMap<String, String> parameters) {
+        final String param = ParserUtils.getParameterValue(parameters, MAX_PIXELS, 0);
+        if (param == null)
+            return MAX_PIXELS_CEILING;
+        final long maxPixels;
+        try {
+            maxPixels = Long.parseLong(param.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("The " + MAX_PIXELS.name + " parameter is not a valid number: " + param);
+        }
+        if (maxPixels < 1)
+            throw new BadRequestException(
+                    "The " + MAX_PIXELS.name + " parameter should be greater than zero: " + param);
+        if (maxPixels > MAX_PIXELS_CEILING)
+            throw new BadRequestException(
+                    "The " + MAX_PIXELS.name + " parameter can't exceed the limit of the server (" +
+                            MAX_PIXELS_CEILING + "): " + param);
+        return maxPixels;
+    }
+
+    /**
+     * The size given by the headers is checked before decoding, a decompression bomb is never decoded.
+     *
+     * @throws ClientErrorException (413) if the image has more pixels than the budget
+     */
+    private static void checkPixels(final ImageReader reader, final long maxPixels) throws IOException {
+        final long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+        if (pixels > maxPixels)
+            throw new ClientErrorException(
+                    "The image has too many pixels to be decoded: " + pixels + " > " + maxPixels + " (" +
+                            MAX_PIXELS.name + "). The " + METADATA_ONLY.name + " parameter skips the decoding.",
+                    Response.Status.REQUEST_ENTITY_TOO_LARGE);
+    }
+
+    /**
+     * The perceptual hash only needs a small image: the rows and the columns are subsampled while decoding,
+     * the decoded image keeps at least {@link #PHASH_DECODE_SIZE} pixels per side.
+     * The whole image is decoded if the reader fails to subsample it.
+     */
+    private static BufferedImage readForHash(final ImageReader reader) throws IOException {
+        final int periodX = Math.max(1, reader.getWidth(0) / PHASH_DECODE_SIZE);
+        final int periodY = Math.max(1, reader.getHeight(0) / PHASH_DECODE_SIZE);
+        if (periodX == 1 && periodY == 1)
+            return reader.read(0);
+        final ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(periodX, periodY, 0, 0);
+        try {
+            return reader.read(0, param);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, e, () -> "Subsampled decoding failed, decoding the whole image");
+            return reader.read(0);
+        }
+    }
+
     @Override
     public ParserResult extract(final MultivaluedMap<String, String> parameters, final Path path) throws IOException {
-        final ParserResult.Builder resultBuilder = ParserResult.of(NAME);
-        final ImagePHash imgPhash = new ImagePHash();
         try (final ImageInputStream in = ImageIO.createImageInputStream(path.toFile())) {
-            final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
-            if (readers.hasNext()) {
-                ParserResult.FieldsBuilder result = resultBuilder.newDocument();
-                ImageReader reader = readers.next();
-                resultBuilder.metas().set(MIME_TYPE, "image/" + reader.getFormatName().toLowerCase());
-                try {
-                    reader.setInput(in);
+            return extract(parameters, in);
+        }
+    }
+
+    private ParserResult extract(final MultivaluedMap<String, String> parameters,
+                                 final ImageInputStream in) throws IOException {
+        final boolean metadataOnly = Boolean.parseBoolean(ParserUtils.getParameterValue(parameters, METADATA_ONLY, 0));
+        final long maxPixels = getMaxPixels(parameters);
+        final Set<String> requestedFields = ParserUtils.getRequestedFields(parameters);
+        final ParserResult.Builder resultBuilder = ParserResult.of(NAME);
+        final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (readers.hasNext()) {
+            ParserResult.FieldsBuilder result = resultBuilder.newDocument();
+            ImageReader reader = readers.next();
+            resultBuilder.metas().set(MIME_TYPE, "image/" + reader.getFormatName().toLowerCase());
+            try {
+                reader.setInput(in);
+                if (ParserUtils.isFieldRequested(requestedFields, WIDTH))
                     result.add(WIDTH, reader.getWidth(0));
+                if (ParserUtils.isFieldRequested(requestedFields, HEIGHT))
                     result.add(HEIGHT, reader.getHeight(0));
+                if (ParserUtils.isFieldRequested(requestedFields, FORMAT))
                     result.add(FORMAT, reader.getFormatName());
-                    result.add(PHASH, imgPhash.getHash(reader.read(0)));
+                if (!metadataOnly && ParserUtils.isFieldRequested(requestedFields, PHASH)) {
+                    checkPixels(reader, maxPixels);
+                    result.add(PHASH, new ImagePHash().getHash(readForHash(reader)));
+                }
+                if (ParserUtils.isFieldRequested(requestedFields, METADATA)) {
                     IIOMetadata metadata = reader.getImageMetadata(0);
                     if (metadata != null) {
                         String[] names = metadata.getMetadataFormatNames();
                         if (names != null)
                             for (String name : names)
-                                browseNodes("META", metadata.getAsTree(name), result);
+                                browseNodes(METADATA.name, metadata.getAsTree(name), result);
                     }
-                } finally {
-                    reader.dispose();
                 }
+            } finally {
+                reader.dispose();
             }
         }
         return resultBuilder.build();
@@ -163,12 +329,68 @@ public class ImageParser implements ParserFactory, ParserInterface {
     public ParserResult extract(final MultivaluedMap<String, String> parameters,
                                 final InputStream inputStream,
                                 final MediaType mediaType) throws IOException {
+        final byte[] bytes = inputStream.readNBytes(MEMORY_THRESHOLD + 1);
+        if (bytes.length <= MEMORY_THRESHOLD)
+            try (final ImageInputStream in = new ByteArrayImageInputStream(bytes)) {
+                return extract(parameters, in);
+            }
         try (final AutoCloseWrapper<Path> a = AutoCloseWrapper.of(
-                ParserUtils.createTempFile(inputStream, "image" + "." + mediaType.getSubtype()),
+                ParserUtils.createTempFile(new SequenceInputStream(new ByteArrayInputStream(bytes), inputStream),
+                        "image" + "." + mediaType.getSubtype()),
                 LOGGER, Files::deleteIfExists)) {
             return extract(parameters, a.get());
         }
     }
 
+    /**
+     * Reads the image from an array, unlike {@link javax.imageio.stream.MemoryCacheImageInputStream}
+     * the bytes are not copied to a cache.
+     */
+    private static final class ByteArrayImageInputStream extends ImageInputStreamImpl {
+
+        private final byte[] bytes;
+
+        private ByteArrayImageInputStream(final byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+            return streamPos < bytes.length ? bytes[(int) streamPos++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            checkClosed();
+            Objects.checkFromIndexSize(offset, length, buffer.length);
+            bitOffset = 0;
+            if (length == 0)
+                return 0;
+            if (streamPos >= bytes.length)
+                return -1;
+            final int read = (int) Math.min(length, bytes.length - streamPos);
+            System.arraycopy(bytes, (int) streamPos, buffer, offset, read);
+            streamPos += read;
+            return read;
+        }
+
+        @Override
+        public long length() {
+            return bytes.length;
+        }
+
+        @Override
+        public boolean isCached() {
+            return true;
+        }
+
+        @Override
+        public boolean isCachedMemory() {
+            return true;
+        }
+    }
+
 
 }
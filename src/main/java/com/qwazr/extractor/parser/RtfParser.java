@@ -15,10 +15,12 @@
  */
 package com.qwazr.extractor.parser;
 
+import com.qwazr.extractor.ExtractionLimits;
 import com.qwazr.extractor.ParserFactory;
 import com.qwazr.extractor.ParserField;
 import com.qwazr.extractor.ParserInterface;
 import com.qwazr.extractor.ParserResult;
+import com.qwazr.extractor.ParserSignature;
 import com.qwazr.extractor.ParserUtils;
 import java.io.IOException;
 import java.io.InputStream;
@@ -26,6 +28,7 @@ import java.nio.file.Path;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.Document;
 import javax.swing.text.rtf.RTFEditorKit;
@@ -42,6 +45,14 @@ public class RtfParser implements ParserFactory, ParserInterface {
 
     final private static List<ParserField> FIELDS = List.of(TITLE, CONTENT, LANG_DETECTION);
 
+    /**
+     * The number of characters submitted to the language detection
+     */
+    private final static int LANG_DETECTION_LENGTH = 10000;
+
+    private static final List<ParserSignature> SIGNATURES =
+            List.of(ParserSignature.of(EXT_TYPES.get("rtf"), "{\\rtf"));
+
     @Override
     public Collection<ParserField> getParameters() {
         return null;
@@ -57,6 +68,11 @@ public class RtfParser implements ParserFactory, ParserInterface {
         return EXT_TYPES.keySet();
     }
 
+    @Override
+    public Collection<ParserSignature> getSignatures() {
+        return SIGNATURES;
+    }
+
     @Override
     public String getName() {
         return NAME;
@@ -67,28 +83,55 @@ public class RtfParser implements ParserFactory, ParserInterface {
         return this;
     }
 
+    @Override
+    public ThreadSafety getThreadSafety() {
+        return ThreadSafety.THREAD_SAFE;
+    }
+
     @Override
     public Collection<MediaType> getSupportedMimeTypes() {
         return EXT_TYPES.values();
     }
 
-    private ParserResult extract(final InputStream inputStream, ParserResult.Builder builder) throws IOException {
+    private ParserResult extract(final MultivaluedMap<String, String> parameters,
+                                 final InputStream inputStream,
+                                 final ParserResult.Builder builder) throws IOException {
         try {
             // Extract the text data
+            final ExtractionLimits limits = ExtractionLimits.of(parameters);
+            final ExtractionLimits.LimitedInputStream limitedStream = limits.limit(inputStream);
             final RTFEditorKit rtf = new RTFEditorKit();
             final Document doc = rtf.createDefaultDocument();
-            rtf.read(inputStream, doc, 0);
+            rtf.read(limitedStream, doc, 0);
 
             // Obtain a new parser document.
             final ParserResult.FieldsBuilder result = builder.newDocument();
 
-            result.add(TITLE, doc.getProperty(Document.TitleProperty));
-
-            // Fill the field of the ParserDocument
-            result.add(CONTENT, doc.getText(0, doc.getLength()));
-
-            // Apply the language detection
-            result.add(LANG_DETECTION, ParserUtils.languageDetection(result, CONTENT, 10000));
+            final Set<String> requestedFields = ParserUtils.getRequestedFields(parameters);
+            if (ParserUtils.isFieldRequested(requestedFields, TITLE))
+                result.add(TITLE, doc.getProperty(Document.TitleProperty));
+
+            final boolean contentRequested = ParserUtils.isFieldRequested(requestedFields, CONTENT);
+            final boolean languageRequested = ParserUtils.isFieldRequested(requestedFields, LANG_DETECTION);
+            if (contentRequested || languageRequested) {
+                // Only the characters needed are copied, one more than the limit tells if the content is cut
+                final long needed = Math.max(contentRequested ? limits.maxContentLength + 1L : 0,
+                        languageRequested ? LANG_DETECTION_LENGTH : 0);
+                final String text = doc.getText(0, (int) Math.min(doc.getLength(), needed));
+
+                // Fill the field of the ParserDocument, a surrogate pair is never split
+                if (contentRequested) {
+                    result.add(CONTENT, limits.truncateContent(text));
+                    if (limits.isContentTruncated(text))
+                        builder.metas().set(TRUNCATED, true);
+                }
+
+                // Apply the language detection on the text before the truncation
+                if (languageRequested)
+                    result.add(LANG_DETECTION, ParserUtils.languageDetection(text, LANG_DETECTION_LENGTH));
+            }
+            if (limitedStream.isTruncated())
+                builder.metas().set(TRUNCATED, true);
 
             return builder.build();
         } catch (BadLocationException e) {
@@ -101,7 +144,7 @@ public class RtfParser implements ParserFactory, ParserInterface {
                                 final Path path) throws IOException {
         final ParserResult.Builder builder = ParserResult.of(NAME);
         builder.metas().set(MIME_TYPE, EXT_TYPES.get(ParserUtils.getExtension(path)));
-        return ParserUtils.toBufferedStream(path, input -> extract(input, builder));
+        return ParserUtils.toBufferedStream(path, input -> extract(parameters, input, builder));
     }
 
     @Override
@@ -110,7 +153,7 @@ public class RtfParser implements ParserFactory, ParserInterface {
                                 final MediaType mimeType) throws IOException {
         final ParserResult.Builder builder = ParserResult.of(NAME);
         builder.metas().set(MIME_TYPE, mimeType.toString());
-        return extract(inputStream, builder);
+        return extract(parameters, inputStream, builder);
     }
 
 }
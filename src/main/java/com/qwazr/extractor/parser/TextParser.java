@@ -17,24 +17,42 @@ package com.qwazr.extractor.parser;
 
 import com.ibm.icu.text.CharsetDetector;
 import com.ibm.icu.text.CharsetMatch;
+import com.qwazr.extractor.ExtractionLimits;
 import com.qwazr.extractor.ParserFactory;
 import com.qwazr.extractor.ParserField;
 import com.qwazr.extractor.ParserInterface;
 import com.qwazr.extractor.ParserResult;
+import com.qwazr.extractor.ParserUtils;
+import com.qwazr.extractor.StreamingParserInterface;
+import com.qwazr.extractor.util.CharsetSniffer;
+import static com.qwazr.extractor.ParserUtils.getParameterValue;
+import static com.qwazr.extractor.ParserUtils.isFieldRequested;
 import static com.qwazr.extractor.ParserUtils.languageDetection;
-import static com.qwazr.extractor.ParserUtils.toBufferedStream;
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
-import org.apache.commons.io.IOUtils;
 
-public class TextParser implements ParserFactory, ParserInterface {
+public class TextParser implements ParserFactory, StreamingParserInterface {
 
     private static final String NAME = "text";
 
@@ -42,16 +60,41 @@ public class TextParser implements ParserFactory, ParserInterface {
 
     private static final List<String> DEFAULT_EXTENSIONS = List.of("txt");
 
+    /**
+     * The number of bytes decoded at once
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
     final private static ParserField CHARSET_DETECTION =
             ParserField.newString("charset_detection", "Detection of the charset");
 
-    final private static Collection<ParserField> FIELDS = List.of(CONTENT, LANG_DETECTION, CHARSET_DETECTION);
+    final private static ParserField CHARSET_DETECTION_METHOD = ParserField.newString("charset_detection_method",
+            "How the charset was found: bom, ascii, utf8, icu or platform");
+
+    final private static Collection<ParserField> FIELDS =
+            List.of(CONTENT, LANG_DETECTION, CHARSET_DETECTION, CHARSET_DETECTION_METHOD);
+
+    final public static ParserField DOCUMENT_SIZE = ParserField.newInteger("document_size",
+            "Start a new document at the first line break after this number of megabytes");
+
+    final public static ParserField OFFSET = ParserField.newInteger("offset",
+            "Extract the complete lines written after this position of the file, in bytes");
+
+    final public static ParserField NEXT_OFFSET =
+            ParserField.newInteger("next_offset", "The offset of the next incremental extraction");
+
+    final private static Collection<ParserField> PARAMETERS = List.of(DOCUMENT_SIZE, OFFSET);
 
     @Override
     public Collection<ParserField> getFields() {
         return FIELDS;
     }
 
+    @Override
+    public Collection<ParserField> getParameters() {
+        return PARAMETERS;
+    }
+
     @Override
     public Collection<String> getSupportedFileExtensions() {
         return DEFAULT_EXTENSIONS;
@@ -67,41 +110,497 @@ public class TextParser implements ParserFactory, ParserInterface {
         return this;
     }
 
+    @Override
+    public ThreadSafety getThreadSafety() {
+        return ThreadSafety.THREAD_SAFE;
+    }
+
     @Override
     public Collection<MediaType> getSupportedMimeTypes() {
         return DEFAULT_MIMETYPES;
     }
 
     @Override
-    public ParserResult extract(final MultivaluedMap<String, String> parameters,
-                                final InputStream inputStream,
-                                final MediaType mimeType) throws IOException {
-        final ParserResult.Builder builder = ParserResult.of(NAME);
-        builder.metas().set(MIME_TYPE, mimeType.toString());
+    public void extract(final MultivaluedMap<String, String> parameters,
+                        final InputStream inputStream,
+                        final MediaType mimeType,
+                        final ParserResult.Builder builder) throws IOException {
+        builder.metas().set(MIME_TYPE, (mimeType == null ? MediaType.TEXT_PLAIN_TYPE : mimeType).toString());
+        final ExtractionLimits limits = ExtractionLimits.of(parameters);
+        final ExtractionLimits.LimitedInputStream limitedStream = limits.limit(inputStream);
+        extract(parameters, limits, Channels.newChannel(limitedStream), Long.MAX_VALUE, builder);
+        if (limitedStream.isTruncated())
+            builder.metas().set(TRUNCATED, true);
+    }
+
+    /**
+     * The file is read by chunks, the memory used does not depend on the size of the file
+     * when the content is limited or split in several documents.
+     */
+    @Override
+    public void extract(final MultivaluedMap<String, String> parameters,
+                        final Path filePath,
+                        final ParserResult.Builder builder) throws IOException {
+        builder.metas().set(MIME_TYPE, MediaType.TEXT_PLAIN_TYPE.toString());
+        final ExtractionLimits limits = ExtractionLimits.of(parameters);
+        final long offset = getOffset(parameters);
+        try (final FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            if (offset >= 0)
+                extractFrom(parameters, limits, channel, offset, builder);
+            else {
+                extract(parameters, limits, channel, limits.maxBytes, builder);
+                if (channel.size() > limits.maxBytes)
+                    builder.metas().set(TRUNCATED, true);
+            }
+        }
+    }
+
+    /**
+     * Incremental extraction of a file which grows by its end.
+     * The charset is detected from the beginning of the file, then only the region after the offset is decoded.
+     * The region ends with the last line break, the incomplete last line is extracted by the next call.
+     * A line longer than the limit is cut after its last complete character.
+     * When max_content_length or max_documents drop a part of the text, the extraction stops there:
+     * the next offset follows the last extracted character.
+     * If the file is shorter than the offset, it has been replaced and the extraction restarts from the beginning.
+     */
+    private static void extractFrom(final MultivaluedMap<String, String> parameters,
+                                    final ExtractionLimits limits,
+                                    final FileChannel channel,
+                                    final long offset,
+                                    final ParserResult.Builder builder) throws IOException {
+        final TextDocuments documents = new TextDocuments(parameters, limits, builder, true);
+        final ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+        bytes.limit(CharsetSniffer.PREFIX_LENGTH);
+        read(channel, bytes, 0);
+        final CharsetSniffer charset = detectCharset(bytes.array(), bytes.position());
+        documents.setCharset(charset);
+
+        // The line break, and the size of the code units (UTF-16, UTF-32)
+        final byte[] lineBreak = "\n".getBytes(charset.charset);
+        final int unit = lineBreak.length;
+        final long size = channel.size();
+        long start = Math.max(offset > size ? 0 : offset, charset.bomLength);
+        start -= start % unit;
+        long end = start + Math.min(size - start, limits.maxBytes);
+        if (end < size)
+            builder.metas().set(TRUNCATED, true);
+        end -= end % unit;
+        final long lineEnd = findLineEnd(channel, bytes, start, end, lineBreak);
+        // A line longer than the limit is cut, the incomplete character is left to the next call
+        final boolean cut = lineEnd == start && end < size;
+        if (!cut)
+            end = lineEnd;
+
+        bytes.clear();
+        channel.position(start);
+        final long consumed = decode(channel, bytes, end == start, end - start, cut, charset, documents);
+        builder.metas().set(NEXT_OFFSET, start + consumed);
+    }
+
+    /**
+     * Fill the buffer from the given position of the file, or up to the end of the file
+     */
+    private static void read(final FileChannel channel, final ByteBuffer buffer, final long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1)
+                return;
+        }
+    }
+
+    /**
+     * The line break is searched at the positions aligned on the code units
+     *
+     * @param end an aligned position
+     * @return the position following the last line break of the region, or the start if there is none
+     */
+    private static long findLineEnd(final FileChannel channel,
+                                    final ByteBuffer buffer,
+                                    final long start,
+                                    long end,
+                                    final byte[] lineBreak) throws IOException {
+        final int unit = lineBreak.length;
+        while (end - start >= unit) {
+            final int length = (int) Math.min(buffer.capacity() / unit * unit, (end - start) / unit * unit);
+            buffer.clear().limit(length);
+            final long position = end - length;
+            read(channel, buffer, position);
+            for (int i = buffer.position() / unit * unit - unit; i >= 0; i -= unit)
+                if (isLineBreak(buffer, i, lineBreak))
+                    return position + i + unit;
+            end = position;
+        }
+        return start;
+    }
+
+    private static boolean isLineBreak(final ByteBuffer buffer, final int position, final byte[] lineBreak) {
+        for (int i = 0; i < lineBreak.length; i++)
+            if (buffer.get(position + i) != lineBreak[i])
+                return false;
+        return true;
+    }
+
+    private static void extract(final MultivaluedMap<String, String> parameters,
+                                final ExtractionLimits limits,
+                                final ReadableByteChannel channel,
+                                final long maxBytes,
+                                final ParserResult.Builder builder) throws IOException {
+        final TextDocuments documents = new TextDocuments(parameters, limits, builder, false);
+        final ByteBuffer bytes = ByteBuffer.allocate(CHUNK_SIZE);
+        long remaining = maxBytes;
+
+        // The charset is detected from the first bytes
+        bytes.limit((int) Math.min(CharsetSniffer.PREFIX_LENGTH, remaining));
+        boolean endOfInput = false;
+        while (bytes.hasRemaining() && !endOfInput)
+            endOfInput = channel.read(bytes) == -1;
+        remaining -= bytes.position();
+        final CharsetSniffer charset = detectCharset(bytes.array(), bytes.position());
+        documents.setCharset(charset);
+        bytes.flip().position(charset.bomLength);
+        bytes.compact();
+        decode(channel, bytes, endOfInput, remaining, false, charset, documents);
+    }
+
+    /**
+     * @param bytes          the bytes already read, followed by the bytes read from the channel
+     * @param endOfInput     true if there is nothing to read from the channel
+     * @param remaining      the number of bytes which may be read from the channel
+     * @param keepIncomplete true if an incomplete character at the end is not decoded
+     * @return the number of bytes read from the channel up to the last extracted character,
+     * see {@link TextDocuments#getExtractedBytes()}
+     */
+    private static long decode(final ReadableByteChannel channel,
+                               final ByteBuffer bytes,
+                               boolean endOfInput,
+                               long remaining,
+                               final boolean keepIncomplete,
+                               final CharsetSniffer charset,
+                               final TextDocuments documents) throws IOException {
+        if (!documents.isContentRequested()) {
+            documents.finish();
+            return remaining;
+        }
+
+        final CharsetDecoder decoder = charset.charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final CharBuffer chars = CharBuffer.allocate(CHUNK_SIZE);
+        while (true) {
+            if (!endOfInput) {
+                bytes.limit(bytes.position() + (int) Math.min(bytes.capacity() - bytes.position(), remaining));
+                final int read = channel.read(bytes);
+                if (read == -1)
+                    endOfInput = true;
+                else
+                    remaining -= read;
+                if (remaining == 0)
+                    endOfInput = true;
+            }
+            bytes.flip();
+            CoderResult coderResult;
+            do {
+                final int start = bytes.position();
+                coderResult = decoder.decode(bytes, chars, endOfInput && !keepIncomplete);
+                chars.flip();
+                documents.append(chars, bytes.position() - start);
+                chars.clear();
+            } while (coderResult.isOverflow());
+            bytes.compact();
+            if (endOfInput && keepIncomplete) {
+                // The bytes of the incomplete character are left to the next call
+                documents.finish();
+                return documents.getExtractedBytes();
+            }
+            if (endOfInput) {
+                while (decoder.flush(chars).isOverflow()) {
+                    chars.flip();
+                    documents.append(chars, 0);
+                    chars.clear();
+                }
+                chars.flip();
+                documents.append(chars, 0);
+                break;
+            }
+            if (documents.isComplete())
+                break;
+        }
+        documents.finish();
+        return documents.getExtractedBytes();
+    }
 
-        // Trying to detect the CHARSET of the stream
+    /**
+     * The BOM, ASCII and UTF-8 checks avoid the statistical detection of the most common texts.
+     */
+    private static CharsetSniffer detectCharset(final byte[] prefix, final int length) {
+        final CharsetSniffer sniffed = CharsetSniffer.sniff(prefix, length);
+        if (sniffed != null)
+            return sniffed;
         final CharsetDetector detector = new CharsetDetector();
+        detector.setText(Arrays.copyOf(prefix, length));
+        final CharsetMatch match = detector.detect();
+        if (match != null) {
+            try {
+                return CharsetSniffer.detected(Charset.forName(match.getName()));
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                // The JVM does not support this charset
+            }
+        }
+        return CharsetSniffer.platform();
+    }
+
+    /**
+     * @return the offset, or -1 for a complete extraction
+     */
+    private static long getOffset(final MultivaluedMap<String, String> parameters) {
+        final String param = getParameterValue(parameters, OFFSET, 0);
+        if (param == null)
+            return -1;
+        final long offset;
+        try {
+            offset = Long.parseLong(param.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("The " + OFFSET.name + " parameter is not a valid number: " + param);
+        }
+        if (offset < 0)
+            throw new BadRequestException("The " + OFFSET.name + " parameter should be positive: " + param);
+        return offset;
+    }
+
+    private static long getDocumentBytes(final MultivaluedMap<String, String> parameters) {
+        final String param = getParameterValue(parameters, DOCUMENT_SIZE, 0);
+        if (param == null)
+            return Long.MAX_VALUE;
+        final long megabytes;
+        try {
+            megabytes = Long.parseLong(param.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("The " + DOCUMENT_SIZE.name + " parameter is not a valid number: " + param);
+        }
+        if (megabytes < 1)
+            throw new BadRequestException(
+                    "The " + DOCUMENT_SIZE.name + " parameter should be greater than zero: " + param);
+        return megabytes > Long.MAX_VALUE >> 20 ? Long.MAX_VALUE : megabytes << 20;
+    }
+
+    /**
+     * Collects the decoded text, and starts a new document when the current one is large enough.
+     */
+    private static final class TextDocuments {
+
+        private final Set<String> requestedFields;
+
+        private final ExtractionLimits limits;
+
+        private final ParserResult.Builder builder;
+
+        private final long documentBytes;
+
+        private final boolean contentRequested;
+
+        private final boolean languageRequested;
+
+        private final StringBuilder text;
+
+        /**
+         * True for an incremental extraction, which stops at the first character dropped by the limits
+         */
+        private final boolean incremental;
+
+        private CharsetSniffer charset;
+
+        private long bytes;
+
+        /**
+         * The number of bytes decoded, and the position of the current chunk in the input and in its buffer
+         */
+        private long inputBytes;
+
+        private long chunkInputBytes;
+
+        private int chunkIndex;
+
+        /**
+         * The position in the input of the first character dropped by the limits, or -1
+         */
+        private long droppedAt;
+
+        private int count;
+
+        private boolean truncated;
+
+        private TextDocuments(final MultivaluedMap<String, String> parameters,
+                              final ExtractionLimits limits,
+                              final ParserResult.Builder builder,
+                              final boolean incremental) {
+            this.requestedFields = ParserUtils.getRequestedFields(parameters);
+            this.limits = limits;
+            this.builder = builder;
+            this.incremental = incremental;
+            this.droppedAt = -1;
+            this.documentBytes = getDocumentBytes(parameters);
+            this.contentRequested = isFieldRequested(requestedFields, CONTENT);
+            this.languageRequested = isFieldRequested(requestedFields, LANG_DETECTION);
+            this.text = new StringBuilder();
+        }
+
+        private void setCharset(final CharsetSniffer charset) {
+            this.charset = charset;
+        }
+
+        private boolean isContentRequested() {
+            return contentRequested || languageRequested;
+        }
+
+        /**
+         * @return true if the text which follows is not needed
+         */
+        private boolean isComplete() {
+            if (count >= limits.maxDocuments || (incremental && droppedAt >= 0))
+                return true;
+            return documentBytes == Long.MAX_VALUE && text.length() > limits.maxContentLength;
+        }
+
+        /**
+         * @param chars         the decoded characters
+         * @param consumedBytes the number of bytes decoded
+         */
+        private void append(final CharBuffer chars, final int consumedBytes) {
+            chunkInputBytes = inputBytes;
+            chunkIndex = chars.position();
+            inputBytes += consumedBytes;
+            final long chunkStart = bytes;
+            bytes += consumedBytes;
+            if (bytes >= documentBytes) {
+                // The document ends with the first line break after its size
+                final int from = chunkStart < documentBytes ?
+                        indexAfterBytes(chars, documentBytes - chunkStart) :
+                        chars.position();
+                for (int i = from; i < chars.limit(); i++) {
+                    if (chars.get(i) == '\n') {
+                        final int end = i + 1;
+                        bytes = encodedLength(chars, end, chars.limit());
+                        appendText(chars, end);
+                        newDocument();
+                        break;
+                    }
+                }
+            }
+            appendText(chars, chars.limit());
+        }
+
+        /**
+         * The decoded characters are encoded again to find their position in the input.
+         * This is only done by the chunk where a document ends.
+         */
+        private CharsetEncoder newEncoder() {
+            return charset.charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        /**
+         * @return the index of the first character following the given number of bytes
+         */
+        private int indexAfterBytes(final CharBuffer chars, final long byteCount) {
+            final CharsetEncoder encoder = newEncoder();
+            final ByteBuffer encoded = ByteBuffer.allocate(16);
+            final CharBuffer input = chars.duplicate();
+            long count = 0;
+            while (count < byteCount && input.hasRemaining()) {
+                // A surrogate pair is encoded at once
+                final int next = input.position() +
+                        (input.remaining() > 1 && Character.isHighSurrogate(input.get(input.position())) ? 2 : 1);
+                encoder.encode(input.duplicate().limit(next), encoded.clear(), false);
+                count += encoded.position();
+                input.position(next);
+            }
+            return input.position();
+        }
+
+        private long encodedLength(final CharBuffer chars, final int from, final int to) {
+            final CharsetEncoder encoder = newEncoder();
+            final ByteBuffer encoded = ByteBuffer.allocate(CHUNK_SIZE);
+            final CharBuffer input = chars.duplicate().position(from).limit(to);
+            long length = 0;
+            CoderResult coderResult;
+            do {
+                coderResult = encoder.encode(input, encoded.clear(), true);
+                length += encoded.position();
+            } while (coderResult.isOverflow());
+            return length;
+        }
+
+        private void appendText(final CharBuffer chars, final int end) {
+            if (end == chars.position())
+                return;
+            if (count >= limits.maxDocuments) {
+                truncated = true;
+                dropAt(chars, chars.position());
+            } else if (text.length() <= limits.maxContentLength) {
+                final int length =
+                        (int) Math.min(end - chars.position(), limits.maxContentLength + 1L - text.length());
+                text.append(chars.array(), chars.arrayOffset() + chars.position(), length);
+                if (text.length() > limits.maxContentLength) {
+                    // The characters of this chunk kept by ExtractionLimits.truncateContent
+                    int kept = limits.maxContentLength - (text.length() - length);
+                    if (kept > 0 && Character.isHighSurrogate(chars.get(chars.position() + kept - 1)))
+                        kept--;
+                    dropAt(chars, chars.position() + kept);
+                }
+            }
+            chars.position(end);
+        }
+
+        /**
+         * Remember the position in the input of the first dropped character
+         */
+        private void dropAt(final CharBuffer chars, final int index) {
+            if (droppedAt == -1)
+                droppedAt = Math.min(inputBytes, chunkInputBytes + encodedLength(chars, chunkIndex, index));
+        }
 
-        try (final BufferedInputStream bis = new BufferedInputStream(inputStream)) {
-            detector.setText(bis);
-            final CharsetMatch match = detector.detect();
+        /**
+         * @return the number of bytes decoded up to the first character dropped by the limits, or all of them
+         */
+        private long getExtractedBytes() {
+            return droppedAt == -1 ? inputBytes : droppedAt;
+        }
+
+        private void newDocument() {
+            if (count >= limits.maxDocuments) {
+                truncated = true;
+                return;
+            }
+            count++;
             final ParserResult.FieldsBuilder result = builder.newDocument();
-            final String content;
-            if (match != null) {
-                content = match.getString();
-                result.add(CHARSET_DETECTION, match.getName());
-            } else {
-                bis.reset();
-                content = IOUtils.toString(bis, Charset.defaultCharset());
+            if (isFieldRequested(requestedFields, CHARSET_DETECTION))
+                result.add(CHARSET_DETECTION, charset.charset.name());
+            if (isFieldRequested(requestedFields, CHARSET_DETECTION_METHOD))
+                result.add(CHARSET_DETECTION_METHOD, charset.method.name());
+            if (!isContentRequested())
+                return;
+            String content = text.toString();
+            text.setLength(0);
+            if (limits.isContentTruncated(content)) {
+                content = limits.truncateContent(content);
+                truncated = true;
             }
-            result.add(CONTENT, content);
-            result.add(LANG_DETECTION, languageDetection(result, CONTENT, 10000));
+            if (contentRequested)
+                result.add(CONTENT, content);
+            if (languageRequested)
+                result.add(LANG_DETECTION, languageDetection(content, 10000));
         }
-        return builder.build();
-    }
 
-    @Override
-    public ParserResult extract(final MultivaluedMap<String, String> parameters, final Path filePath) throws IOException {
-        return toBufferedStream(filePath, input -> extract(parameters, input, MediaType.TEXT_PLAIN_TYPE));
+        /**
+         * Write the last document, a text has at least one document
+         */
+        private void finish() {
+            if (count == 0 || text.length() > 0)
+                newDocument();
+            if (truncated)
+                builder.metas().set(TRUNCATED, true);
+        }
     }
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller / QWAZR
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor.util;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Recognizes the common encodings from the first bytes of a stream, without statistical detection:
+ * a byte order mark, pure ASCII or valid UTF-8.
+ */
+public final class CharsetSniffer {
+
+    /**
+     * The number of bytes checked
+     */
+    public final static int PREFIX_LENGTH = 8000;
+
+    public enum Method {
+
+        /**
+         * A byte order mark gives the charset
+         */
+        bom,
+
+        /**
+         * Only ASCII characters, decoded as UTF-8
+         */
+        ascii,
+
+        /**
+         * Valid UTF-8 sequences
+         */
+        utf8,
+
+        /**
+         * Statistical detection
+         */
+        icu,
+
+        /**
+         * The default charset of the platform
+         */
+        platform
+    }
+
+    public final Method method;
+
+    public final Charset charset;
+
+    /**
+     * The number of bytes of the byte order mark, which are not part of the text
+     */
+    public final int bomLength;
+
+    private CharsetSniffer(final Method method, final Charset charset, final int bomLength) {
+        this.method = method;
+        this.charset = charset;
+        this.bomLength = bomLength;
+    }
+
+    /**
+     * @param prefix the first bytes of the text
+     * @param length the number of bytes, the text is longer if it is {@link #PREFIX_LENGTH} or more
+     * @return the recognized charset, or null if a statistical detection is required
+     */
+    public static CharsetSniffer sniff(final byte[] prefix, final int length) {
+        final CharsetSniffer bom = sniffBom(prefix, length);
+        if (bom != null)
+            return bom;
+        int pos = 0;
+        while (pos < length && prefix[pos] >= 0)
+            pos++;
+        if (pos == length)
+            return new CharsetSniffer(Method.ascii, StandardCharsets.UTF_8, 0);
+        return isUtf8(prefix, pos, length, length >= PREFIX_LENGTH) ?
+                new CharsetSniffer(Method.utf8, StandardCharsets.UTF_8, 0) :
+                null;
+    }
+
+    public static CharsetSniffer detected(final Charset charset) {
+        return new CharsetSniffer(Method.icu, charset, 0);
+    }
+
+    public static CharsetSniffer platform() {
+        return new CharsetSniffer(Method.platform, Charset.defaultCharset(), 0);
+    }
+
+    /**
+     * The charset and the length of the byte order mark are found together, only the valid bytes are read
+     *
+     * @return the charset given by the byte order mark, or null if there is none
+     */
+    private static CharsetSniffer sniffBom(final byte[] bytes, final int length) {
+        if (length >= 4 && bytes[0] == 0 && bytes[1] == 0 && bytes[2] == (byte) 0xFE && bytes[3] == (byte) 0xFF)
+            return new CharsetSniffer(Method.bom, Charset.forName("UTF-32BE"), 4);
+        if (length >= 4 && bytes[0] == (byte) 0xFF && bytes[1] == (byte) 0xFE && bytes[2] == 0 && bytes[3] == 0)
+            return new CharsetSniffer(Method.bom, Charset.forName("UTF-32LE"), 4);
+        if (length >= 3 && bytes[0] == (byte) 0xEF && bytes[1] == (byte) 0xBB && bytes[2] == (byte) 0xBF)
+            return new CharsetSniffer(Method.bom, StandardCharsets.UTF_8, 3);
+        if (length >= 2 && bytes[0] == (byte) 0xFE && bytes[1] == (byte) 0xFF)
+            return new CharsetSniffer(Method.bom, StandardCharsets.UTF_16BE, 2);
+        if (length >= 2 && bytes[0] == (byte) 0xFF && bytes[1] == (byte) 0xFE)
+            return new CharsetSniffer(Method.bom, StandardCharsets.UTF_16LE, 2);
+        return null;
+    }
+
+    /**
+     * Check the UTF-8 sequences, including the overlong forms and the surrogates.
+     *
+     * @param bytes     the bytes
+     * @param pos       the position of the first non-ASCII byte
+     * @param length    the number of bytes
+     * @param truncated true if the last sequence may continue after the prefix
+     * @return true if the bytes are valid UTF-8
+     */
+    private static boolean isUtf8(final byte[] bytes, int pos, final int length, final boolean truncated) {
+        while (pos < length) {
+            final int b = bytes[pos] & 0xFF;
+            if (b < 0x80) {
+                pos++;
+                continue;
+            }
+            final int sequenceLength;
+            final int min;
+            final int max;
+            if (b >= 0xC2 && b <= 0xDF) {
+                sequenceLength = 2;
+                min = 0x80;
+                max = 0xBF;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                sequenceLength = 3;
+                min = b == 0xE0 ? 0xA0 : 0x80;
+                max = b == 0xED ? 0x9F : 0xBF;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                sequenceLength = 4;
+                min = b == 0xF0 ? 0x90 : 0x80;
+                max = b == 0xF4 ? 0x8F : 0xBF;
+            } else
+                return false;
+            // A sequence cut by the end of the prefix is checked up to the available bytes
+            if (pos + sequenceLength > length && !truncated)
+                return false;
+            for (int i = 1; i < sequenceLength && pos + i < length; i++) {
+                final int c = bytes[pos + i] & 0xFF;
+                if (c < (i == 1 ? min : 0x80) || c > (i == 1 ? max : 0xBF))
+                    return false;
+            }
+            pos += sequenceLength;
+        }
+        return true;
+    }
+}
@@ -12,14 +12,22 @@ import java.awt.image.ColorConvertOp;
  */
 public class ImagePHash {
 
-    private int size = 32;
-    private int smallerSize = 8;
+    private final static int DEFAULT_SIZE = 32;
+    private final static int DEFAULT_SMALLER_SIZE = 8;
+
+    // The number of bits of the hashes returned with the default sizes
+    public final static int DEFAULT_BITS = (DEFAULT_SMALLER_SIZE - 1) * (DEFAULT_SMALLER_SIZE - 1);
+
+    private int size = DEFAULT_SIZE;
+    private int smallerSize = DEFAULT_SMALLER_SIZE;
 
     public ImagePHash() {
         initCoefficients();
     }
 
     public ImagePHash(int size, int smallerSize) {
+        if (smallerSize < 2 || smallerSize > size || (smallerSize - 1) * (smallerSize - 1) > Long.SIZE)
+            throw new IllegalArgumentException("Unsupported sizes: " + size + " / " + smallerSize);
         this.size = size;
         this.smallerSize = smallerSize;
 
@@ -36,9 +44,32 @@ public class ImagePHash {
         return counter;
     }
 
+    // Hamming distance of two hashes returned by getLongHash
+    public static int distance(long hash1, long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
     // Returns a 'binary string' (like. 001010111011100010) which is easy to do
     // a hamming distance on.
     public String getHash(BufferedImage img) {
+        return toBinaryString(getLongHash(img));
+    }
+
+    // The first character of the binary string is the highest bit of the hash
+    public String toBinaryString(long hash) {
+        final int bits = getBits();
+        final char[] chars = new char[bits];
+        for (int i = 0; i < bits; i++)
+            chars[i] = (hash & (1L << (bits - 1 - i))) != 0 ? '1' : '0';
+        return new String(chars);
+    }
+
+    // The number of bits of the hash: 49 with the default sizes
+    public int getBits() {
+        return (smallerSize - 1) * (smallerSize - 1);
+    }
+
+    public long getLongHash(BufferedImage img) {
 
         /*
          * 1. Reduce size. Like Average Hash, pHash starts with a small image.
@@ -54,11 +85,11 @@ public class ImagePHash {
          */
         img = grayscale(img);
 
-        double[][] vals = new double[size][size];
-
-        for (int x = 0; x < img.getWidth(); x++) {
-            for (int y = 0; y < img.getHeight(); y++) {
-                vals[x][y] = getBlue(img, x, y);
+        final int[] rgb = img.getRGB(0, 0, size, size, null, 0, size);
+        final double[] vals = new double[size * size];
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                vals[x * size + y] = rgb[y * size + x] & 0xff;
             }
         }
 
@@ -66,16 +97,13 @@ public class ImagePHash {
          * 3. Compute the DCT. The DCT separates the image into a collection of
          * frequencies and scalars. While JPEG uses an 8x8 DCT, this algorithm
          * uses a 32x32 DCT.
-         */
-        // long start = System.currentTimeMillis();
-        double[][] dctVals = applyDCT(vals);
-        // System.out.println("DCT: " + (System.currentTimeMillis() - start));
-
-        /*
+         *
          * 4. Reduce the DCT. This is the magic step. While the DCT is 32x32,
          * just keep the top-left 8x8. Those represent the lowest frequencies in
-         * the picture.
+         * the picture. Only these coefficients are computed.
          */
+        final double[] dctVals = applyDCT(vals);
+
         /*
          * 5. Compute the average value. Like the Average Hash, compute the mean
          * DCT value (using only the 8x8 DCT low-frequency values and excluding
@@ -84,12 +112,10 @@ public class ImagePHash {
          */
         double total = 0;
 
-        for (int x = 0; x < smallerSize; x++) {
-            for (int y = 0; y < smallerSize; y++) {
-                total += dctVals[x][y];
-            }
+        for (int i = 0; i < dctVals.length; i++) {
+            total += dctVals[i];
         }
-        total -= dctVals[0][0];
+        total -= dctVals[0];
 
         double avg = total / (double) ((smallerSize * smallerSize) - 1);
 
@@ -102,17 +128,15 @@ public class ImagePHash {
          * long as the overall structure of the image remains the same; this can
          * survive gamma and color histogram adjustments without a problem.
          */
-        StringBuilder hash = new StringBuilder();
+        long hash = 0;
 
-        for (int x = 0; x < smallerSize; x++) {
-            for (int y = 0; y < smallerSize; y++) {
-                if (x != 0 && y != 0) {
-                    hash.append(dctVals[x][y] > avg ? "1" : "0");
-                }
+        for (int x = 1; x < smallerSize; x++) {
+            for (int y = 1; y < smallerSize; y++) {
+                hash = (hash << 1) | (dctVals[x * smallerSize + y] > avg ? 1 : 0);
             }
         }
 
-        return hash.toString();
+        return hash;
     }
 
     private BufferedImage resize(BufferedImage image, int width, int height) {
@@ -132,41 +156,50 @@ public class ImagePHash {
         return img;
     }
 
-    private static int getBlue(BufferedImage img, int x, int y) {
-        return (img.getRGB(x, y)) & 0xff;
-    }
-
-    // DCT function stolen from
+    // DCT function derived from
     // http://stackoverflow.com/questions/4240490/problems-with-dct-and-idct-algorithm-in-java
+    // The cosines are computed once, and the 2D DCT is computed as a DCT of the rows then of the columns.
 
-    private double[] c;
+    // cos[u * size + i] = c(u) * cos((2i + 1) * u * PI / 2N), the scale factors are included
+    private double[] cos;
 
     private void initCoefficients() {
-        c = new double[size];
+        cos = new double[smallerSize * size];
 
-        for (int i = 1; i < size; i++) {
-            c[i] = 1;
+        for (int u = 0; u < smallerSize; u++) {
+            final double c = u == 0 ? 1 / Math.sqrt(2.0) : 1;
+            for (int i = 0; i < size; i++) {
+                cos[u * size + i] = c * Math.cos(((2 * i + 1) / (2.0 * size)) * u * Math.PI);
+            }
         }
-        c[0] = 1 / Math.sqrt(2.0);
     }
 
-    private double[][] applyDCT(double[][] f) {
-        int N = size;
+    // Returns the smallerSize x smallerSize low-frequency coefficients, F[u][v] is at u * smallerSize + v
+    private double[] applyDCT(double[] f) {
+        final int N = size;
+        final int M = smallerSize;
+
+        // Rows: R[i][v] = sum over j of f[i][j] * cos(v, j)
+        final double[] rows = new double[N * M];
+        for (int i = 0; i < N; i++) {
+            for (int v = 0; v < M; v++) {
+                double sum = 0.0;
+                for (int j = 0; j < N; j++) {
+                    sum += f[i * N + j] * cos[v * N + j];
+                }
+                rows[i * M + v] = sum;
+            }
+        }
 
-        double[][] F = new double[N][N];
-        for (int u = 0; u < N; u++) {
-            for (int v = 0; v < N; v++) {
+        // Columns: F[u][v] = sum over i of cos(u, i) * R[i][v]
+        final double[] F = new double[M * M];
+        for (int u = 0; u < M; u++) {
+            for (int v = 0; v < M; v++) {
                 double sum = 0.0;
                 for (int i = 0; i < N; i++) {
-                    for (int j = 0; j < N; j++) {
-                        sum += Math
-                                .cos(((2 * i + 1) / (2.0 * N)) * u * Math.PI)
-                                * Math.cos(((2 * j + 1) / (2.0 * N)) * v
-                                * Math.PI) * (f[i][j]);
-                    }
+                    sum += cos[u * N + i] * rows[i * M + v];
                 }
-                sum *= ((c[u] * c[v]) / 4.0);
-                F[u][v] = sum;
+                F[u * M + v] = sum / 4.0;
             }
         }
         return F;
@@ -18,7 +18,26 @@ package com.qwazr.extractor;
 import com.qwazr.extractor.parser.ImageParser;
 import com.qwazr.extractor.parser.RtfParser;
 import com.qwazr.extractor.parser.TextParser;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import javax.imageio.ImageIO;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ClientErrorException;
+import javax.ws.rs.NotAcceptableException;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
 import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -69,9 +88,451 @@ public class AllTest extends ParserTest {
         doTest(RtfParser.class, "file.rtf", MediaType.valueOf("application/rtf"), "content", DEFAULT_TEST_STRING);
     }
 
+    @Test
+    public void testRtfTruncation() throws IOException {
+        // "ab", an emoji (a surrogate pair), "cd"
+        final byte[] rtf = "{\\rtf1\\ansi ab\\u-10179?\\u-8704?cd}".getBytes(StandardCharsets.US_ASCII);
+        final MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+        parameters.putSingle(ExtractionLimits.MAX_CONTENT_LENGTH.name, "3");
+        final ParserResult result = new RtfParser().extract(parameters, new ByteArrayInputStream(rtf),
+                MediaType.valueOf("application/rtf"));
+        Assert.assertEquals("ab", result.getDocumentFieldValue(0, "content", 0));
+        Assert.assertEquals(Boolean.TRUE, result.metas.get(ParserInterface.TRUNCATED.name));
+    }
+
     @Test
     public void testText() throws Exception {
         doTest(TextParser.class, "file.txt", MediaType.valueOf("text/plain"), "content", DEFAULT_TEST_STRING);
     }
 
+    private void checkDetection(final String fileName, final MediaType mediaType, final String expectedParser)
+            throws IOException {
+        try (final InputStream input = getStream(fileName)) {
+            final ParserResult result = manager.extract(null, input, mediaType);
+            Assert.assertEquals(expectedParser, result.parserName);
+        }
+    }
+
+    @Test
+    public void testMagicDetection() throws IOException {
+        checkDetection("file.png", null, new ImageParser().getName());
+        checkDetection("file.gif", MediaType.APPLICATION_OCTET_STREAM_TYPE, new ImageParser().getName());
+        checkDetection("file.jpg", MediaType.WILDCARD_TYPE, new ImageParser().getName());
+        checkDetection("file.rtf", MediaType.APPLICATION_OCTET_STREAM_TYPE, new RtfParser().getName());
+    }
+
+    @Test(expected = NotAcceptableException.class)
+    public void testMagicDetectionUnknown() throws IOException {
+        checkDetection("file.txt", null, null);
+    }
+
+    @Test
+    public void testStatus() throws IOException {
+        checkDetection("file.png", null, new ImageParser().getName());
+        final ExtractorStatus status = service.getStatus();
+        Assert.assertEquals(manager.getParserNames(), status.parsers.keySet());
+        final ParserStatus imageStatus = status.parsers.get(new ImageParser().getName());
+        Assert.assertEquals(ParserFactory.ThreadSafety.THREAD_SAFE, imageStatus.threadSafety);
+        Assert.assertEquals(1, imageStatus.pool.idle);
+        Assert.assertEquals(1, imageStatus.pool.misses);
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        final Path txtFile = getTempFile("file.txt");
+        final Path rtfFile = getTempFile("file.rtf");
+        final List<BatchItem> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            items.add(new BatchItem(txtFile.toString()));
+            items.add(new BatchItem(rtfFile.toString(), Map.of(ExtractorManager.TIMEOUT.name, "60000")));
+        }
+        items.add(new BatchItem(txtFile.resolveSibling("missing.txt").toString()));
+        items.add(new BatchItem(rtfFile.toString(), Map.of(ExtractorManager.TIMEOUT.name, "zero")));
+        final Map<String, List<BatchResult>> results = new TreeMap<>();
+        manager.extractBatch(null, items.iterator(),
+                result -> results.computeIfAbsent(result.path, p -> new ArrayList<>()).add(result));
+        Assert.assertEquals(3, results.size());
+        final List<BatchResult> txtResults = results.get(txtFile.toString());
+        Assert.assertEquals(10, txtResults.size());
+        for (final BatchResult result : txtResults) {
+            Assert.assertNull(result.error);
+            checkContainsText(result.result, "content", DEFAULT_TEST_STRING);
+        }
+        final List<BatchResult> rtfResults = results.get(rtfFile.toString());
+        Assert.assertEquals(11, rtfResults.size());
+        Assert.assertEquals(1, rtfResults.stream().filter(result -> Integer.valueOf(400).equals(result.status)).count());
+        final BatchResult missing = results.get(txtFile.resolveSibling("missing.txt").toString()).get(0);
+        Assert.assertEquals(Integer.valueOf(404), missing.status);
+        Assert.assertNull(missing.result);
+    }
+
+    @Test
+    public void testDirectoryJob() throws IOException, InterruptedException {
+        final Path root = Files.createTempDirectory("extractor-directory");
+        final Path subDir = Files.createDirectory(root.resolve("sub"));
+        final Path excludedDir = Files.createDirectory(root.resolve("excluded"));
+        for (final Path dir : List.of(root, subDir, excludedDir)) {
+            Files.copy(getTempFile("file.txt"), dir.resolve("file.txt"));
+            Files.copy(getTempFile("file.rtf"), dir.resolve("file.rtf"));
+            Files.writeString(dir.resolve("file.unknown"), DEFAULT_TEST_STRING);
+        }
+        final Path output = Files.createTempFile("extractor-directory", ".ndjson");
+        final DirectoryJobStatus started = manager.startDirectoryJob(
+                new DirectoryJobDefinition(root.toString(), output.toString(), null, List.of("excluded"), null));
+        Assert.assertNotNull(started.id);
+        DirectoryJobStatus status = started;
+        for (int i = 0; i < 600 && status.state == DirectoryJobStatus.State.RUNNING; i++) {
+            Thread.sleep(100);
+            status = manager.getDirectoryJob(started.id);
+        }
+        Assert.assertEquals(DirectoryJobStatus.State.DONE, status.state);
+        Assert.assertEquals(4, status.found);
+        Assert.assertEquals(4, status.extracted);
+        Assert.assertEquals(0, status.failed);
+        Assert.assertEquals(2, status.ignored);
+        Assert.assertNotNull(status.endTime);
+        Assert.assertEquals(4, Files.readAllLines(output).size());
+        Assert.assertEquals(status.id, manager.removeDirectoryJob(started.id).id);
+        Assert.assertNull(manager.getDirectoryJob(started.id));
+    }
+
+    private static DirectoryJobStatus runDirectoryJob(final Path root) throws IOException, InterruptedException {
+        final Path output = Files.createTempFile("extractor-directory", ".ndjson");
+        DirectoryJobStatus status = manager.startDirectoryJob(
+                new DirectoryJobDefinition(root.toString(), output.toString(), null, null, null));
+        for (int i = 0; i < 600 && status.state == DirectoryJobStatus.State.RUNNING; i++) {
+            Thread.sleep(100);
+            status = manager.getDirectoryJob(status.id);
+        }
+        Assert.assertEquals(DirectoryJobStatus.State.DONE, status.state);
+        return status;
+    }
+
+    @Test
+    public void testDirectoryJobExpiration() throws IOException, InterruptedException {
+        final Path root = Files.createTempDirectory("extractor-directory");
+        Files.copy(getTempFile("file.txt"), root.resolve("file.txt"));
+        try {
+            manager.directoryJobs(ExtractorManager.DEFAULT_DIRECTORY_JOB_TTL_MS, 1);
+            final DirectoryJobStatus first = runDirectoryJob(root);
+            final DirectoryJobStatus second = runDirectoryJob(root);
+            // Only the last finished job is kept
+            Assert.assertNull(manager.getDirectoryJob(first.id));
+            Assert.assertNotNull(manager.getDirectoryJob(second.id));
+            manager.directoryJobs(1, 1);
+            Thread.sleep(10);
+            Assert.assertNull(manager.getDirectoryJob(second.id));
+            Assert.assertTrue(manager.getDirectoryJobs().isEmpty());
+        } finally {
+            manager.directoryJobs(ExtractorManager.DEFAULT_DIRECTORY_JOB_TTL_MS,
+                    ExtractorManager.DEFAULT_MAX_DIRECTORY_JOBS);
+        }
+    }
+
+    @Test
+    public void testLimits() throws IOException {
+        final MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+        parameters.putSingle(ExtractionLimits.MAX_CONTENT_LENGTH.name, "5");
+        for (final Path file : List.of(getTempFile("file.txt"), getTempFile("file.rtf"))) {
+            final ParserResult result = manager.extract(parameters, file);
+            Assert.assertEquals(5, result.getDocumentFieldValue(0, "content", 0).toString().length());
+            Assert.assertEquals(Boolean.TRUE, result.metas.get(ParserInterface.TRUNCATED.name));
+        }
+        parameters.putSingle(ExtractionLimits.MAX_CONTENT_LENGTH.name, "100000");
+        try (final InputStream input = getStream("file.txt")) {
+            final ParserResult result = manager.extract(parameters, input, MediaType.TEXT_PLAIN_TYPE);
+            Assert.assertNull(result.metas.get(ParserInterface.TRUNCATED.name));
+        }
+        parameters.putSingle(ExtractionLimits.MAX_BYTES.name, "10");
+        try (final InputStream input = getStream("file.txt")) {
+            final ParserResult result = manager.extract(parameters, input, MediaType.TEXT_PLAIN_TYPE);
+            Assert.assertTrue(result.getDocumentFieldValue(0, "content", 0).toString().length() <= 10);
+            Assert.assertEquals(Boolean.TRUE, result.metas.get(ParserInterface.TRUNCATED.name));
+        }
+    }
+
+    @Test
+    public void testTextDocumentSize() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 150000; i++)
+            text.append("Ligne élémentaire ").append(i).append('\n');
+        final Path file = Files.createTempFile("large", ".txt");
+        try {
+            Files.writeString(file, text);
+            final MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+            parameters.putSingle(TextParser.DOCUMENT_SIZE.name, "1");
+            parameters.putSingle(ParserUtils.REQUESTED_FIELDS.name, "content");
+            final ParserResult result = manager.extract(parameters, file);
+            Assert.assertEquals(4, result.documents.size());
+            final StringBuilder content = new StringBuilder();
+            for (int i = 0; i < result.documents.size(); i++) {
+                final String documentContent = result.getDocumentFieldValue(i, "content", 0).toString();
+                Assert.assertTrue(documentContent.endsWith("\n"));
+                if (i < result.documents.size() - 1) {
+                    // The document ends with the first line break after one megabyte
+                    final int lastLine = documentContent.lastIndexOf('\n', documentContent.length() - 2) + 1;
+                    Assert.assertTrue(documentContent.getBytes(StandardCharsets.UTF_8).length > 1 << 20);
+                    Assert.assertTrue(
+                            documentContent.substring(0, lastLine).getBytes(StandardCharsets.UTF_8).length <= 1 << 20);
+                }
+                content.append(documentContent);
+            }
+            Assert.assertEquals(text.toString(), content.toString());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static ParserResult extractFrom(final Path file, final Object offset) throws IOException {
+        return extractFrom(file, offset, null);
+    }
+
+    private static ParserResult extractFrom(final Path file, final Object offset, final Integer maxBytes)
+            throws IOException {
+        final MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+        parameters.putSingle(TextParser.OFFSET.name, offset.toString());
+        if (maxBytes != null)
+            parameters.putSingle(ExtractionLimits.MAX_BYTES.name, maxBytes.toString());
+        return manager.extract(parameters, file);
+    }
+
+    private static long nextOffset(final ParserResult result) {
+        return ((Number) result.metas.get(TextParser.NEXT_OFFSET.name)).longValue();
+    }
+
+    @Test
+    public void testTextOffset() throws IOException {
+        final Path file = Files.createTempFile("growing", ".txt");
+        try {
+            Files.writeString(file, "first\nsecond\nthi");
+            ParserResult result = extractFrom(file, 0);
+            Assert.assertEquals("first\nsecond\n", result.getDocumentFieldValue(0, "content", 0));
+            final Object nextOffset = result.metas.get(TextParser.NEXT_OFFSET.name);
+            Assert.assertEquals(13L, ((Number) nextOffset).longValue());
+
+            Files.writeString(file, "first\nsecond\nthird\n");
+            result = extractFrom(file, nextOffset);
+            Assert.assertEquals("third\n", result.getDocumentFieldValue(0, "content", 0));
+            Assert.assertEquals(19L, ((Number) result.metas.get(TextParser.NEXT_OFFSET.name)).longValue());
+
+            // The file has been replaced by a shorter one
+            Files.writeString(file, "new\n");
+            result = extractFrom(file, 19);
+            Assert.assertEquals("new\n", result.getDocumentFieldValue(0, "content", 0));
+            Assert.assertEquals(4L, ((Number) result.metas.get(TextParser.NEXT_OFFSET.name)).longValue());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testTextOffsetUtf16() throws IOException {
+        final Path file = Files.createTempFile("growing", ".txt");
+        try {
+            final byte[] bom = { (byte) 0xFF, (byte) 0xFE };
+            Files.write(file, bom);
+            Files.writeString(file, "first\nsecond\nthi", StandardCharsets.UTF_16LE, StandardOpenOption.APPEND);
+            ParserResult result = extractFrom(file, 0);
+            Assert.assertEquals("first\nsecond\n", result.getDocumentFieldValue(0, "content", 0));
+            Assert.assertEquals(2 + 13 * 2, nextOffset(result));
+
+            Files.writeString(file, "rd\n", StandardCharsets.UTF_16LE, StandardOpenOption.APPEND);
+            result = extractFrom(file, nextOffset(result));
+            Assert.assertEquals("third\n", result.getDocumentFieldValue(0, "content", 0));
+            Assert.assertEquals(2 + 19 * 2, nextOffset(result));
+
+            // A line longer than the limit is cut on a code unit
+            result = extractFrom(file, 0, 9);
+            Assert.assertEquals("firs", result.getDocumentFieldValue(0, "content", 0));
+            Assert.assertEquals(10, nextOffset(result));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testTextOffsetLongLine() throws IOException {
+        final Path file = Files.createTempFile("growing", ".txt");
+        try {
+            // 1, 2, 3 and 4 bytes characters
+            Files.writeString(file, "a\u00e9\u20ac\ud83d\ude00\n", StandardCharsets.UTF_8);
+            ParserResult result = extractFrom(file, 0, 5);
+            Assert.assertEquals("a\u00e9", result.getDocumentFieldValue(0, "content", 0));
+            Assert.assertEquals(3, nextOffset(result));
+            result = extractFrom(file, nextOffset(result), 5);
+            Assert.assertEquals("\u20ac", result.getDocumentFieldValue(0, "content", 0));
+            Assert.assertEquals(6, nextOffset(result));
+            result = extractFrom(file, nextOffset(result), 5);
+            Assert.assertEquals("\ud83d\ude00\n", result.getDocumentFieldValue(0, "content", 0));
+            Assert.assertEquals(11, nextOffset(result));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testTextOffsetMaxContentLength() throws IOException {
+        final Path file = Files.createTempFile("growing", ".txt");
+        try {
+            Files.writeString(file, "a\u00e9\u20ac\ud83d\ude00b\nsecond\n", StandardCharsets.UTF_8);
+            final MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+            parameters.putSingle(ExtractionLimits.MAX_CONTENT_LENGTH.name, "3");
+            // The next offset follows the last extracted character, the dropped text is not skipped
+            parameters.putSingle(TextParser.OFFSET.name, "0");
+            ParserResult result = manager.extract(parameters, file);
+            Assert.assertEquals("a\u00e9\u20ac", result.getDocumentFieldValue(0, "content", 0));
+            Assert.assertEquals(true, result.metas.get(ParserInterface.TRUNCATED.name));
+            Assert.assertEquals(6, nextOffset(result));
+            parameters.putSingle(TextParser.OFFSET.name, Long.toString(nextOffset(result)));
+            result = manager.extract(parameters, file);
+            Assert.assertEquals("\ud83d\ude00b", result.getDocumentFieldValue(0, "content", 0));
+            Assert.assertEquals(11, nextOffset(result));
+            parameters.putSingle(TextParser.OFFSET.name, Long.toString(nextOffset(result)));
+            result = manager.extract(parameters, file);
+            Assert.assertEquals("\nse", result.getDocumentFieldValue(0, "content", 0));
+            Assert.assertEquals(14, nextOffset(result));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testImageMetadataOnly() throws IOException {
+        final MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+        parameters.putSingle(ImageParser.METADATA_ONLY.name, "true");
+        final ParserResult result = manager.extract(parameters, getTempFile("file.png"));
+        Assert.assertEquals(320, result.getDocumentFieldValue(0, "width", 0));
+        Assert.assertEquals(160, result.getDocumentFieldValue(0, "height", 0));
+        Assert.assertNull(result.getDocumentFieldValue(0, ImageParser.PHASH.name, 0));
+    }
+
+    @Test
+    public void testImageMaxPixels() throws IOException {
+        final MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+        parameters.putSingle(ImageParser.MAX_PIXELS.name, Integer.toString(320 * 160));
+        Assert.assertNotNull(manager.extract(parameters, getTempFile("file.png"))
+                .getDocumentFieldValue(0, ImageParser.PHASH.name, 0));
+        parameters.putSingle(ImageParser.MAX_PIXELS.name, Integer.toString(320 * 160 - 1));
+        try {
+            manager.extract(parameters, getTempFile("file.png"));
+            Assert.fail("The image should be refused");
+        } catch (ClientErrorException e) {
+            Assert.assertEquals(413, e.getResponse().getStatus());
+        }
+        // The parameter can't raise the limit of the server
+        parameters.putSingle(ImageParser.MAX_PIXELS.name, Long.toString(ImageParser.getMaxPixelsCeiling() + 1));
+        try {
+            manager.extract(parameters, getTempFile("file.png"));
+            Assert.fail("The parameter should be refused");
+        } catch (BadRequestException e) {
+            Assert.assertTrue(e.getMessage().contains(ImageParser.MAX_PIXELS.name));
+        }
+    }
+
+    @Test
+    public void testImageLargeUpload() throws IOException {
+        // An uncompressed image larger than the memory threshold of the uploads
+        final Path file = Files.createTempFile("large", ".bmp");
+        try {
+            ImageIO.write(new BufferedImage(2000, 1500, BufferedImage.TYPE_INT_RGB), "bmp", file.toFile());
+            final MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+            parameters.putSingle(ImageParser.METADATA_ONLY.name, "true");
+            try (final InputStream input = Files.newInputStream(file)) {
+                final ParserResult result = manager.extract(parameters, input, MediaType.valueOf("image/bmp"));
+                Assert.assertEquals(2000, result.getDocumentFieldValue(0, "width", 0));
+                Assert.assertEquals(1500, result.getDocumentFieldValue(0, "height", 0));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testImagePHashIndexStreamed() throws IOException {
+        try (final ExtractorManager indexManager = new ExtractorManager()) {
+            indexManager.phashIndex(Files.createTempFile("phash", ".index")).registerServices();
+            final MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+            parameters.putSingle(ExtractorManager.PHASH_INDEX.name, "true");
+            parameters.putSingle(ExtractorManager.PHASH_KEY.name, "uploaded.png");
+            final List<Object> phashes = new ArrayList<>();
+            final ResultSink sink = new ResultSink() {
+                @Override
+                public void start(String parserName, Map<String, Object> metas) {
+                }
+
+                @Override
+                public void document(Map<String, Object> fields) {
+                    PHashIndexSink.collect(fields, phashes);
+                }
+
+                @Override
+                public void end(Map<String, Object> trailingMetas, long timeElapsed) {
+                }
+            };
+            try (final InputStream input = getStream("file.png")) {
+                indexManager.extract(parameters, input, MediaType.valueOf("image/png"), sink);
+            }
+            Assert.assertEquals(1, phashes.size());
+            final PHashSearchResult result = indexManager.searchPHash(phashes.get(0).toString(), 0, 10);
+            Assert.assertEquals(1, result.matches.size());
+            Assert.assertEquals("uploaded.png", result.matches.get(0).key);
+            // A stream needs a key
+            parameters.remove(ExtractorManager.PHASH_KEY.name);
+            try (final InputStream input = getStream("file.png")) {
+                indexManager.extract(parameters, input, MediaType.valueOf("image/png"), sink);
+                Assert.fail("The key should be required");
+            } catch (BadRequestException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testFields() throws IOException {
+        final MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+        parameters.putSingle(ParserUtils.REQUESTED_FIELDS.name, "width, height");
+        final ParserResult imageResult = manager.extract(parameters, getTempFile("file.png"));
+        Assert.assertEquals(Set.of("width", "height"), imageResult.documents.get(0).keySet());
+        parameters.putSingle(ParserUtils.REQUESTED_FIELDS.name, "content");
+        final ParserResult textResult = manager.extract(parameters, getTempFile("file.txt"));
+        Assert.assertEquals(Set.of("content"), textResult.documents.get(0).keySet());
+        checkContainsText(textResult, "content", DEFAULT_TEST_STRING);
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void testUnknownField() throws IOException {
+        final MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+        parameters.putSingle(ParserUtils.REQUESTED_FIELDS.name, "content,phash");
+        manager.extract(parameters, getTempFile("file.txt"));
+    }
+
+    @Test
+    public void testCache() throws IOException {
+        try (final ExtractorManager cachedManager = new ExtractorManager()) {
+            cachedManager.cache(null, 1024 * 1024, 0).registerServices();
+            final Path txtFile = getTempFile("file.txt");
+            Assert.assertEquals(ParserResult.CACHE_MISS, cachedManager.extract(null, txtFile).cacheStatus);
+            final ParserResult cachedResult = cachedManager.extract(null, txtFile);
+            Assert.assertEquals(ParserResult.CACHE_HIT_MEMORY, cachedResult.cacheStatus);
+            checkContainsText(cachedResult, "content", DEFAULT_TEST_STRING);
+            // An incremental extraction is not cached
+            final MultivaluedMap<String, String> offsetParameters = new MultivaluedHashMap<>();
+            offsetParameters.putSingle(TextParser.OFFSET.name, "0");
+            Assert.assertNull(cachedManager.extract(offsetParameters, txtFile).cacheStatus);
+            Assert.assertNull(cachedManager.extract(offsetParameters, txtFile).cacheStatus);
+            // The same content uploaded as a stream has another key (media type instead of extension)
+            try (final InputStream input = getStream("file.txt")) {
+                Assert.assertEquals(ParserResult.CACHE_MISS,
+                        cachedManager.extract(null, input, MediaType.TEXT_PLAIN_TYPE).cacheStatus);
+            }
+            try (final InputStream input = getStream("file.txt")) {
+                Assert.assertEquals(ParserResult.CACHE_HIT_MEMORY,
+                        cachedManager.extract(null, input, MediaType.TEXT_PLAIN_TYPE).cacheStatus);
+            }
+            final ExtractorStatus.Cache status = cachedManager.getStatus().cache;
+            Assert.assertEquals(2, status.memoryHits);
+            Assert.assertEquals(2, status.misses);
+        }
+    }
+
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.qwazr.extractor.util.CharsetSniffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CharsetSnifferTest {
+
+    private static CharsetSniffer sniff(final byte[] bytes) {
+        return CharsetSniffer.sniff(bytes, Math.min(bytes.length, CharsetSniffer.PREFIX_LENGTH));
+    }
+
+    private static void check(final CharsetSniffer.Method method, final String charset, final byte[] bytes) {
+        final CharsetSniffer sniffer = sniff(bytes);
+        Assert.assertNotNull(sniffer);
+        Assert.assertEquals(method, sniffer.method);
+        Assert.assertEquals(charset, sniffer.charset.name());
+    }
+
+    private static byte[] bytes(final int... values) {
+        final byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+            bytes[i] = (byte) values[i];
+        return bytes;
+    }
+
+    @Test
+    public void byteOrderMark() {
+        check(CharsetSniffer.Method.bom, "UTF-8", bytes(0xEF, 0xBB, 0xBF, 'a'));
+        check(CharsetSniffer.Method.bom, "UTF-16BE", bytes(0xFE, 0xFF, 0, 'a'));
+        check(CharsetSniffer.Method.bom, "UTF-16LE", bytes(0xFF, 0xFE, 'a', 0));
+        check(CharsetSniffer.Method.bom, "UTF-32BE", bytes(0, 0, 0xFE, 0xFF, 0, 0, 0, 'a'));
+        check(CharsetSniffer.Method.bom, "UTF-32LE", bytes(0xFF, 0xFE, 0, 0, 'a', 0, 0, 0));
+    }
+
+    @Test
+    public void byteOrderMarkLength() {
+        Assert.assertEquals(3, sniff(bytes(0xEF, 0xBB, 0xBF, 'a')).bomLength);
+        Assert.assertEquals(2, sniff(bytes(0xFF, 0xFE, 'a', 0)).bomLength);
+        Assert.assertEquals(0, sniff(bytes('a')).bomLength);
+    }
+
+    @Test
+    public void shortByteOrderMark() {
+        // Only the valid bytes of the buffer are read
+        check(CharsetSniffer.Method.bom, "UTF-16LE", bytes(0xFF, 0xFE));
+        final CharsetSniffer sniffer = CharsetSniffer.sniff(bytes(0xFF, 0xFE, 0, 0, 0, 0, 0, 0), 2);
+        Assert.assertEquals("UTF-16LE", sniffer.charset.name());
+        Assert.assertEquals(2, sniffer.bomLength);
+    }
+
+    @Test
+    public void ascii() {
+        check(CharsetSniffer.Method.ascii, "UTF-8", "Hello world".getBytes(StandardCharsets.US_ASCII));
+        check(CharsetSniffer.Method.ascii, "UTF-8", new byte[0]);
+    }
+
+    @Test
+    public void utf8() {
+        check(CharsetSniffer.Method.utf8, "UTF-8", "Déjà vu, 日本語, 😀".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void utf8CutByThePrefix() {
+        final byte[] bytes = new byte[CharsetSniffer.PREFIX_LENGTH + 10];
+        Arrays.fill(bytes, (byte) 'a');
+        final byte[] euro = "€".getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(euro, 0, bytes, CharsetSniffer.PREFIX_LENGTH - 1, euro.length);
+        check(CharsetSniffer.Method.utf8, "UTF-8", bytes);
+    }
+
+    @Test
+    public void notUtf8() {
+        Assert.assertNull(sniff("Déjà vu".getBytes(StandardCharsets.ISO_8859_1)));
+        // Overlong form of '/'
+        Assert.assertNull(sniff(bytes('a', 0xC0, 0xAF)));
+        // Surrogate
+        Assert.assertNull(sniff(bytes('a', 0xED, 0xA0, 0x80)));
+        // Truncated sequence at the end of the stream
+        Assert.assertNull(sniff(bytes('a', 0xE2, 0x82)));
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExtractionCacheTest {
+
+    private final static byte[] CONTENT = ExtractionCache.newDigest().digest("content".getBytes(StandardCharsets.UTF_8));
+
+    private static ParserResult newResult(final String content) {
+        final ParserResult.Builder builder = ParserResult.of("test");
+        builder.newDocument().add(ParserField.newString("content", null), content);
+        return builder.build();
+    }
+
+    @Test
+    public void keyNormalization() {
+        final MultivaluedMap<String, String> params1 = new MultivaluedHashMap<>();
+        params1.add("a", "1");
+        params1.add("b", "2");
+        params1.add("timeout", "1000");
+        final MultivaluedMap<String, String> params2 = new MultivaluedHashMap<>();
+        params2.add("b", "2");
+        params2.add("a", "1");
+        final Set<String> ignored = Set.of("timeout");
+        final String key = ExtractionCache.key(CONTENT, "text/plain", params1, ignored);
+        Assert.assertEquals(key, ExtractionCache.key(CONTENT, "text/plain", params2, ignored));
+        Assert.assertNotEquals(key, ExtractionCache.key(CONTENT, "text/html", params2, ignored));
+        Assert.assertNotEquals(key, ExtractionCache.key(CONTENT, "text/plain", null, ignored));
+    }
+
+    @Test
+    public void memoryTier() throws IOException {
+        final ExtractionCache cache = new ExtractionCache(null, 1024, 0);
+        Assert.assertNull(cache.get("key1"));
+        cache.put("key1", newResult("test1"));
+        final ParserResult result = cache.get("key1");
+        Assert.assertEquals(ParserResult.CACHE_HIT_MEMORY, result.cacheStatus);
+        Assert.assertEquals("test1", result.getDocumentFieldValue(0, "content", 0));
+        // Filling the memory evicts the least recently used entries
+        for (int i = 0; i < 100; i++)
+            cache.put("fill" + i, newResult("fill" + i));
+        Assert.assertNull(cache.get("key1"));
+        final ExtractorStatus.Cache status = cache.getStatus();
+        Assert.assertEquals(1, status.memoryHits);
+        Assert.assertEquals(2, status.misses);
+        Assert.assertTrue(status.memoryBytes <= 1024);
+    }
+
+    @Test
+    public void diskTier() throws IOException {
+        final Path directory = Files.createTempDirectory("extractor-cache");
+        final ExtractionCache cache = new ExtractionCache(directory, 0, 1024 * 1024);
+        cache.put("key1", newResult("test1"));
+        Assert.assertEquals(ParserResult.CACHE_HIT_DISK, cache.get("key1").cacheStatus);
+        // The entries are found again after a restart
+        final ExtractionCache reopenedCache = new ExtractionCache(directory, 0, 1024 * 1024);
+        final ParserResult result = reopenedCache.get("key1");
+        Assert.assertEquals(ParserResult.CACHE_HIT_DISK, result.cacheStatus);
+        Assert.assertEquals("test1", result.getDocumentFieldValue(0, "content", 0));
+        Assert.assertEquals(1, reopenedCache.getStatus().diskEntries);
+        // A smaller limit evicts the entries
+        final ExtractionCache smallCache = new ExtractionCache(directory, 0, 1);
+        Assert.assertNull(smallCache.get("key1"));
+        Assert.assertEquals(0, smallCache.getStatus().diskEntries);
+    }
+
+    @Test
+    public void corruptedEntry() throws IOException {
+        final Path directory = Files.createTempDirectory("extractor-cache");
+        Files.writeString(directory.resolve("key1.json"), "{\"parser_name\":");
+        Files.writeString(directory.resolve("key2.json123.tmp"), "partial");
+        final ExtractionCache cache = new ExtractionCache(directory, 1024, 1024 * 1024);
+        // The interrupted write is deleted, the corrupted entry is a miss
+        Assert.assertFalse(Files.exists(directory.resolve("key2.json123.tmp")));
+        Assert.assertNull(cache.get("key1"));
+        Assert.assertFalse(Files.exists(directory.resolve("key1.json")));
+        Assert.assertEquals(0, cache.getStatus().diskEntries);
+        Assert.assertEquals(1, cache.getStatus().misses);
+        // The content is extracted and stored again
+        cache.put("key1", newResult("test1"));
+        Assert.assertEquals("test1", cache.get("key1").getDocumentFieldValue(0, "content", 0));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.WebApplicationException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExtractionJobsTest {
+
+    private static ExtractionJob submit(final ExtractionJobs jobs, final CountDownLatch release) {
+        jobs.acquire();
+        return jobs.submit(() -> {
+            release.await();
+            return ParserResult.of("test").build();
+        }, e -> 500, null);
+    }
+
+    @Test
+    public void result() {
+        try (final ExtractionJobs jobs = new ExtractionJobs(1, Executors.defaultThreadFactory())) {
+            final ExtractionJob job = submit(jobs, new CountDownLatch(0));
+            Assert.assertTrue(job.await(10000));
+            Assert.assertEquals(ExtractionJobStatus.State.DONE, job.getStatus().state);
+            Assert.assertNotNull(job.getResult());
+            Assert.assertSame(job, jobs.get(job.id));
+        }
+    }
+
+    @Test
+    public void failure() {
+        try (final ExtractionJobs jobs = new ExtractionJobs(1, Executors.defaultThreadFactory())) {
+            jobs.acquire();
+            final ExtractionJob job = jobs.submit(() -> {
+                throw new IllegalStateException("test");
+            }, e -> 422, null);
+            Assert.assertTrue(job.await(10000));
+            final ExtractionJobStatus status = job.getStatus();
+            Assert.assertEquals(ExtractionJobStatus.State.FAILED, status.state);
+            Assert.assertEquals(Integer.valueOf(422), status.status);
+            Assert.assertEquals("test", status.error);
+        }
+    }
+
+    @Test
+    public void queueFull() {
+        final CountDownLatch release = new CountDownLatch(1);
+        try (final ExtractionJobs jobs = new ExtractionJobs(1, Executors.defaultThreadFactory())) {
+            jobs.setQueueSize(1);
+            final ExtractionJob running = submit(jobs, release);
+            final ExtractionJob queued = submit(jobs, release);
+            try {
+                submit(jobs, release);
+                Assert.fail("The queue should be full");
+            } catch (ServiceUnavailableException e) {
+                // Expected
+            }
+            try {
+                queued.getResult();
+                Assert.fail("The job should not be completed");
+            } catch (WebApplicationException e) {
+                Assert.assertEquals(409, e.getResponse().getStatus());
+            }
+            release.countDown();
+            Assert.assertTrue(running.await(10000));
+            Assert.assertTrue(queued.await(10000));
+            // A slot is available again
+            Assert.assertTrue(submit(jobs, release).await(10000));
+        }
+    }
+
+    @Test
+    public void cancel() {
+        final CountDownLatch release = new CountDownLatch(1);
+        try (final ExtractionJobs jobs = new ExtractionJobs(1, Executors.defaultThreadFactory())) {
+            final ExtractionJob running = submit(jobs, release);
+            Assert.assertSame(running, jobs.remove(running.id));
+            Assert.assertTrue(running.isDone());
+            Assert.assertEquals(ExtractionJobStatus.State.CANCELLED, running.getStatus().state);
+            Assert.assertNull(jobs.get(running.id));
+        }
+    }
+
+    @Test
+    public void maxResults() throws InterruptedException {
+        try (final ExtractionJobs jobs = new ExtractionJobs(1, Executors.defaultThreadFactory())) {
+            jobs.setMaxResults(1);
+            final ExtractionJob first = submit(jobs, new CountDownLatch(0));
+            Assert.assertTrue(first.await(10000));
+            final ExtractionJob second = submit(jobs, new CountDownLatch(0));
+            Assert.assertTrue(second.await(10000));
+            // The completion is recorded after the job is done
+            for (int i = 0; i < 100 && jobs.get(first.id) != null; i++)
+                Thread.sleep(100);
+            Assert.assertNull(jobs.get(first.id));
+            Assert.assertSame(second, jobs.get(second.id));
+        }
+    }
+
+    @Test
+    public void maxResultBytes() throws InterruptedException {
+        try (final ExtractionJobs jobs = new ExtractionJobs(1, Executors.defaultThreadFactory())) {
+            // One result is about 40 bytes of JSON
+            jobs.setMaxResultBytes(60);
+            final ExtractionJob first = submit(jobs, new CountDownLatch(0));
+            Assert.assertTrue(first.await(10000));
+            Assert.assertTrue(first.getResultBytes() > 30);
+            final ExtractionJob second = submit(jobs, new CountDownLatch(0));
+            Assert.assertTrue(second.await(10000));
+            for (int i = 0; i < 100 && jobs.get(first.id) != null; i++)
+                Thread.sleep(100);
+            Assert.assertNull(jobs.get(first.id));
+            Assert.assertSame(second, jobs.get(second.id));
+            // A result larger than the limit is not kept
+            jobs.setMaxResultBytes(1);
+            final ExtractionJob third = submit(jobs, new CountDownLatch(0));
+            Assert.assertTrue(third.await(10000));
+            for (int i = 0; i < 100 && jobs.get(third.id) != null; i++)
+                Thread.sleep(100);
+            Assert.assertNull(jobs.get(third.id));
+            Assert.assertNull(jobs.get(second.id));
+        }
+    }
+
+    @Test
+    public void expiration() throws InterruptedException {
+        try (final ExtractionJobs jobs = new ExtractionJobs(1, Executors.defaultThreadFactory())) {
+            jobs.setResultTtl(100);
+            final ExtractionJob job = submit(jobs, new CountDownLatch(0));
+            Assert.assertTrue(job.await(10000));
+            Thread.sleep(300);
+            Assert.assertNull(jobs.get(job.id));
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ExtractionLimitsTest {
+
+    private static ExtractionLimits limits(final String maxContentLength,
+                                           final String maxDocuments,
+                                           final String maxBytes) {
+        final MultivaluedMap<String, String> parameters = new MultivaluedHashMap<>();
+        if (maxContentLength != null)
+            parameters.putSingle(ExtractionLimits.MAX_CONTENT_LENGTH.name, maxContentLength);
+        if (maxDocuments != null)
+            parameters.putSingle(ExtractionLimits.MAX_DOCUMENTS.name, maxDocuments);
+        if (maxBytes != null)
+            parameters.putSingle(ExtractionLimits.MAX_BYTES.name, maxBytes);
+        return ExtractionLimits.of(parameters);
+    }
+
+    @Test
+    public void limitedStream() throws IOException {
+        final byte[] bytes = new byte[100];
+        try (final ExtractionLimits.LimitedInputStream input =
+                     limits(null, null, "10").limit(new ByteArrayInputStream(bytes))) {
+            Assert.assertEquals(10, IOUtils.toByteArray(input).length);
+            Assert.assertTrue(input.isTruncated());
+        }
+        try (final ExtractionLimits.LimitedInputStream input =
+                     limits(null, null, "100").limit(new ByteArrayInputStream(bytes))) {
+            Assert.assertEquals(100, IOUtils.toByteArray(input).length);
+            Assert.assertFalse(input.isTruncated());
+        }
+    }
+
+    @Test
+    public void readContent() throws IOException {
+        final ExtractionLimits limits = limits("5", null, null);
+        final String content = limits.readContent(new StringReader("0123456789"));
+        Assert.assertTrue(limits.isContentTruncated(content));
+        Assert.assertEquals("01234", limits.truncateContent(content));
+        Assert.assertFalse(limits.isContentTruncated(limits.readContent(new StringReader("01234"))));
+        Assert.assertEquals("0123456789", limits(null, null, null).readContent(new StringReader("0123456789")));
+    }
+
+    @Test
+    public void limitResult() {
+        final ParserResult.Builder builder = ParserResult.of("test");
+        for (int i = 0; i < 5; i++) {
+            builder.newDocument().add(ParserInterface.CONTENT, "first value");
+            builder.newDocument().add(ParserInterface.CONTENT, List.of("first value", "second value"));
+        }
+        final ParserResult result = builder.build();
+        Assert.assertSame(result, result.limit(limits(null, null, null), false));
+        Assert.assertSame(result, result.limit(limits("100", "10", null), false));
+
+        final ParserResult limited = result.limit(limits("15", "3", null), false);
+        Assert.assertEquals(3, limited.documents.size());
+        Assert.assertEquals(Boolean.TRUE, limited.metas.get(ParserInterface.TRUNCATED.name));
+        Assert.assertEquals(List.of("first value"), limited.documents.get(0).get(ParserInterface.CONTENT.name));
+        Assert.assertEquals(List.of("first value", "seco"),
+                limited.documents.get(1).get(ParserInterface.CONTENT.name));
+    }
+
+    @Test
+    public void limitSink() throws IOException {
+        final List<Map<String, Object>> documents = new ArrayList<>();
+        final List<Map<String, Object>> trailingMetas = new ArrayList<>();
+        final ResultSink sink = new LimitedResultSink(new ResultSink() {
+            @Override
+            public void start(String parserName, Map<String, Object> metas) {
+            }
+
+            @Override
+            public void document(Map<String, Object> fields) {
+                documents.add(fields);
+            }
+
+            @Override
+            public void end(Map<String, Object> metas, long timeElapsed) {
+                trailingMetas.add(metas);
+            }
+        }, limits(null, "2", null), null);
+        final ParserResult.Builder builder = ParserResult.of("test", sink);
+        for (int i = 0; i < 5; i++)
+            builder.newDocument().set(ParserInterface.CONTENT, "document " + i);
+        builder.build();
+        Assert.assertEquals(2, documents.size());
+        Assert.assertEquals(Boolean.TRUE, trailingMetas.get(0).get(ParserInterface.TRUNCATED.name));
+    }
+
+    @Test(expected = BadRequestException.class)
+    public void invalidLimit() {
+        limits("-1", null, null);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Allocation of the documents of a result, compared with the previous map of lists.
+ * The bytes per operation are given by the GC profiler (gc.alloc.rate.norm):
+ * <pre>
+ * mvn test-compile
+ * java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *     org.openjdk.jmh.Main FieldsBuilderBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FieldsBuilderBenchmark {
+
+    private final static ParserField TITLE = ParserField.newString("title", null);
+
+    private final static ParserField CONTENT = ParserField.newString("content", null);
+
+    private final static ParserField TAGS = ParserField.newString("tags", null);
+
+    private final static ParserField LANG = ParserField.newString("lang_detection", null);
+
+    @Param({ "1000" })
+    public int documents;
+
+    @Benchmark
+    public void fieldsBuilder(final Blackhole blackhole) {
+        final ParserResult.Builder builder = ParserResult.of("benchmark");
+        for (int i = 0; i < documents; i++) {
+            final ParserResult.FieldsBuilder document = builder.newDocument();
+            document.set(TITLE, "title");
+            document.add(CONTENT, "content");
+            document.add(TAGS, "a");
+            document.add(TAGS, "b");
+            document.set(LANG, "en");
+        }
+        blackhole.consume(builder.build());
+    }
+
+    private static void add(final Map<String, Object> fields, final ParserField field, final Object value) {
+        ((List<Object>) fields.computeIfAbsent(field.name, f -> new ArrayList<>(1))).add(value);
+    }
+
+    @Benchmark
+    public void mapOfLists(final Blackhole blackhole) {
+        final List<Map<String, Object>> result = new ArrayList<>();
+        for (int i = 0; i < documents; i++) {
+            final Map<String, Object> document = new LinkedHashMap<>();
+            document.put(TITLE.name, "title");
+            add(document, CONTENT, "content");
+            add(document, TAGS, "a");
+            add(document, TAGS, "b");
+            document.put(LANG.name, "en");
+            result.add(document);
+        }
+        blackhole.consume(result);
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.qwazr.utils.ObjectMappers;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class FieldsMapTest {
+
+    /**
+     * The previous representation: a map of lists for the added fields
+     */
+    private static void addLegacy(final Map<String, Object> fields, final String name, final Object value) {
+        final List<Object> values = (List<Object>) fields.computeIfAbsent(name, f -> new ArrayList<>(1));
+        if (value instanceof List)
+            values.addAll((List<?>) value);
+        else
+            values.add(value);
+    }
+
+    @Test
+    public void sameJson() {
+        final FieldsMap fields = new FieldsMap();
+        final Map<String, Object> legacy = new LinkedHashMap<>();
+        fields.set("title", "title");
+        legacy.put("title", "title");
+        fields.add("content", "content");
+        addLegacy(legacy, "content", "content");
+        fields.add("tags", "a");
+        addLegacy(legacy, "tags", "a");
+        fields.add("tags", Arrays.asList("b", "c"));
+        addLegacy(legacy, "tags", Arrays.asList("b", "c"));
+        fields.add("empty", List.of());
+        addLegacy(legacy, "empty", List.of());
+        fields.set("number", 12);
+        legacy.put("number", 12);
+        fields.set("title", "other");
+        legacy.put("title", "other");
+
+        final JsonNode json = ObjectMappers.JSON.valueToTree(fields);
+        Assert.assertEquals(ObjectMappers.JSON.valueToTree(legacy), json);
+        Assert.assertEquals(legacy, fields);
+        Assert.assertEquals(List.of("content"), fields.get("content"));
+        Assert.assertEquals(List.of("a", "b", "c"), fields.get("tags"));
+        Assert.assertEquals("other", fields.get("title"));
+        Assert.assertNull(fields.get("missing"));
+    }
+
+    @Test
+    public void manyFields() {
+        final FieldsMap fields = new FieldsMap();
+        final Map<String, Object> legacy = new LinkedHashMap<>();
+        for (int i = 0; i < 100; i++) {
+            fields.add("field" + i, i);
+            addLegacy(legacy, "field" + i, i);
+            fields.set("set" + i, i);
+            legacy.put("set" + i, i);
+        }
+        fields.add("field80", 80);
+        addLegacy(legacy, "field80", 80);
+        Assert.assertEquals(200, fields.size());
+        Assert.assertEquals(legacy, fields);
+        Assert.assertEquals(ObjectMappers.JSON.valueToTree(legacy), ObjectMappers.JSON.valueToTree(fields));
+    }
+
+    @Test
+    public void addAfterSet() {
+        final FieldsMap fields = new FieldsMap();
+        fields.set("field", "first");
+        fields.add("field", "second");
+        Assert.assertEquals(List.of("first", "second"), fields.get("field"));
+        fields.set("field", "unique");
+        Assert.assertEquals("unique", fields.get("field"));
+        Assert.assertEquals("{\"field\":\"unique\"}", ObjectMappers.JSON.valueToTree(fields).toString());
+    }
+
+    @Test
+    public void copy() {
+        final FieldsMap fields = new FieldsMap();
+        fields.set("title", "title");
+        fields.add("tags", "a");
+        fields.add("tags", "b");
+        final FieldsMap copy = new FieldsMap(fields, 1);
+        copy.add("tags", "c");
+        copy.add("lang", "en");
+        Assert.assertEquals(List.of("a", "b"), fields.get("tags"));
+        Assert.assertFalse(fields.containsKey("lang"));
+        Assert.assertEquals(List.of("a", "b", "c"), copy.get("tags"));
+        Assert.assertEquals("{\"title\":\"title\",\"tags\":[\"a\",\"b\",\"c\"],\"lang\":[\"en\"]}",
+                ObjectMappers.JSON.valueToTree(copy).toString());
+        final Map<String, Object> legacy = new LinkedHashMap<>(Map.of("content", List.of("text")));
+        final FieldsMap legacyCopy = new FieldsMap(legacy, 0);
+        legacyCopy.add("lang", "en");
+        Assert.assertEquals(ObjectMappers.JSON.valueToTree(Map.of("content", List.of("text"), "lang", List.of("en"))),
+                ObjectMappers.JSON.valueToTree(legacyCopy));
+    }
+
+    @Test
+    public void mutation() {
+        final FieldsMap fields = new FieldsMap();
+        final Map<String, Object> legacy = new LinkedHashMap<>();
+        for (int i = 0; i < 70; i++) {
+            fields.add("field" + i, i);
+            addLegacy(legacy, "field" + i, i);
+        }
+        fields.set("title", "title");
+        legacy.put("title", "title");
+
+        Assert.assertEquals(List.of(3), fields.put("field3", "three"));
+        legacy.put("field3", "three");
+        Assert.assertNull(fields.put("lang", "en"));
+        legacy.put("lang", "en");
+        // The 65th field moves to the 64th position
+        Assert.assertEquals(List.of(10), fields.remove("field10"));
+        legacy.remove("field10");
+        Assert.assertNull(fields.remove("missing"));
+
+        final Iterator<Map.Entry<String, Object>> iterator = fields.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Object> entry = iterator.next();
+            if (entry.getKey().equals("field20"))
+                iterator.remove();
+            else if (entry.getKey().equals("field66"))
+                entry.setValue(66);
+        }
+        legacy.remove("field20");
+        legacy.put("field66", 66);
+        fields.keySet().remove("field0");
+        legacy.remove("field0");
+
+        Assert.assertEquals(legacy, fields);
+        Assert.assertEquals(new ArrayList<>(legacy.keySet()), new ArrayList<>(fields.keySet()));
+        Assert.assertEquals(ObjectMappers.JSON.valueToTree(legacy), ObjectMappers.JSON.valueToTree(fields));
+
+        fields.clear();
+        Assert.assertTrue(fields.isEmpty());
+        fields.add("field", "value");
+        Assert.assertEquals("{\"field\":[\"value\"]}", ObjectMappers.JSON.valueToTree(fields).toString());
+    }
+}
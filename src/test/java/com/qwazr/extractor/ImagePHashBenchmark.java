@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.qwazr.extractor.util.ImagePHash;
+import java.awt.Graphics2D;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorConvertOp;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time of the perceptual hash of an image, compared with the previous DCT which evaluates two cosines per term:
+ * <pre>
+ * mvn test-compile
+ * java -cp target/test-classes:target/classes:$(mvn -q dependency:build-classpath -Dmdep.outputFile=/dev/stdout) \
+ *     org.openjdk.jmh.Main ImagePHashBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ImagePHashBenchmark {
+
+    private final static int SIZE = 32;
+
+    private final static int SMALLER_SIZE = 8;
+
+    private BufferedImage image;
+
+    @Setup
+    public void setup() {
+        image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++)
+            for (int x = 0; x < image.getWidth(); x++)
+                image.setRGB(x, y, (x * 7 + y * 13) * 0x010101 & 0xFFFFFF);
+    }
+
+    @Benchmark
+    public long longHash() {
+        return new ImagePHash().getLongHash(image);
+    }
+
+    @Benchmark
+    public String naiveHash() {
+        final BufferedImage resized = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = resized.createGraphics();
+        g.drawImage(image, 0, 0, SIZE, SIZE, null);
+        g.dispose();
+        new ColorConvertOp(ColorSpace.getInstance(ColorSpace.CS_GRAY), null).filter(resized, resized);
+        final double[][] f = new double[SIZE][SIZE];
+        for (int x = 0; x < SIZE; x++)
+            for (int y = 0; y < SIZE; y++)
+                f[x][y] = resized.getRGB(x, y) & 0xff;
+        final double[][] dct = new double[SIZE][SIZE];
+        for (int u = 0; u < SIZE; u++) {
+            for (int v = 0; v < SIZE; v++) {
+                double sum = 0.0;
+                for (int i = 0; i < SIZE; i++)
+                    for (int j = 0; j < SIZE; j++)
+                        sum += Math.cos(((2 * i + 1) / (2.0 * SIZE)) * u * Math.PI) *
+                                Math.cos(((2 * j + 1) / (2.0 * SIZE)) * v * Math.PI) * f[i][j];
+                final double cu = u == 0 ? 1 / Math.sqrt(2.0) : 1;
+                final double cv = v == 0 ? 1 / Math.sqrt(2.0) : 1;
+                dct[u][v] = sum * cu * cv / 4.0;
+            }
+        }
+        double total = -dct[0][0];
+        for (int x = 0; x < SMALLER_SIZE; x++)
+            for (int y = 0; y < SMALLER_SIZE; y++)
+                total += dct[x][y];
+        final double avg = total / (SMALLER_SIZE * SMALLER_SIZE - 1);
+        final StringBuilder hash = new StringBuilder();
+        for (int x = 1; x < SMALLER_SIZE; x++)
+            for (int y = 1; y < SMALLER_SIZE; y++)
+                hash.append(dct[x][y] > avg ? '1' : '0');
+        return hash.toString();
+    }
+}
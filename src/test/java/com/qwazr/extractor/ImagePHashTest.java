@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.qwazr.extractor.util.ImagePHash;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import javax.imageio.ImageIO;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ImagePHashTest {
+
+    private static BufferedImage read(final String fileName) throws IOException {
+        try (final InputStream input = ImagePHashTest.class.getResourceAsStream(fileName)) {
+            return ImageIO.read(input);
+        }
+    }
+
+    @Test
+    public void sameHashAsTheNaiveDct() throws IOException {
+        // Computed by the previous implementation, with a cosine evaluation per term of the DCT
+        Assert.assertEquals("0000110100110001100011001100011001110011001001100",
+                new ImagePHash().getHash(read("file.png")));
+        Assert.assertEquals("0000010100110001100011001100011001110011001001100",
+                new ImagePHash().getHash(read("file.jpg")));
+    }
+
+    @Test
+    public void longHash() throws IOException {
+        final ImagePHash pHash = new ImagePHash();
+        final long png = pHash.getLongHash(read("file.png"));
+        final long jpg = pHash.getLongHash(read("file.jpg"));
+        Assert.assertEquals(49, pHash.getBits());
+        Assert.assertEquals(0, png >>> pHash.getBits());
+        Assert.assertEquals("0000110100110001100011001100011001110011001001100", pHash.toBinaryString(png));
+        Assert.assertEquals(1, ImagePHash.distance(png, jpg));
+        Assert.assertEquals(pHash.distance(pHash.toBinaryString(png), pHash.toBinaryString(jpg)),
+                ImagePHash.distance(png, jpg));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyBits() {
+        new ImagePHash(32, 10);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.qwazr.utils.ObjectMappers;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LanguageDetectionStageTest {
+
+    private final static String ENGLISH = "The quick brown fox jumps over the lazy dog while the children are playing";
+
+    private static ParserResult newResult(final int count) {
+        final ParserResult.Builder builder = ParserResult.of("test");
+        for (int i = 0; i < count; i++) {
+            final ParserResult.FieldsBuilder document = builder.newDocument();
+            if (i % 3 == 0)
+                document.set(ParserInterface.CONTENT, ENGLISH);
+            else if (i % 3 == 1)
+                document.set(ParserInterface.LANG_DETECTION, "fr");
+        }
+        return builder.build();
+    }
+
+    private static ParserResult detect(final int count, final int threshold) {
+        try (final LanguageDetectionStage stage = new LanguageDetectionStage(4)) {
+            stage.setThreshold(threshold);
+            return stage.apply(newResult(count));
+        }
+    }
+
+    private static void check(final ParserResult result, final int count) {
+        Assert.assertNotNull(result.metas.get(ExtractorManager.LANG_DETECTION_TIME.name));
+        Assert.assertEquals(count, result.documents.size());
+        for (int i = 0; i < count; i++) {
+            final Map<String, Object> document = result.documents.get(i);
+            if (i % 3 == 0) {
+                Assert.assertEquals(List.of("en"), document.get(ParserInterface.LANG_DETECTION.name));
+                // The detected document keeps the compact layout
+                Assert.assertTrue(document instanceof FieldsMap);
+            } else if (i % 3 == 1)
+                Assert.assertEquals("fr", document.get(ParserInterface.LANG_DETECTION.name));
+            else
+                Assert.assertNull(document);
+        }
+    }
+
+    @Test
+    public void sequential() {
+        check(detect(10, LanguageDetectionStage.DEFAULT_THRESHOLD), 10);
+    }
+
+    @Test
+    public void parallel() {
+        check(detect(1000, 2), 1000);
+    }
+
+    @Test
+    public void noDocument() {
+        final ParserResult result = ParserResult.of("test").build();
+        try (final LanguageDetectionStage stage = new LanguageDetectionStage(1)) {
+            Assert.assertSame(result, stage.apply(result));
+        }
+    }
+
+    @Test
+    public void sameJsonAsParsers() {
+        final ParserResult.Builder builder = ParserResult.of("test");
+        builder.newDocument().add(ParserInterface.LANG_DETECTION, "en");
+        final JsonNode expected = ObjectMappers.JSON.valueToTree(builder.build().documents.get(0));
+        final JsonNode detected = ObjectMappers.JSON.valueToTree(detect(1, 1).documents.get(0));
+        Assert.assertEquals(expected.get(ParserInterface.LANG_DETECTION.name),
+                detected.get(ParserInterface.LANG_DETECTION.name));
+    }
+}
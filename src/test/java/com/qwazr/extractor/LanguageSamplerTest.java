@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LanguageSamplerTest {
+
+    private static String sample(final int maxLength, final CharSequence... texts) {
+        final StringBuilder buffer = new StringBuilder();
+        LanguageSampler.sample(List.of(texts), maxLength, buffer);
+        return buffer.toString();
+    }
+
+    @Test
+    public void shortTexts() {
+        Assert.assertEquals("abc", sample(10, "abc"));
+        Assert.assertEquals("abc def", sample(10, "abc", "def"));
+        Assert.assertEquals("abc def", sample(7, "abc", "def"));
+    }
+
+    @Test
+    public void longText() {
+        final StringBuilder text = new StringBuilder();
+        text.append("a".repeat(100)).append("b".repeat(100)).append("c".repeat(100));
+        Assert.assertEquals("aaaa bbbb cccc", sample(14, text));
+    }
+
+    @Test
+    public void windowsAcrossTexts() {
+        // "0123 4567 89": the windows are [0, 3), [4, 7) and [9, 12), the last ones start on a separator
+        Assert.assertEquals("012  45  89", sample(11, "0123", "4567", "89"));
+    }
+}
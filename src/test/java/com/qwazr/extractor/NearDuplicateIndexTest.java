@@ -0,0 +1,190 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.ws.rs.BadRequestException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NearDuplicateIndexTest {
+
+    private final static int BITS = 49;
+
+    private final static long MASK = (1L << BITS) - 1;
+
+    private static List<String> keys(final PHashSearchResult result) {
+        final List<String> keys = new ArrayList<>();
+        result.matches.forEach(match -> keys.add(match.key + ':' + match.distance));
+        return keys;
+    }
+
+    @Test
+    public void sameMatchesAsTheScan() throws IOException {
+        final Random random = new Random(0);
+        final long[] hashes = new long[20000];
+        try (final NearDuplicateIndex index = new NearDuplicateIndex(Files.createTempFile("phash", ".index"), BITS)) {
+            for (int i = 0; i < hashes.length; i++) {
+                // Some hashes are near a previous one
+                hashes[i] = i > 0 && random.nextBoolean() ?
+                        hashes[random.nextInt(i)] ^ (1L << random.nextInt(BITS)) ^ (1L << random.nextInt(BITS)) :
+                        random.nextLong() & MASK;
+                Assert.assertTrue(index.add("image" + i, hashes[i]));
+            }
+            for (int distance = 0; distance <= 16; distance++) {
+                for (int i = 0; i < 20; i++) {
+                    final long hash = hashes[random.nextInt(hashes.length)] ^ (1L << random.nextInt(BITS));
+                    final PHashSearchResult result = index.search(hash, distance, Integer.MAX_VALUE);
+                    final List<String> expected = new ArrayList<>();
+                    for (int j = 0; j < hashes.length; j++) {
+                        final int d = Long.bitCount(hashes[j] ^ hash);
+                        if (d <= distance)
+                            expected.add("image" + j + ':' + d);
+                    }
+                    final List<String> found = keys(result);
+                    Assert.assertEquals(expected.size(), found.size());
+                    Assert.assertTrue(found.containsAll(expected));
+                    for (int j = 1; j < result.matches.size(); j++)
+                        Assert.assertTrue(result.matches.get(j - 1).distance <= result.matches.get(j).distance);
+                }
+            }
+            Assert.assertEquals(1, index.search(hashes[0], 0, 1).matches.size());
+            Assert.assertEquals(17 * 20 + 1, index.getStatus().searches);
+        }
+    }
+
+    @Test
+    public void memoryBytes() throws IOException {
+        final Path file = Files.createTempFile("phash", ".index");
+        try (final NearDuplicateIndex index = new NearDuplicateIndex(file, BITS)) {
+            final long empty = index.getStatus().memoryBytes;
+            index.add("short", 0b1);
+            final long shortKey = index.getStatus().memoryBytes;
+            // The key, the HashMap node, the hash and a posting per block
+            Assert.assertTrue(shortKey - empty >= 40 + 48);
+            index.add("x".repeat(1000), 0b11);
+            Assert.assertTrue(index.getStatus().memoryBytes - shortKey >= 1000);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void persistence() throws IOException {
+        final Path file = Files.createTempFile("phash", ".index");
+        try (final NearDuplicateIndex index = new NearDuplicateIndex(file, BITS)) {
+            Assert.assertTrue(index.add("first", 0b1011));
+            Assert.assertTrue(index.add("second", 0b1111));
+            // Same key and same hash
+            Assert.assertFalse(index.add("first", 0b1011));
+        }
+        try (final NearDuplicateIndex index = new NearDuplicateIndex(file, BITS)) {
+            Assert.assertEquals(2, index.getStatus().entries);
+            Assert.assertEquals(List.of("first:0", "second:1"), keys(index.search(0b1011, 1, 10)));
+            Assert.assertEquals("0000000000000000000000000000000000000000000001011",
+                    index.search(0b1011, 0, 10).matches.get(0).phash);
+        }
+        // An incomplete entry, after a crash
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 2);
+        }
+        try (final NearDuplicateIndex index = new NearDuplicateIndex(file, BITS)) {
+            Assert.assertEquals(1, index.getStatus().entries);
+            Assert.assertTrue(index.add("third", 0b1));
+        }
+        try (final NearDuplicateIndex index = new NearDuplicateIndex(file, BITS)) {
+            Assert.assertEquals(List.of("first:0", "third:2"), keys(index.search(0b1011, 2, 10)));
+        }
+    }
+
+    @Test
+    public void replacedHash() throws IOException {
+        final Path file = Files.createTempFile("phash", ".index");
+        try (final NearDuplicateIndex index = new NearDuplicateIndex(file, BITS)) {
+            Assert.assertTrue(index.add("image", 0b1011));
+            Assert.assertTrue(index.add("other", 0b1011));
+            Assert.assertTrue(index.add("image", 0b110000));
+            Assert.assertFalse(index.add("image", 0b110000));
+            Assert.assertEquals(2, index.getStatus().entries);
+            Assert.assertEquals(List.of("other:0"), keys(index.search(0b1011, 0, 10)));
+            Assert.assertEquals(List.of("image:0"), keys(index.search(0b110000, 0, 10)));
+        }
+        // The last entry of the key wins
+        try (final NearDuplicateIndex index = new NearDuplicateIndex(file, BITS)) {
+            Assert.assertEquals(2, index.getStatus().entries);
+            Assert.assertEquals(List.of("other:0"), keys(index.search(0b1011, 0, 10)));
+            Assert.assertEquals(List.of("image:0"), keys(index.search(0b110000, 0, 10)));
+        }
+    }
+
+    @Test
+    public void tooLongKey() throws IOException {
+        final Path file = Files.createTempFile("phash", ".index");
+        final String key = "é".repeat(NearDuplicateIndex.MAX_KEY_LENGTH / 2 + 1);
+        Assert.assertFalse(NearDuplicateIndex.isValidKey(key));
+        try (final NearDuplicateIndex index = new NearDuplicateIndex(file, BITS)) {
+            Assert.assertTrue(index.add("first", 0b1));
+            final long fileSize = Files.size(file);
+            try {
+                index.add(key, 0b11);
+                Assert.fail("The key should be rejected");
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals(fileSize, Files.size(file));
+            }
+            Assert.assertTrue(index.add("second", 0b111));
+        }
+        try (final NearDuplicateIndex index = new NearDuplicateIndex(file, BITS)) {
+            Assert.assertEquals(List.of("first:0", "second:2"), keys(index.search(0b1, 2, 10)));
+        }
+    }
+
+    @Test
+    public void incompleteHeader() throws IOException {
+        final Path file = Files.createTempFile("phash", ".index");
+        Files.write(file, new byte[] { 0x50, 0x48, 0x49 });
+        try (final NearDuplicateIndex index = new NearDuplicateIndex(file, BITS)) {
+            Assert.assertEquals(0, index.getStatus().entries);
+            Assert.assertTrue(index.add("first", 0b1));
+        }
+        try (final NearDuplicateIndex index = new NearDuplicateIndex(file, BITS)) {
+            Assert.assertEquals(List.of("first:0"), keys(index.search(0b1, 0, 10)));
+        }
+    }
+
+    @Test
+    public void invalidSearchedHash() throws IOException {
+        try (final ExtractorManager manager = new ExtractorManager()) {
+            manager.phashIndex(Files.createTempFile("phash", ".index"));
+            final String zeros = "0".repeat(BITS - 1);
+            Assert.assertEquals(0, manager.searchPHash(zeros + '1', 0, 10).matches.size());
+            for (final String hash : List.of("+" + zeros, "-" + zeros, zeros, zeros + "01", "2" + zeros)) {
+                try {
+                    manager.searchPHash(hash, 0, 10);
+                    Assert.fail("The hash should be rejected: " + hash);
+                } catch (BadRequestException e) {
+                    // Expected
+                }
+            }
+        }
+    }
+}
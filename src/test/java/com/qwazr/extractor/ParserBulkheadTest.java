@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.ServerErrorException;
+import javax.ws.rs.core.Response;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParserBulkheadTest {
+
+    @Test
+    public void result() throws IOException {
+        try (final ParserBulkhead bulkhead = new ParserBulkhead("test", 1)) {
+            final ParserResult result = ParserResult.of("test").build();
+            Assert.assertSame(result, bulkhead.execute(() -> result, 1000));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void ioException() throws IOException {
+        try (final ParserBulkhead bulkhead = new ParserBulkhead("test", 1)) {
+            bulkhead.execute(() -> {
+                throw new IOException("test");
+            }, 1000);
+        }
+    }
+
+    @Test
+    public void timeout() throws IOException, InterruptedException {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        try (final ParserBulkhead bulkhead = new ParserBulkhead("test", 1)) {
+            try {
+                bulkhead.execute(() -> {
+                    try {
+                        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return null;
+                }, 100);
+                Assert.fail("Timeout not thrown");
+            } catch (ServerErrorException e) {
+                Assert.assertEquals(Response.Status.GATEWAY_TIMEOUT.getStatusCode(), e.getResponse().getStatus());
+            }
+            // The worker has been interrupted
+            Assert.assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+            Assert.assertEquals(1, bulkhead.getStatus().timeouts);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.MediaType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParserRankingTest {
+
+    private final static long ONE_MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void keys() {
+        Assert.assertEquals("text/plain", ParserRanking.keyOf(MediaType.valueOf("Text/Plain; charset=UTF-8")));
+        Assert.assertEquals(".txt", ParserRanking.keyOf("TXT"));
+    }
+
+    @Test
+    public void score() {
+        final ParserRanking reliable = new ParserRanking();
+        final ParserRanking failing = new ParserRanking();
+        for (int i = 0; i < 10; i++) {
+            reliable.success(ONE_MS);
+            if (i % 5 == 0)
+                failing.success(ONE_MS);
+            else
+                failing.failure(ONE_MS);
+        }
+        Assert.assertTrue(reliable.getScore() > failing.getScore());
+
+        final ParserRanking slow = new ParserRanking();
+        for (int i = 0; i < 10; i++)
+            slow.success(ONE_MS * 100);
+        Assert.assertTrue(reliable.getScore() > slow.getScore());
+    }
+
+    @Test
+    public void circuitBreaker() {
+        final ParserRanking ranking = new ParserRanking();
+        final long now = System.currentTimeMillis();
+        for (int i = 1; i < ParserRanking.FAILURE_THRESHOLD; i++)
+            ranking.failure(ONE_MS);
+        Assert.assertFalse(ranking.isOpen(now));
+        ranking.failure(ONE_MS);
+        Assert.assertTrue(ranking.isOpen(now));
+        Assert.assertTrue(ranking.getStatus("test", now).circuitOpen);
+        // Half-open once the period is over
+        Assert.assertFalse(ranking.isOpen(now + ParserRanking.OPEN_DURATION_MS * 2));
+        ranking.success(ONE_MS);
+        Assert.assertFalse(ranking.isOpen(now));
+    }
+}
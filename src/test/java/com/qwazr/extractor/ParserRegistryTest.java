@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.qwazr.extractor.parser.RtfParser;
+import com.qwazr.extractor.parser.TextParser;
+import javax.ws.rs.core.MediaType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ParserRegistryTest {
+
+    @Test
+    public void snapshots() {
+        final ParserRegistry<String> empty = ParserRegistry.empty(String[]::new);
+        final ParserRegistry<String> first = empty.with(new TextParser(), "text1");
+        final ParserRegistry<String> second = first.with(new TextParser(), "text2").with(new RtfParser(), "rtf");
+
+        // Previous snapshots are not modified
+        Assert.assertEquals(0, empty.forExtension("txt").length);
+        Assert.assertArrayEquals(new String[]{"text1"}, first.forExtension("txt"));
+        Assert.assertArrayEquals(new String[]{"text1", "text2"}, second.forExtension("txt"));
+
+        // Lookups are case insensitive and ignore the media type parameters
+        Assert.assertArrayEquals(new String[]{"text1", "text2"}, second.forExtension("TXT"));
+        Assert.assertArrayEquals(new String[]{"text1", "text2"},
+                second.forMediaType(MediaType.valueOf("Text/Plain; charset=UTF-8")));
+        Assert.assertArrayEquals(new String[]{"rtf"}, second.forMediaType(MediaType.valueOf("application/rtf")));
+
+        Assert.assertEquals(0, second.forMediaType(MediaType.valueOf("text/html")).length);
+        Assert.assertEquals(0, second.forMediaType(null).length);
+        Assert.assertEquals(0, second.forExtension(null).length);
+
+        Assert.assertEquals("rtf", second.get(new RtfParser().getName()));
+        Assert.assertEquals(2, second.getParsers().size());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.qwazr.utils.ObjectMappers;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResultStreamWriterTest {
+
+    private final static ParserField CONTENT = ParserField.newString("content", null);
+
+    private final static ParserField TYPE = ParserField.newString("type", null);
+
+    private static void fill(final ParserResult.Builder builder, final int count) {
+        builder.metas().set(TYPE, "test");
+        for (int i = 0; i < count; i++)
+            builder.newDocument().add(CONTENT, "document " + i);
+    }
+
+    private static JsonNode stream(final int count) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (final ResultStreamWriter writer = new ResultStreamWriter(output)) {
+            final ParserResult.Builder builder = ParserResult.of("test", writer);
+            fill(builder, count);
+            final ParserResult result = builder.build();
+            Assert.assertTrue(result.documents.isEmpty());
+        }
+        return ObjectMappers.JSON.readTree(output.toByteArray());
+    }
+
+    @Test
+    public void sameShape() throws IOException {
+        for (final int count : new int[] { 0, 1, 3 }) {
+            final ParserResult.Builder builder = ParserResult.of("test");
+            fill(builder, count);
+            final JsonNode expected = ObjectMappers.JSON.valueToTree(builder.build());
+            final JsonNode streamed = stream(count);
+            Assert.assertEquals(expected.get("parser_name"), streamed.get("parser_name"));
+            Assert.assertEquals(expected.get("metas"), streamed.get("metas"));
+            Assert.assertEquals(expected.get("documents"), streamed.get("documents"));
+            Assert.assertTrue(streamed.get("time_elapsed").isNumber());
+        }
+    }
+
+    @Test
+    public void lateMetas() throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (final ResultStreamWriter writer = new ResultStreamWriter(output)) {
+            final ParserResult.Builder builder = ParserResult.of("test", writer);
+            fill(builder, 2);
+            builder.metas().set(CONTENT, "late");
+            builder.build();
+        }
+        final JsonNode streamed = ObjectMappers.JSON.readTree(output.toByteArray());
+        Assert.assertNull(streamed.get("trailing_metas"));
+        Assert.assertEquals("test", streamed.get("metas").get(TYPE.name).asText());
+        Assert.assertEquals("late", streamed.get("metas").get(CONTENT.name).asText());
+        final ParserResult result = ObjectMappers.JSON.readValue(output.toByteArray(), ParserResult.class);
+        Assert.assertEquals(2, result.documents.size());
+        Assert.assertEquals(2, result.metas.size());
+    }
+
+    @Test
+    public void documentsAreWrittenEarly() throws IOException {
+        final List<Map<String, Object>> written = new ArrayList<>();
+        final ParserResult.Builder builder = ParserResult.of("test", new ResultSink() {
+            @Override
+            public void start(String parserName, Map<String, Object> metas) {
+                Assert.assertEquals("test", metas.get(TYPE.name));
+            }
+
+            @Override
+            public void document(Map<String, Object> fields) {
+                written.add(fields);
+            }
+
+            @Override
+            public void end(Map<String, Object> trailingMetas, long timeElapsed) {
+                Assert.assertEquals("late", trailingMetas.get(TYPE.name));
+            }
+        });
+        fill(builder, 1);
+        // The first document is kept until the next one is created
+        Assert.assertEquals(0, written.size());
+        builder.newDocument().add(CONTENT, "document 1");
+        Assert.assertEquals(1, written.size());
+        builder.metas().set(TYPE, "late");
+        builder.build();
+        Assert.assertEquals(2, written.size());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class SpillBufferTest {
+
+    private static byte[] randomBytes(int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static void checkRead(SpillBuffer buffer, byte[] expected) throws IOException {
+        try (final InputStream input = buffer.newInputStream()) {
+            Assert.assertArrayEquals(expected, input.readAllBytes());
+        }
+    }
+
+    @Test
+    public void memoryOnly() throws IOException {
+        final byte[] bytes = randomBytes(1000);
+        try (final SpillBuffer buffer = new SpillBuffer(2048)) {
+            buffer.write(bytes);
+            Assert.assertFalse(buffer.isSpilled());
+            Assert.assertEquals(bytes.length, buffer.getLength());
+            checkRead(buffer, bytes);
+            checkRead(buffer, bytes);
+        }
+    }
+
+    @Test
+    public void spillToDisk() throws IOException {
+        final byte[] bytes = randomBytes(10000);
+        try (final SpillBuffer buffer = new SpillBuffer(1024)) {
+            buffer.write(bytes, 0, 500);
+            buffer.write(bytes[500]);
+            buffer.write(bytes, 501, bytes.length - 501);
+            Assert.assertTrue(buffer.isSpilled());
+            Assert.assertEquals(bytes.length, buffer.getLength());
+            checkRead(buffer, bytes);
+            checkRead(buffer, bytes);
+        }
+    }
+
+    @Test
+    public void writeAfterClose() throws IOException {
+        final SpillBuffer buffer = new SpillBuffer(16);
+        buffer.write(randomBytes(100));
+        Assert.assertTrue(buffer.isSpilled());
+        buffer.close();
+        Assert.assertFalse(buffer.isSpilled());
+        // A parser which timed out may still write: no new spill file is created
+        try {
+            buffer.write(randomBytes(100));
+            Assert.fail("The closed buffer should refuse the bytes");
+        } catch (IOException e) {
+            Assert.assertFalse(buffer.isSpilled());
+        }
+        try {
+            buffer.write(1);
+            Assert.fail("The closed buffer should refuse the byte");
+        } catch (IOException e) {
+            Assert.assertEquals(100, buffer.getLength());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015-2020 Emmanuel Keller
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.qwazr.extractor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class StreamingParserTest {
+
+    private final static ParserField LINE = ParserField.newString("line", null);
+
+    private final static ParserField COUNT = ParserField.newInteger("count", null);
+
+    /**
+     * One document per line, the number of lines is a trailing meta
+     */
+    private static class LineParser implements StreamingParserInterface {
+
+        private final List<Map<String, Object>> written;
+
+        private int writtenWhileParsing;
+
+        private LineParser(final List<Map<String, Object>> written) {
+            this.written = written;
+        }
+
+        @Override
+        public String getName() {
+            return "lines";
+        }
+
+        @Override
+        public void extract(final MultivaluedMap<String, String> parameters,
+                            final InputStream inputStream,
+                            final MediaType mimeType,
+                            final ParserResult.Builder result) throws IOException {
+            int count = 0;
+            for (final String line : IOUtils.readLines(inputStream, StandardCharsets.UTF_8)) {
+                result.newDocument().set(LINE, line);
+                count++;
+            }
+            writtenWhileParsing = written == null ? 0 : written.size();
+            result.metas().set(COUNT, count);
+        }
+
+        @Override
+        public void extract(final MultivaluedMap<String, String> parameters,
+                            final Path filePath,
+                            final ParserResult.Builder result) throws IOException {
+            try (final InputStream input = Files.newInputStream(filePath)) {
+                extract(parameters, input, null, result);
+            }
+        }
+    }
+
+    private static InputStream lines(final int count) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++)
+            sb.append("line ").append(i).append('\n');
+        return IOUtils.toInputStream(sb, StandardCharsets.UTF_8);
+    }
+
+    private static class RecordingSink implements ResultSink {
+
+        private final List<Map<String, Object>> documents = new ArrayList<>();
+
+        private Map<String, Object> trailingMetas;
+
+        @Override
+        public void start(String parserName, Map<String, Object> metas) {
+            Assert.assertEquals("lines", parserName);
+        }
+
+        @Override
+        public void document(Map<String, Object> fields) {
+            documents.add(fields);
+        }
+
+        @Override
+        public void end(Map<String, Object> trailingMetas, long timeElapsed) {
+            this.trailingMetas = trailingMetas;
+        }
+    }
+
+    @Test
+    public void completeResult() throws IOException {
+        final ParserResult result = new LineParser(null).extract(null, lines(5), null);
+        Assert.assertEquals("lines", result.parserName);
+        Assert.assertEquals(5, result.documents.size());
+        Assert.assertEquals("line 4", result.getDocumentFieldValue(4, LINE.name, 0));
+        Assert.assertEquals(5, result.metas.get(COUNT.name));
+    }
+
+    @Test
+    public void pushedResult() throws IOException {
+        final RecordingSink sink = new RecordingSink();
+        final LineParser parser = new LineParser(sink.documents);
+        final ParserResult.Builder builder = ParserResult.of(parser.getName(), sink);
+        parser.extract(null, lines(5), null, builder);
+        final ParserResult result = builder.build();
+        // Only the last document was still buffered when the parser returned
+        Assert.assertEquals(4, parser.writtenWhileParsing);
+        Assert.assertEquals(5, sink.documents.size());
+        Assert.assertEquals(5, sink.trailingMetas.get(COUNT.name));
+        Assert.assertTrue(result.documents.isEmpty());
+    }
+
+    @Test
+    public void guardedSink() throws IOException {
+        final RecordingSink sink = new RecordingSink();
+        final GuardedResultSink guardedSink = new GuardedResultSink(sink);
+        Assert.assertTrue(guardedSink.isRetryable());
+        guardedSink.start("lines", null);
+        Assert.assertFalse(guardedSink.isRetryable());
+        guardedSink.document(Map.of(LINE.name, "line 0"));
+        guardedSink.close();
+        try {
+            guardedSink.document(Map.of(LINE.name, "line 1"));
+            Assert.fail("The closed sink should refuse the document");
+        } catch (IOException e) {
+            Assert.assertEquals(1, sink.documents.size());
+        }
+    }
+}